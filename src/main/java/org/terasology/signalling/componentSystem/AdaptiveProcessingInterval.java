@@ -0,0 +1,113 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+/**
+ * The interval between two signal updates, adapted to how much of the game time the updates take.
+ * <p>
+ * The share of the time spent in updates is smoothed over several updates. While it is above the target share, the interval
+ * is widened, and while it is well below the target, or the time budget left networks over, it is narrowed again. The
+ * interval always stays between the configured bounds.
+ * <p>
+ * The intervals of the last {@link #HISTORY_SIZE} updates are kept, along with the lowest and highest interval so far.
+ */
+final class AdaptiveProcessingInterval {
+    static final int HISTORY_SIZE = 64;
+    // The weight of the latest update in the smoothed share
+    private static final float SMOOTHING = 0.2f;
+
+    private final long minimumInterval;
+    private final long maximumInterval;
+    private final float targetShare;
+
+    private long interval;
+    private float share;
+
+    private final long[] history = new long[HISTORY_SIZE];
+    private int historyEnd;
+    private int historySize;
+    private long lowestInterval;
+    private long highestInterval;
+
+    /**
+     * @param minimumInterval The shortest interval in milliseconds
+     * @param maximumInterval The longest interval in milliseconds
+     * @param targetShare The share of the game time to spend in updates, between 0 and 1
+     */
+    AdaptiveProcessingInterval(long minimumInterval, long maximumInterval, float targetShare) {
+        this.minimumInterval = minimumInterval;
+        this.maximumInterval = Math.max(minimumInterval, maximumInterval);
+        this.targetShare = targetShare;
+        interval = minimumInterval;
+        lowestInterval = minimumInterval;
+        highestInterval = minimumInterval;
+    }
+
+    /**
+     * Adapts the interval to an update that has just finished.
+     *
+     * @param costNanos The time spent in updates since the previous call, in nanoseconds
+     * @param elapsedMillis The game time since the previous call, in milliseconds
+     * @param backlog Whether networks were left over for later updates as the time budget ran out
+     * @return True if the interval has changed
+     */
+    boolean record(long costNanos, long elapsedMillis, boolean backlog) {
+        float latestShare = costNanos / (Math.max(1, elapsedMillis) * 1000000f);
+        share += (latestShare - share) * SMOOTHING;
+
+        long oldInterval = interval;
+        long step = Math.max(1, interval / 4);
+        if (share > targetShare) {
+            interval = Math.min(maximumInterval, interval + step);
+        } else if (share < targetShare / 2 || backlog) {
+            interval = Math.max(minimumInterval, interval - step);
+        }
+
+        history[historyEnd] = interval;
+        historyEnd = (historyEnd + 1) % HISTORY_SIZE;
+        historySize = Math.min(HISTORY_SIZE, historySize + 1);
+        lowestInterval = Math.min(lowestInterval, interval);
+        highestInterval = Math.max(highestInterval, interval);
+        return interval != oldInterval;
+    }
+
+    /**
+     * @return The current interval in milliseconds
+     */
+    long getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return The smoothed share of the game time spent in updates
+     */
+    float getShare() {
+        return share;
+    }
+
+    /**
+     * @return The intervals of the latest updates, oldest first
+     */
+    long[] getHistory() {
+        long[] result = new long[historySize];
+        int start = (historyEnd - historySize + HISTORY_SIZE) % HISTORY_SIZE;
+        for (int i = 0; i < historySize; i++) {
+            result[i] = history[(start + i) % HISTORY_SIZE];
+        }
+        return result;
+    }
+
+    /**
+     * @return The lowest interval so far
+     */
+    long getLowestInterval() {
+        return lowestInterval;
+    }
+
+    /**
+     * @return The highest interval so far
+     */
+    long getHighestInterval() {
+        return highestInterval;
+    }
+}
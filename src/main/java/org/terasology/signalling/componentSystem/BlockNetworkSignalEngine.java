@@ -0,0 +1,66 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import org.terasology.blockNetwork.EfficientBlockNetwork;
+import org.terasology.blockNetwork.EfficientNetworkTopologyListener;
+import org.terasology.blockNetwork.Network2;
+import org.terasology.blockNetwork.NetworkChangeReason;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The {@link SignalNetworkEngine} backed by the {@link EfficientBlockNetwork} of the BlockNetwork module.
+ */
+final class BlockNetworkSignalEngine implements SignalNetworkEngine {
+    private final EfficientBlockNetwork<SignalNetworkNode> blockNetwork = new EfficientBlockNetwork<>();
+    private final NetworkingNodeOrder networkingNodeOrder = new NetworkingNodeOrder();
+
+    @Override
+    public void addTopologyListener(EfficientNetworkTopologyListener<SignalNetworkNode> listener) {
+        blockNetwork.addTopologyListener(listener);
+    }
+
+    @Override
+    public void addNetworkingBlocks(Set<SignalNetworkNode> networkingNodes, NetworkChangeReason reason) {
+        blockNetwork.addNetworkingBlocks(networkingNodes, reason);
+    }
+
+    /**
+     * The block network cannot take finished networks, so every group is added on its own, in
+     * {@link NetworkingNodeOrder connected order}, which grows a single network from it.
+     */
+    @Override
+    public void addNetworkingBlockGroups(List<Set<SignalNetworkNode>> groups, NetworkChangeReason reason) {
+        for (Set<SignalNetworkNode> group : groups) {
+            networkingNodeOrder.sort(group);
+            blockNetwork.addNetworkingBlocks(group, reason);
+        }
+    }
+
+    @Override
+    public void removeNetworkingBlocks(Set<SignalNetworkNode> networkingNodes, NetworkChangeReason reason) {
+        blockNetwork.removeNetworkingBlocks(networkingNodes, reason);
+    }
+
+    @Override
+    public void addLeafBlocks(Set<SignalNetworkNode> leafNodes, NetworkChangeReason reason) {
+        blockNetwork.addLeafBlocks(leafNodes, reason);
+    }
+
+    @Override
+    public void removeLeafBlocks(Set<SignalNetworkNode> leafNodes, NetworkChangeReason reason) {
+        blockNetwork.removeLeafBlocks(leafNodes, reason);
+    }
+
+    @Override
+    public boolean isNetworkActive(Network2<SignalNetworkNode> network) {
+        return blockNetwork.isNetworkActive(network);
+    }
+
+    @Override
+    public boolean containsLeafNode(SignalNetworkNode leafNode) {
+        return blockNetwork.containsLeafNode(leafNode);
+    }
+}
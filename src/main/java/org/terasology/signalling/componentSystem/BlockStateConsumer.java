@@ -0,0 +1,46 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import org.terasology.engine.world.block.Block;
+import org.terasology.engine.world.block.BlockManager;
+import org.terasology.signalling.components.SignalBlockStateConsumerComponent;
+import org.terasology.signalling.components.SignalConsumerComponent;
+
+/**
+ * The resolved {@link SignalBlockStateConsumerComponent} of a block type, shared by all the consumers of that type that were
+ * added together.
+ */
+final class BlockStateConsumer {
+    private final byte connectionSides;
+    private final SignalConsumerComponent.Mode mode;
+    private final Block signalledBlock;
+    private final Block unsignalledBlock;
+
+    /**
+     * @param component The component of the block type
+     * @param blockManager The manager to resolve the blocks with
+     */
+    BlockStateConsumer(SignalBlockStateConsumerComponent component, BlockManager blockManager) {
+        connectionSides = component.connectionSides;
+        mode = component.mode;
+        signalledBlock = blockManager.getBlock(component.signalledBlock);
+        unsignalledBlock = blockManager.getBlock(component.unsignalledBlock);
+    }
+
+    byte getConnectionSides() {
+        return connectionSides;
+    }
+
+    SignalConsumerComponent.Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @param signal Whether the consumer receives a signal
+     * @return The block to place for the signal
+     */
+    Block getBlock(boolean signal) {
+        return signal ? signalledBlock : unsignalledBlock;
+    }
+}
@@ -0,0 +1,530 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import org.terasology.blockNetwork.Network2;
+import org.terasology.engine.math.Side;
+import org.terasology.engine.math.SideBitFlag;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The conductors of a network, with every run of plain cable contracted into a single weighted edge.
+ * <p>
+ * A conductor is part of a chain when it connects the same way on all its sides and to exactly two other conductors, like the
+ * straight and corner pieces of a cable. Every other conductor is a junction. A chain of {@code k} conductors between two
+ * junctions becomes an edge of weight {@code k + 1} between them, so a search over the junctions skips the cables in between.
+ * The position of a conductor within its chain is kept, so the signal on it can still be read.
+ * <p>
+ * Only depends on the conductors of the network, and is updated in place when they change: the chains next to a changed
+ * conductor are released and walked again, which splits a chain where a conductor joins or leaves it, and merges the chains
+ * of a junction left with two connections. The rest of the network keeps its junction and chain ids. Conductors are looked up
+ * by position in the {@link SignalNodeRegistry}, which holds the nodes of every network, so they are checked for membership.
+ */
+final class ConductorChains {
+    static final int NONE = -1;
+
+    private final Network2<SignalNetworkNode> network;
+    private final SignalNodeRegistry nodeRegistry;
+
+    // Indexed by junction id, null for ids not in use
+    private final List<SignalNetworkNode> junctions = Lists.newArrayList();
+    private final TIntList freeJunctionIds = new TIntArrayList();
+    private final TObjectIntMap<SignalNetworkNode> junctionIds = new TObjectIntHashMap<>(16, 0.5f, NONE);
+    private final TObjectIntMap<SignalNetworkNode> chainIds = new TObjectIntHashMap<>(16, 0.5f, NONE);
+    private final TObjectIntMap<SignalNetworkNode> chainIndices = new TObjectIntHashMap<>(16, 0.5f, NONE);
+
+    // Outgoing weighted edges of every junction, indexed by junction id
+    private final List<TIntList> edgeTargets = Lists.newArrayList();
+    private final List<TIntList> edgeWeights = Lists.newArrayList();
+
+    // Indexed by chain id, the conductors of every chain from its start to its end, empty for ids not in use
+    private final List<List<SignalNetworkNode>> chainNodes = Lists.newArrayList();
+    private final TIntList freeChainIds = new TIntArrayList();
+    private final TIntList chainStarts = new TIntArrayList();
+    private final TIntList chainEnds = new TIntArrayList();
+    // Bit flags of the directions signals travel between a chain and its ends
+    private final TIntList chainDirections = new TIntArrayList();
+
+    private static final int START_FEEDS_CHAIN = 1;
+    private static final int END_FEEDS_CHAIN = 2;
+    private static final int CHAIN_FEEDS_START = 4;
+    private static final int CHAIN_FEEDS_END = 8;
+
+    // Conductors without a junction or chain, to be assigned again
+    private final Set<SignalNetworkNode> releasedNodes = Sets.newHashSet();
+    // Junctions whose edges may have changed
+    private final Set<SignalNetworkNode> touchedJunctions = Sets.newHashSet();
+
+    /**
+     * Contracts the conductors of the given network.
+     *
+     * @param network The network to contract
+     * @param nodeRegistry The registry holding the conductors of the network
+     */
+    ConductorChains(Network2<SignalNetworkNode> network, SignalNodeRegistry nodeRegistry) {
+        this.network = network;
+        this.nodeRegistry = nodeRegistry;
+        releasedNodes.addAll(network.getNetworkingNodes());
+        assignReleasedNodes();
+    }
+
+    /**
+     * Contracts conductors that joined the network, along with the chains next to them.
+     *
+     * @param conductors The conductors added to the network
+     */
+    void addConductors(Collection<SignalNetworkNode> conductors) {
+        for (SignalNetworkNode conductor : conductors) {
+            releasedNodes.add(conductor);
+            releaseNeighbours(conductor);
+        }
+        assignReleasedNodes();
+    }
+
+    /**
+     * Drops conductors that left the network, and contracts the chains next to them again.
+     *
+     * @param conductors The conductors removed from the network
+     */
+    void removeConductors(Collection<SignalNetworkNode> conductors) {
+        for (SignalNetworkNode conductor : conductors) {
+            release(conductor);
+            releaseNeighbours(conductor);
+        }
+        // Only conductors still in the network are assigned again
+        assignReleasedNodes();
+    }
+
+    /**
+     * @param position A packed position
+     * @return The registered nodes at the position, of any type and network, see {@link #contains(SignalNetworkNode)}
+     */
+    List<SignalNetworkNode> getNodesAt(long position) {
+        return nodeRegistry.getPublishedNodesAt(position);
+    }
+
+    /**
+     * @param node A registered node
+     * @return True if the node is a conductor of the network
+     */
+    boolean contains(SignalNetworkNode node) {
+        return junctionIds.containsKey(node) || chainIds.containsKey(node);
+    }
+
+    /**
+     * @return The number of junction ids, which are numbered from 0 and include ids not in use
+     */
+    int getJunctionCount() {
+        return junctions.size();
+    }
+
+    /**
+     * @param node A conductor of the network
+     * @return The id of the junction, or {@link #NONE} if the conductor is part of a chain
+     */
+    int getJunctionId(SignalNetworkNode node) {
+        return junctionIds.get(node);
+    }
+
+    /**
+     * @param junctionId The id of a junction
+     * @return The junctions the given one sends signals to, matched by index with {@link #getEdgeWeights(int)}
+     */
+    TIntList getEdgeTargets(int junctionId) {
+        return edgeTargets.get(junctionId);
+    }
+
+    /**
+     * @param junctionId The id of a junction
+     * @return The number of steps to each of the {@link #getEdgeTargets(int) junctions it sends signals to}
+     */
+    TIntList getEdgeWeights(int junctionId) {
+        return edgeWeights.get(junctionId);
+    }
+
+    /**
+     * @param node A conductor of the network
+     * @return The id of the chain the conductor is part of, or {@link #NONE} if it is a junction
+     */
+    int getChainId(SignalNetworkNode node) {
+        return chainIds.get(node);
+    }
+
+    /**
+     * @param node A conductor that is part of a chain
+     * @return The position of the conductor in its chain, from 1 next to the start to the length next to the end
+     */
+    int getChainIndex(SignalNetworkNode node) {
+        return chainIndices.get(node);
+    }
+
+    /**
+     * @param chainId The id of a chain
+     * @return The number of conductors in the chain
+     */
+    int getChainLength(int chainId) {
+        return chainNodes.get(chainId).size();
+    }
+
+    /**
+     * @param chainId The id of a chain
+     * @return The junction at the start of the chain
+     */
+    int getChainStart(int chainId) {
+        return chainStarts.get(chainId);
+    }
+
+    /**
+     * @param chainId The id of a chain
+     * @return The junction at the end of the chain
+     */
+    int getChainEnd(int chainId) {
+        return chainEnds.get(chainId);
+    }
+
+    boolean startFeedsChain(int chainId) {
+        return (chainDirections.get(chainId) & START_FEEDS_CHAIN) != 0;
+    }
+
+    boolean endFeedsChain(int chainId) {
+        return (chainDirections.get(chainId) & END_FEEDS_CHAIN) != 0;
+    }
+
+    boolean chainFeedsStart(int chainId) {
+        return (chainDirections.get(chainId) & CHAIN_FEEDS_START) != 0;
+    }
+
+    boolean chainFeedsEnd(int chainId) {
+        return (chainDirections.get(chainId) & CHAIN_FEEDS_END) != 0;
+    }
+
+    /**
+     * Releases the conductors connected to a changed one. A chain is released as a whole, while a junction keeps its id unless
+     * it turns out to be left with two connections.
+     */
+    private void releaseNeighbours(SignalNetworkNode conductor) {
+        long position = PackedPositions.pack(conductor.location);
+        for (Side side : getConnectionSides(conductor)) {
+            List<SignalNetworkNode> nodesAtPosition = getNodesAt(PackedPositions.move(position, side));
+            for (int i = 0; i < nodesAtPosition.size(); i++) {
+                SignalNetworkNode neighbour = nodesAtPosition.get(i);
+                if (!connects(conductor, side, neighbour) || !isMember(neighbour)) {
+                    continue;
+                }
+                if (junctionIds.containsKey(neighbour)) {
+                    touchedJunctions.add(neighbour);
+                } else {
+                    release(neighbour);
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes a conductor out of its chain or junction, along with the whole chain, or all the chains ending at the junction.
+     */
+    private void release(SignalNetworkNode node) {
+        int chainId = chainIds.get(node);
+        if (chainId != NONE) {
+            releaseChain(chainId);
+            return;
+        }
+        int junctionId = junctionIds.get(node);
+        if (junctionId == NONE) {
+            return;
+        }
+        long position = PackedPositions.pack(node.location);
+        for (Side side : getConnectionSides(node)) {
+            List<SignalNetworkNode> nodesAtPosition = getNodesAt(PackedPositions.move(position, side));
+            for (int i = 0; i < nodesAtPosition.size(); i++) {
+                SignalNetworkNode neighbour = nodesAtPosition.get(i);
+                if (!connects(node, side, neighbour)) {
+                    continue;
+                }
+                int neighbourChainId = chainIds.get(neighbour);
+                if (neighbourChainId != NONE) {
+                    releaseChain(neighbourChainId);
+                } else if (junctionIds.containsKey(neighbour)) {
+                    // Loses its edge to the released junction
+                    touchedJunctions.add(neighbour);
+                }
+            }
+        }
+        junctionIds.remove(node);
+        junctions.set(junctionId, null);
+        edgeTargets.get(junctionId).clear();
+        edgeWeights.get(junctionId).clear();
+        freeJunctionIds.add(junctionId);
+        releasedNodes.add(node);
+    }
+
+    private void releaseChain(int chainId) {
+        List<SignalNetworkNode> nodes = chainNodes.get(chainId);
+        for (int i = 0; i < nodes.size(); i++) {
+            SignalNetworkNode node = nodes.get(i);
+            chainIds.remove(node);
+            chainIndices.remove(node);
+            releasedNodes.add(node);
+        }
+        nodes.clear();
+        touchedJunctions.add(junctions.get(chainStarts.get(chainId)));
+        touchedJunctions.add(junctions.get(chainEnds.get(chainId)));
+        freeChainIds.add(chainId);
+    }
+
+    /**
+     * Makes every released conductor that is still in the network a junction or part of a chain, and works out the edges of
+     * the junctions around them again.
+     */
+    private void assignReleasedNodes() {
+        // A junction left with two connections, or one a ring of cable was given that is no longer closed, is released, so the
+        // chains on both its sides are merged through it
+        boolean releasedJunction;
+        do {
+            releasedJunction = false;
+            for (SignalNetworkNode junction : Lists.newArrayList(touchedJunctions)) {
+                if (junctionIds.containsKey(junction) && isChainNode(junction)) {
+                    release(junction);
+                    releasedJunction = true;
+                }
+            }
+        } while (releasedJunction);
+
+        List<SignalNetworkNode> unwalkedChainNodes = Lists.newArrayList();
+        for (SignalNetworkNode node : releasedNodes) {
+            if (!isMember(node)) {
+                continue;
+            }
+            if (isChainNode(node)) {
+                unwalkedChainNodes.add(node);
+            } else {
+                addJunction(node);
+            }
+            // A junction next to the conductor may gain or lose an edge through it
+            long position = PackedPositions.pack(node.location);
+            for (Side side : getConnectionSides(node)) {
+                List<SignalNetworkNode> nodesAtPosition = getNodesAt(PackedPositions.move(position, side));
+                for (int i = 0; i < nodesAtPosition.size(); i++) {
+                    SignalNetworkNode neighbour = nodesAtPosition.get(i);
+                    if (junctionIds.containsKey(neighbour) && connects(node, side, neighbour)) {
+                        touchedJunctions.add(neighbour);
+                    }
+                }
+            }
+        }
+        releasedNodes.clear();
+
+        for (SignalNetworkNode junction : touchedJunctions) {
+            if (junctionIds.containsKey(junction)) {
+                walkChains(junction);
+            }
+        }
+        // Rings of cable have no junction to start from, so one of their conductors is made one
+        for (SignalNetworkNode chainNode : unwalkedChainNodes) {
+            if (!chainIds.containsKey(chainNode)) {
+                addJunction(chainNode);
+                walkChains(chainNode);
+            }
+        }
+
+        for (SignalNetworkNode junction : touchedJunctions) {
+            int junctionId = junctionIds.get(junction);
+            if (junctionId != NONE) {
+                linkJunction(junctionId);
+            }
+        }
+        touchedJunctions.clear();
+    }
+
+    private void addJunction(SignalNetworkNode node) {
+        int junctionId;
+        if (freeJunctionIds.isEmpty()) {
+            junctionId = junctions.size();
+            junctions.add(node);
+            edgeTargets.add(new TIntArrayList(2));
+            edgeWeights.add(new TIntArrayList(2));
+        } else {
+            junctionId = freeJunctionIds.removeAt(freeJunctionIds.size() - 1);
+            junctions.set(junctionId, node);
+        }
+        junctionIds.put(node, junctionId);
+        touchedJunctions.add(node);
+    }
+
+    /**
+     * Walks the chains leaving a junction that have not been walked from their other end yet.
+     */
+    private void walkChains(SignalNetworkNode junction) {
+        int junctionId = junctionIds.get(junction);
+        long position = PackedPositions.pack(junction.location);
+        for (Side side : getConnectionSides(junction)) {
+            List<SignalNetworkNode> nodesAtPosition = getNodesAt(PackedPositions.move(position, side));
+            for (int i = 0; i < nodesAtPosition.size(); i++) {
+                SignalNetworkNode neighbour = nodesAtPosition.get(i);
+                if (connects(junction, side, neighbour) && !contains(neighbour) && isMember(neighbour)) {
+                    walkChain(junctionId, junction, side, neighbour);
+                }
+            }
+        }
+    }
+
+    private void walkChain(int startId, SignalNetworkNode start, Side startSide, SignalNetworkNode first) {
+        int chainId;
+        if (freeChainIds.isEmpty()) {
+            chainId = chainNodes.size();
+            chainNodes.add(Lists.newArrayList());
+            chainStarts.add(NONE);
+            chainEnds.add(NONE);
+            chainDirections.add(0);
+        } else {
+            chainId = freeChainIds.removeAt(freeChainIds.size() - 1);
+        }
+        List<SignalNetworkNode> nodes = chainNodes.get(chainId);
+        SignalNetworkNode previous = start;
+        SignalNetworkNode current = first;
+        Side previousSide = startSide;
+        int endId = NONE;
+        Side endSide = null;
+        SignalNetworkNode last = null;
+        while (endId == NONE) {
+            nodes.add(current);
+            chainIds.put(current, chainId);
+            chainIndices.put(current, nodes.size());
+            Side backwards = previousSide.reverse();
+            long position = PackedPositions.pack(current.location);
+            SignalNetworkNode next = null;
+            Side nextSide = null;
+            for (Side side : getConnectionSides(current)) {
+                List<SignalNetworkNode> nodesAtPosition = getNodesAt(PackedPositions.move(position, side));
+                for (int i = 0; i < nodesAtPosition.size(); i++) {
+                    SignalNetworkNode neighbour = nodesAtPosition.get(i);
+                    if (connects(current, side, neighbour) && !(side == backwards && neighbour == previous)
+                            && isMember(neighbour)) {
+                        next = neighbour;
+                        nextSide = side;
+                    }
+                }
+            }
+            int nextJunctionId = junctionIds.get(next);
+            if (nextJunctionId != NONE) {
+                endId = nextJunctionId;
+                endSide = nextSide;
+                last = current;
+            } else {
+                previous = current;
+                previousSide = nextSide;
+                current = next;
+            }
+        }
+        SignalNetworkNode end = junctions.get(endId);
+
+        int directions = 0;
+        if (feeds(start, startSide, first)) {
+            directions |= START_FEEDS_CHAIN;
+        }
+        if (feeds(first, startSide.reverse(), start)) {
+            directions |= CHAIN_FEEDS_START;
+        }
+        if (feeds(end, endSide.reverse(), last)) {
+            directions |= END_FEEDS_CHAIN;
+        }
+        if (feeds(last, endSide, end)) {
+            directions |= CHAIN_FEEDS_END;
+        }
+        chainStarts.set(chainId, startId);
+        chainEnds.set(chainId, endId);
+        chainDirections.set(chainId, directions);
+    }
+
+    /**
+     * Works out the edges from a junction to the junctions next to it, and to the far end of every chain leaving it.
+     */
+    private void linkJunction(int junctionId) {
+        SignalNetworkNode junction = junctions.get(junctionId);
+        edgeTargets.get(junctionId).clear();
+        edgeWeights.get(junctionId).clear();
+        long position = PackedPositions.pack(junction.location);
+        for (Side side : getConnectionSides(junction)) {
+            List<SignalNetworkNode> nodesAtPosition = getNodesAt(PackedPositions.move(position, side));
+            for (int i = 0; i < nodesAtPosition.size(); i++) {
+                SignalNetworkNode neighbour = nodesAtPosition.get(i);
+                if (!connects(junction, side, neighbour)) {
+                    continue;
+                }
+                int neighbourJunctionId = junctionIds.get(neighbour);
+                if (neighbourJunctionId != NONE) {
+                    if (feeds(junction, side, neighbour)) {
+                        addEdge(junctionId, neighbourJunctionId, 1);
+                    }
+                    continue;
+                }
+                int chainId = chainIds.get(neighbour);
+                if (chainId == NONE) {
+                    continue;
+                }
+                List<SignalNetworkNode> nodes = chainNodes.get(chainId);
+                int length = nodes.size();
+                if (chainStarts.get(chainId) == junctionId && nodes.get(0) == neighbour
+                        && startFeedsChain(chainId) && chainFeedsEnd(chainId)) {
+                    addEdge(junctionId, chainEnds.get(chainId), length + 1);
+                }
+                if (chainEnds.get(chainId) == junctionId && nodes.get(length - 1) == neighbour
+                        && endFeedsChain(chainId) && chainFeedsStart(chainId)) {
+                    addEdge(junctionId, chainStarts.get(chainId), length + 1);
+                }
+            }
+        }
+    }
+
+    private void addEdge(int fromId, int toId, int weight) {
+        edgeTargets.get(fromId).add(toId);
+        edgeWeights.get(fromId).add(weight);
+    }
+
+    private boolean isMember(SignalNetworkNode node) {
+        return node.getType() == SignalNetworkNode.Type.CONDUCTOR && network.hasNetworkingNode(node);
+    }
+
+    /**
+     * A chain node passes signals on both ways and connects to exactly two other conductors.
+     */
+    private boolean isChainNode(SignalNetworkNode node) {
+        if (node.inputConnectionSides != node.outputConnectionSides) {
+            return false;
+        }
+        int connections = 0;
+        long position = PackedPositions.pack(node.location);
+        for (Side side : getConnectionSides(node)) {
+            List<SignalNetworkNode> nodesAtPosition = getNodesAt(PackedPositions.move(position, side));
+            for (int i = 0; i < nodesAtPosition.size(); i++) {
+                SignalNetworkNode neighbour = nodesAtPosition.get(i);
+                if (connects(node, side, neighbour) && isMember(neighbour)) {
+                    connections++;
+                }
+            }
+        }
+        return connections == 2;
+    }
+
+    private static Side[] getConnectionSides(SignalNetworkNode node) {
+        return NetworkSignals.getSides((byte) (node.inputConnectionSides | node.outputConnectionSides));
+    }
+
+    private static boolean feeds(SignalNetworkNode node, Side side, SignalNetworkNode neighbour) {
+        return SideBitFlag.hasSide(node.outputConnectionSides, side)
+                && SideBitFlag.hasSide(neighbour.inputConnectionSides, side.reverse());
+    }
+
+    private static boolean connects(SignalNetworkNode node, Side side, SignalNetworkNode neighbour) {
+        return feeds(node, side, neighbour) || feeds(neighbour, side.reverse(), node);
+    }
+}
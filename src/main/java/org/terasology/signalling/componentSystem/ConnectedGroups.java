@@ -0,0 +1,163 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import gnu.trove.map.TLongIntMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import org.terasology.engine.math.Side;
+import org.terasology.engine.math.SideBitFlag;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Splits a batch of conductors into the groups connected within themselves, with a union-find run in parallel on a
+ * {@link ForkJoinPool}, such as the one of the {@link ParallelSignalCalculator}.
+ * <p>
+ * The conductors are numbered and indexed by {@link PackedPositions packed position} first, and the tasks only read that
+ * index. Every task links the conductors of a range to the neighbours they connect to. The parent of every conductor is kept
+ * in an {@link AtomicIntegerArray}: a root is only ever linked below a lower numbered root by compare-and-set, and paths are
+ * halved the same way, so the tasks need no locks.
+ */
+final class ConnectedGroups {
+    // Ranges of fewer conductors are linked by a single task
+    private static final int MIN_RANGE = 4096;
+
+    private final ForkJoinPool pool;
+
+    // Only set while groups are found, indexed by the number given to every conductor of the batch
+    private SignalNetworkNode[] nodes;
+    private int[] nextNodesAtPosition;
+    private AtomicIntegerArray parents;
+    private TLongIntMap firstNodesAtPosition;
+
+    /**
+     * @param pool The pool to link the conductors on, null to link them on the calling thread
+     */
+    ConnectedGroups(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @param batch The conductors to split
+     * @return The groups of conductors that connect to each other, within the batch
+     */
+    List<Set<SignalNetworkNode>> find(Collection<SignalNetworkNode> batch) {
+        nodes = batch.toArray(new SignalNetworkNode[0]);
+        int count = nodes.length;
+        nextNodesAtPosition = new int[count];
+        parents = new AtomicIntegerArray(count);
+        firstNodesAtPosition = new TLongIntHashMap(count, 0.5f, Long.MIN_VALUE, -1);
+        for (int i = 0; i < count; i++) {
+            nextNodesAtPosition[i] = firstNodesAtPosition.put(PackedPositions.pack(nodes[i].location), i);
+            parents.set(i, i);
+        }
+
+        if (pool == null || count < MIN_RANGE * 2) {
+            linkRange(0, count);
+        } else {
+            pool.invoke(new LinkRange(0, count));
+        }
+
+        List<Set<SignalNetworkNode>> groups = Lists.newArrayList();
+        int[] groupIndices = new int[count];
+        Arrays.fill(groupIndices, -1);
+        for (int i = 0; i < count; i++) {
+            int root = findRoot(i);
+            if (groupIndices[root] == -1) {
+                groupIndices[root] = groups.size();
+                groups.add(Sets.newLinkedHashSet());
+            }
+            groups.get(groupIndices[root]).add(nodes[i]);
+        }
+
+        nodes = null;
+        nextNodesAtPosition = null;
+        parents = null;
+        firstNodesAtPosition = null;
+        return groups;
+    }
+
+    /**
+     * Links every conductor of the range to the lower numbered conductors it connects to, which covers every pair once.
+     */
+    private void linkRange(int from, int to) {
+        for (int i = from; i < to; i++) {
+            SignalNetworkNode node = nodes[i];
+            long position = PackedPositions.pack(node.location);
+            byte connectionSides = (byte) (node.inputConnectionSides | node.outputConnectionSides);
+            for (Side side : NetworkSignals.getSides(connectionSides)) {
+                Side fromSide = side.reverse();
+                for (int j = firstNodesAtPosition.get(PackedPositions.move(position, side)); j != -1; j = nextNodesAtPosition[j]) {
+                    if (j < i && connects(node, side, nodes[j], fromSide)) {
+                        union(i, j);
+                    }
+                }
+            }
+        }
+    }
+
+    private void union(int first, int second) {
+        while (true) {
+            int firstRoot = findRoot(first);
+            int secondRoot = findRoot(second);
+            if (firstRoot == secondRoot) {
+                return;
+            }
+            // Fails if another task linked the higher root meanwhile, in which case the roots are looked up again
+            if (firstRoot > secondRoot ? parents.compareAndSet(firstRoot, firstRoot, secondRoot)
+                    : parents.compareAndSet(secondRoot, secondRoot, firstRoot)) {
+                return;
+            }
+        }
+    }
+
+    private int findRoot(int node) {
+        int current = node;
+        int parent = parents.get(current);
+        while (parent != current) {
+            int grandparent = parents.get(parent);
+            // Halves the path, unless another task changed it already
+            parents.compareAndSet(current, parent, grandparent);
+            current = grandparent;
+            parent = parents.get(current);
+        }
+        return current;
+    }
+
+    private static boolean connects(SignalNetworkNode node, Side side, SignalNetworkNode neighbour, Side fromSide) {
+        return SideBitFlag.hasSide(node.outputConnectionSides, side)
+                && SideBitFlag.hasSide(neighbour.inputConnectionSides, fromSide)
+                || SideBitFlag.hasSide(node.inputConnectionSides, side)
+                && SideBitFlag.hasSide(neighbour.outputConnectionSides, fromSide);
+    }
+
+    // Serializable through ForkJoinTask only, the tasks are never serialized
+    @SuppressWarnings("serial")
+    private final class LinkRange extends RecursiveAction {
+        private final int from;
+        private final int to;
+
+        private LinkRange(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from < MIN_RANGE * 2) {
+                linkRange(from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new LinkRange(from, middle), new LinkRange(middle, to));
+            }
+        }
+    }
+}
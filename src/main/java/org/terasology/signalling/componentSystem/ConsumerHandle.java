@@ -0,0 +1,74 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.signalling.components.SignalConsumerAdvancedStatusComponent;
+import org.terasology.signalling.components.SignalConsumerComponent;
+import org.terasology.signalling.components.SignalConsumerStatusComponent;
+
+/**
+ * The block entity of a consumer, along with the components the signal system reads and writes on it, resolved once so that
+ * evaluating the consumer needs no lookups.
+ * <p>
+ * A handle is dropped when the consumer node is released or replaced, or when one of the components is replaced by a new
+ * instance, and is resolved again on the next evaluation.
+ */
+final class ConsumerHandle {
+    private final EntityRef entity;
+    private final SignalConsumerComponent consumerComponent;
+    private final SignalConsumerStatusComponent statusComponent;
+    private final SignalConsumerAdvancedStatusComponent advancedStatusComponent;
+
+    /**
+     * @param entity The block entity of the consumer
+     */
+    ConsumerHandle(EntityRef entity) {
+        this.entity = entity;
+        consumerComponent = entity.getComponent(SignalConsumerComponent.class);
+        statusComponent = entity.getComponent(SignalConsumerStatusComponent.class);
+        advancedStatusComponent = entity.getComponent(SignalConsumerAdvancedStatusComponent.class);
+    }
+
+    /**
+     * @return True if the entity still exists, replaced components are caught by the component events instead
+     */
+    boolean isValid() {
+        return entity.exists();
+    }
+
+    /**
+     * @param blockEntity The block entity of the consumer
+     * @return True if the components of the given entity are the instances resolved by the handle
+     */
+    boolean matches(EntityRef blockEntity) {
+        return blockEntity.getComponent(SignalConsumerComponent.class) == consumerComponent
+                && blockEntity.getComponent(SignalConsumerStatusComponent.class) == statusComponent
+                && blockEntity.getComponent(SignalConsumerAdvancedStatusComponent.class) == advancedStatusComponent;
+    }
+
+    EntityRef getEntity() {
+        return entity;
+    }
+
+    /**
+     * @return The consumer component, or null if the entity has none
+     */
+    SignalConsumerComponent getConsumerComponent() {
+        return consumerComponent;
+    }
+
+    /**
+     * @return The status component of a simple consumer, or null if the entity has none
+     */
+    SignalConsumerStatusComponent getStatusComponent() {
+        return statusComponent;
+    }
+
+    /**
+     * @return The status component of an advanced consumer, or null if the entity has none
+     */
+    SignalConsumerAdvancedStatusComponent getAdvancedStatusComponent() {
+        return advancedStatusComponent;
+    }
+}
@@ -0,0 +1,108 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import org.terasology.blockNetwork.Network2;
+
+import java.util.Arrays;
+
+/**
+ * The signals a single consumer receives from each of the networks it is connected to.
+ * <p>
+ * A consumer is only ever connected to a handful of networks, so they are kept in small parallel arrays and looked up by
+ * identity, without hashing.
+ */
+final class ConsumerSignals {
+    private Network2<SignalNetworkNode>[] networks = newNetworkArray(2);
+    private NetworkSignals[] signals = new NetworkSignals[2];
+    private int size;
+
+    // Arrays of a generic type can only be created raw, and this one never leaves the class
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Network2<SignalNetworkNode>[] newNetworkArray(int length) {
+        return new Network2[length];
+    }
+
+    /**
+     * @param network The network to look up
+     * @return The signals received from the network, or null if none are stored
+     */
+    NetworkSignals get(Network2<SignalNetworkNode> network) {
+        for (int i = 0; i < size; i++) {
+            if (networks[i] == network) {
+                return signals[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores the signals received from a network that has no signals stored yet.
+     *
+     * @param network The network
+     * @param networkSignals The signals received from it
+     */
+    void add(Network2<SignalNetworkNode> network, NetworkSignals networkSignals) {
+        if (size == networks.length) {
+            networks = Arrays.copyOf(networks, size * 2);
+            signals = Arrays.copyOf(signals, size * 2);
+        }
+        networks[size] = network;
+        signals[size] = networkSignals;
+        size++;
+    }
+
+    /**
+     * Removes the signals received from a network.
+     *
+     * @param network The network
+     * @return The signals that were stored for the network, or null if there were none
+     */
+    NetworkSignals remove(Network2<SignalNetworkNode> network) {
+        for (int i = 0; i < size; i++) {
+            if (networks[i] == network) {
+                return removeAt(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The number of networks signals are stored for
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param index An index below {@link #size()}
+     * @return The network stored at the index
+     */
+    Network2<SignalNetworkNode> getNetwork(int index) {
+        return networks[index];
+    }
+
+    /**
+     * @param index An index below {@link #size()}
+     * @return The signals stored at the index
+     */
+    NetworkSignals getSignals(int index) {
+        return signals[index];
+    }
+
+    /**
+     * Removes the entry at the index, moving the last entry into its place.
+     *
+     * @param index An index below {@link #size()}
+     * @return The signals that were stored at the index
+     */
+    NetworkSignals removeAt(int index) {
+        NetworkSignals removed = signals[index];
+        size--;
+        networks[index] = networks[size];
+        signals[index] = signals[size];
+        networks[size] = null;
+        signals[size] = null;
+        return removed;
+    }
+}
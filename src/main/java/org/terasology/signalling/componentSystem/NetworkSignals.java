@@ -0,0 +1,96 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import org.terasology.engine.math.Side;
+import org.terasology.engine.math.SideBitFlag;
+
+import java.util.Arrays;
+
+/**
+ * Represents a set of signals that belong to a network and their strengths.
+ * <p>
+ * The strengths are kept in one slot per {@link Side}, indexed by its ordinal, and the sides are tracked in
+ * {@link SideBitFlag} masks, so an instance can be {@link #clear() cleared} and filled again instead of being reallocated.
+ */
+final class NetworkSignals {
+    static final Side[] SIDES = Side.values();
+    // The sides of every possible SideBitFlag mask, indexed by the mask
+    private static final Side[][] SIDES_BY_FLAG = new Side[1 << SIDES.length][];
+
+    static {
+        for (int flag = 0; flag < SIDES_BY_FLAG.length; flag++) {
+            SIDES_BY_FLAG[flag] = SideBitFlag.getSides((byte) flag).toArray(new Side[0]);
+        }
+    }
+
+    private final int[] signalStrengths = new int[SIDES.length];
+    private byte sidesWithSignal;
+    private byte sidesWithoutSignal;
+
+    /**
+     * Same as {@link SideBitFlag#getSides(byte)}, but looked up in a table instead of building a new set on every call.
+     *
+     * @param sides A {@link SideBitFlag} mask
+     * @return The sides in the mask, in the order of {@link #SIDES}; the array must not be modified
+     */
+    static Side[] getSides(byte sides) {
+        return SIDES_BY_FLAG[sides & (SIDES_BY_FLAG.length - 1)];
+    }
+
+    /**
+     * Removes all signals, so the instance can be reused.
+     */
+    void clear() {
+        Arrays.fill(signalStrengths, 0);
+        sidesWithSignal = 0;
+        sidesWithoutSignal = 0;
+    }
+
+    /**
+     * Adds a signal with the given strength which is emitted from the given {@link Side}.
+     *
+     * @param side The {@link Side} from which the signal is emitted.
+     * @param strength The strength of the signal.
+     */
+    void addSignal(Side side, int strength) {
+        byte sideBit = SideBitFlag.getSide(side);
+        signalStrengths[side.ordinal()] = strength;
+        if (strength != 0) {
+            sidesWithSignal |= sideBit;
+            sidesWithoutSignal &= ~sideBit;
+        } else {
+            sidesWithoutSignal |= sideBit;
+            sidesWithSignal &= ~sideBit;
+        }
+    }
+
+    /**
+     * @param side The side to check
+     * @return The strength of the signal on the side, -1 for infinite, 0 if there is none
+     */
+    int getSignalStrength(Side side) {
+        return signalStrengths[side.ordinal()];
+    }
+
+    /**
+     * @return The {@link SideBitFlag} mask of the sides receiving a signal
+     */
+    byte getSidesWithSignal() {
+        return sidesWithSignal;
+    }
+
+    /**
+     * @return The {@link SideBitFlag} mask of the sides connected to the network, but not receiving a signal
+     */
+    byte getSidesWithoutSignal() {
+        return sidesWithoutSignal;
+    }
+
+    /**
+     * @return The {@link SideBitFlag} mask of all the sides connected to the network
+     */
+    byte getSidesInNetwork() {
+        return (byte) (sidesWithSignal | sidesWithoutSignal);
+    }
+}
@@ -0,0 +1,105 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import com.google.common.collect.Lists;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import org.terasology.engine.math.Side;
+import org.terasology.engine.math.SideBitFlag;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Orders a batch of networking nodes so that every node, other than the first of each connected group, connects to a node
+ * that comes before it.
+ * <p>
+ * Added in that order, the network engine grows a single network per connected group one node at a time, instead of
+ * creating a network for every stray node and merging them again as the nodes between them arrive. This matters when a
+ * whole saved world of conductors is loaded in one batch.
+ */
+final class NetworkingNodeOrder {
+    private final TLongObjectMap<List<SignalNetworkNode>> nodesByPosition = new TLongObjectHashMap<>();
+    private final Deque<SignalNetworkNode> queue = new ArrayDeque<>();
+
+    /**
+     * Reorders the given nodes by connectivity, walking every connected group breadth first.
+     *
+     * @param nodes The nodes to reorder, replaced by the same nodes in connected order
+     */
+    void sort(Set<SignalNetworkNode> nodes) {
+        if (nodes.size() < 2) {
+            return;
+        }
+        for (SignalNetworkNode node : nodes) {
+            long position = PackedPositions.pack(node.location);
+            List<SignalNetworkNode> nodesAtPosition = nodesByPosition.get(position);
+            if (nodesAtPosition == null) {
+                nodesAtPosition = Lists.newArrayListWithCapacity(1);
+                nodesByPosition.put(position, nodesAtPosition);
+            }
+            nodesAtPosition.add(node);
+        }
+
+        List<SignalNetworkNode> sorted = Lists.newArrayListWithCapacity(nodes.size());
+        for (SignalNetworkNode start : nodes) {
+            if (take(start)) {
+                queue.add(start);
+                while (!queue.isEmpty()) {
+                    SignalNetworkNode node = queue.poll();
+                    sorted.add(node);
+                    enqueueNeighbours(node);
+                }
+            }
+        }
+        nodesByPosition.clear();
+
+        nodes.clear();
+        nodes.addAll(sorted);
+    }
+
+    private void enqueueNeighbours(SignalNetworkNode node) {
+        long position = PackedPositions.pack(node.location);
+        byte connectionSides = (byte) (node.inputConnectionSides | node.outputConnectionSides);
+        for (Side side : NetworkSignals.getSides(connectionSides)) {
+            List<SignalNetworkNode> nodesAtPosition = nodesByPosition.get(PackedPositions.move(position, side));
+            if (nodesAtPosition != null) {
+                Side fromSide = side.reverse();
+                for (int i = nodesAtPosition.size() - 1; i >= 0; i--) {
+                    SignalNetworkNode neighbour = nodesAtPosition.get(i);
+                    if (connects(node, side, neighbour, fromSide) && take(neighbour)) {
+                        queue.add(neighbour);
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean connects(SignalNetworkNode node, Side side, SignalNetworkNode neighbour, Side fromSide) {
+        return SideBitFlag.hasSide(node.outputConnectionSides, side)
+                && SideBitFlag.hasSide(neighbour.inputConnectionSides, fromSide)
+                || SideBitFlag.hasSide(node.inputConnectionSides, side)
+                && SideBitFlag.hasSide(neighbour.outputConnectionSides, fromSide);
+    }
+
+    /**
+     * Removes a node from the nodes left to visit.
+     *
+     * @param node The node to visit
+     * @return True if the node had not been visited yet
+     */
+    private boolean take(SignalNetworkNode node) {
+        long position = PackedPositions.pack(node.location);
+        List<SignalNetworkNode> nodesAtPosition = nodesByPosition.get(position);
+        if (nodesAtPosition == null || !nodesAtPosition.remove(node)) {
+            return false;
+        }
+        if (nodesAtPosition.isEmpty()) {
+            nodesByPosition.remove(position);
+        }
+        return true;
+    }
+}
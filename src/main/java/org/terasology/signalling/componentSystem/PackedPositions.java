@@ -0,0 +1,118 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
+import org.terasology.blockNetwork.ImmutableBlockLocation;
+import org.terasology.engine.math.Side;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Packs block positions into a single {@code long}, so they can be used as keys of primitive maps.
+ * <p>
+ * The coordinates of positions within about a million blocks of the origin are stored in 21 bits each, which leaves the sign
+ * bit clear. Positions farther away are given a key with the sign bit set the first time they are packed, and kept in a table,
+ * so every position has a key of its own. Far keys are slower to move and unpack, but far away signalling blocks are rare.
+ */
+final class PackedPositions {
+    // Matches no position, returned for far positions that were never packed
+    static final long NONE = Long.MIN_VALUE;
+
+    private static final int BITS = 21;
+    private static final long MASK = (1L << BITS) - 1;
+    private static final int SIGN_SHIFT = Integer.SIZE - BITS;
+    private static final int LIMIT = 1 << (BITS - 1);
+
+    // The keys of the far positions packed so far. They are never released, as any map may still hold them
+    private static final Map<Vector3ic, Long> FAR_KEYS = new ConcurrentHashMap<>();
+    private static final Map<Long, Vector3ic> FAR_POSITIONS = new ConcurrentHashMap<>();
+    private static final AtomicLong LAST_FAR_ID = new AtomicLong();
+
+    private static final int[] SIDE_X = new int[Side.values().length];
+    private static final int[] SIDE_Y = new int[Side.values().length];
+    private static final int[] SIDE_Z = new int[Side.values().length];
+
+    static {
+        for (Side side : Side.values()) {
+            Vector3ic direction = side.direction();
+            SIDE_X[side.ordinal()] = direction.x();
+            SIDE_Y[side.ordinal()] = direction.y();
+            SIDE_Z[side.ordinal()] = direction.z();
+        }
+    }
+
+    private PackedPositions() {
+    }
+
+    /**
+     * @param x The x coordinate of the position
+     * @param y The y coordinate of the position
+     * @param z The z coordinate of the position
+     * @return Whether the coordinates of the position are stored in its key, rather than in the table of far positions
+     */
+    static boolean isPackable(int x, int y, int z) {
+        return -LIMIT <= x && x < LIMIT && -LIMIT <= y && y < LIMIT && -LIMIT <= z && z < LIMIT;
+    }
+
+    static boolean isPackable(Vector3ic location) {
+        return isPackable(location.x(), location.y(), location.z());
+    }
+
+    static long pack(int x, int y, int z) {
+        if (isPackable(x, y, z)) {
+            return packCoordinates(x, y, z);
+        }
+        return FAR_KEYS.computeIfAbsent(new Vector3i(x, y, z), position -> {
+            long key = NONE | LAST_FAR_ID.incrementAndGet();
+            FAR_POSITIONS.put(key, position);
+            return key;
+        });
+    }
+
+    static long pack(ImmutableBlockLocation location) {
+        return pack(location.x, location.y, location.z);
+    }
+
+    static long pack(Vector3ic location) {
+        return pack(location.x(), location.y(), location.z());
+    }
+
+    static int unpackX(long packed) {
+        return packed >= 0 ? ((int) (packed >>> (2 * BITS)) << SIGN_SHIFT) >> SIGN_SHIFT : FAR_POSITIONS.get(packed).x();
+    }
+
+    static int unpackY(long packed) {
+        return packed >= 0 ? ((int) (packed >>> BITS) << SIGN_SHIFT) >> SIGN_SHIFT : FAR_POSITIONS.get(packed).y();
+    }
+
+    static int unpackZ(long packed) {
+        return packed >= 0 ? ((int) packed << SIGN_SHIFT) >> SIGN_SHIFT : FAR_POSITIONS.get(packed).z();
+    }
+
+    /**
+     * @param packed A packed block position
+     * @param side The side to move towards
+     * @return The packed position of the block adjacent on the given side, {@link #NONE} if it is a far position that was never
+     *     packed
+     */
+    static long move(long packed, Side side) {
+        int ordinal = side.ordinal();
+        int x = unpackX(packed) + SIDE_X[ordinal];
+        int y = unpackY(packed) + SIDE_Y[ordinal];
+        int z = unpackZ(packed) + SIDE_Z[ordinal];
+        if (isPackable(x, y, z)) {
+            return packCoordinates(x, y, z);
+        }
+        // Nothing is at a far position that was never packed, so it is not added to the table
+        Long key = FAR_KEYS.get(new Vector3i(x, y, z));
+        return key != null ? key : NONE;
+    }
+
+    private static long packCoordinates(int x, int y, int z) {
+        return ((x & MASK) << (2 * BITS)) | ((y & MASK) << BITS) | (z & MASK);
+    }
+}
@@ -0,0 +1,337 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import com.google.common.collect.Lists;
+import org.terasology.blockNetwork.Network2;
+import org.terasology.engine.math.Side;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fills the signals of the consumers of several networks at once on a {@link ForkJoinPool}.
+ * <p>
+ * Networks are disjoint, so every network is handled by a single task. Tasks only read the networks and the
+ * {@link SignalEfficientNetworkState}, and only write the {@link NetworkSignals} handed to them on the main thread, so the
+ * results are applied to the components on the main thread in the same order as without the pool.
+ * <p>
+ * Limited signals are read from a {@link SignalStrengthField} kept per worker thread. Consumers that need a path search
+ * instead are left to the main thread, as the {@link SignalDistanceCache} can only be used from there.
+ */
+final class ParallelSignalCalculator {
+    private final ForkJoinPool pool;
+    private final boolean ownsPool;
+    private final ThreadLocal<SignalStrengthField> strengthFields = ThreadLocal.withInitial(SignalStrengthField::new);
+
+    // Reused by every update, only the first jobCount jobs are in use
+    private final List<NetworkJob> jobs = Lists.newArrayList();
+    private int jobCount;
+    // The jobs filled again by a rerun
+    private final List<NetworkJob> rerunJobs = Lists.newArrayList();
+
+    private SignalEfficientNetworkState networkState;
+    private boolean consumerCanPowerItself;
+    private ForkJoinTask<?> pendingTask;
+
+    /**
+     * @param threads The number of threads of a dedicated pool, or -1 to use the common pool of the JVM
+     */
+    ParallelSignalCalculator(int threads) {
+        if (threads == -1) {
+            pool = ForkJoinPool.commonPool();
+            ownsPool = false;
+        } else {
+            pool = new ForkJoinPool(threads);
+            ownsPool = true;
+        }
+    }
+
+    /**
+     * Adds a network to fill the signals of with the next {@link #run}.
+     *
+     * @param networkId The id of the network
+     * @param network The network to recalculate
+     * @return The job to add the consumers of the network to
+     */
+    NetworkJob addNetwork(int networkId, Network2<SignalNetworkNode> network) {
+        if (jobCount == jobs.size()) {
+            jobs.add(new NetworkJob());
+        }
+        NetworkJob job = jobs.get(jobCount++);
+        job.networkId = networkId;
+        job.network = network;
+        return job;
+    }
+
+    /**
+     * @return The pool the jobs are computed on, which other work may use while no jobs are pending
+     */
+    ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @return The number of jobs computed at the same time
+     */
+    int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * @return The number of networks added since the last {@link #clear()}
+     */
+    int getJobCount() {
+        return jobCount;
+    }
+
+    /**
+     * @param index The index of a job, in the order the networks were added
+     * @return The job
+     */
+    NetworkJob getJob(int index) {
+        return jobs.get(index);
+    }
+
+    /**
+     * Fills the signals of every added consumer the pool can handle, and waits for all of them.
+     *
+     * @param state The state of the signal network, which must not change until this returns
+     * @param canPowerItself Whether a producer on the location of a consumer counts
+     */
+    void run(SignalEfficientNetworkState state, boolean canPowerItself) {
+        networkState = state;
+        consumerCanPowerItself = canPowerItself;
+        if (jobCount == 1) {
+            computeJob(jobs.get(0));
+        } else if (jobCount > 1) {
+            pool.invoke(new JobRange(jobs, 0, jobCount));
+        }
+        networkState = null;
+    }
+
+    /**
+     * Starts filling the signals of every added consumer the pool can handle, without waiting for them.
+     *
+     * @param state The state of the signal network, which must not change until {@link #finish()}, with the conductor chains
+     *     of every added network built
+     * @param canPowerItself Whether a producer on the location of a consumer counts
+     */
+    void start(SignalEfficientNetworkState state, boolean canPowerItself) {
+        networkState = state;
+        consumerCanPowerItself = canPowerItself;
+        if (jobCount > 0) {
+            pendingTask = pool.submit(new JobRange(jobs, 0, jobCount));
+        }
+    }
+
+    /**
+     * Waits for the signals started with {@link #start} to be filled.
+     */
+    void finish() {
+        if (pendingTask != null) {
+            pendingTask.join();
+            pendingTask = null;
+        }
+        networkState = null;
+    }
+
+    /**
+     * Clears the signals filled before for some of the added networks, and fills them again from the current state. The other
+     * jobs keep their signals.
+     *
+     * @param state The state of the signal network, which must not change until this returns
+     * @param canPowerItself Whether a producer on the location of a consumer counts
+     * @param networkIds The ids of the networks to fill again
+     */
+    void rerun(SignalEfficientNetworkState state, boolean canPowerItself, BitSet networkIds) {
+        for (int i = 0; i < jobCount; i++) {
+            NetworkJob job = jobs.get(i);
+            if (networkIds.get(job.networkId)) {
+                job.resetSignals();
+                rerunJobs.add(job);
+            }
+        }
+        networkState = state;
+        consumerCanPowerItself = canPowerItself;
+        if (rerunJobs.size() == 1) {
+            computeJob(rerunJobs.get(0));
+        } else if (rerunJobs.size() > 1) {
+            pool.invoke(new JobRange(rerunJobs, 0, rerunJobs.size()));
+        }
+        networkState = null;
+        rerunJobs.clear();
+    }
+
+    /**
+     * Forgets the added networks and consumers.
+     */
+    void clear() {
+        for (int i = 0; i < jobCount; i++) {
+            jobs.get(i).clear();
+        }
+        jobCount = 0;
+    }
+
+    /**
+     * Stops the threads of the pool, if it is not the common one.
+     */
+    void shutdown() {
+        if (ownsPool) {
+            pool.shutdown();
+        }
+    }
+
+    private void computeJob(NetworkJob job) {
+        long startTime = System.nanoTime();
+        fillSignals(job);
+        job.computeTime = System.nanoTime() - startTime;
+    }
+
+    private void fillSignals(NetworkJob job) {
+        Network2<SignalNetworkNode> network = job.network;
+        SignalStrengthField strengthField = null;
+        for (int i = 0; i < job.consumers.size(); i++) {
+            SignalNetworkNode consumerNode = job.consumers.get(i);
+            NetworkSignals networkSignals = job.signals.get(i);
+            Side[] sidesInNetwork = NetworkSignals.getSides(network.getLeafSidesInNetwork(consumerNode));
+            if (networkState.hasUnlimitedSignal(network, consumerNode, consumerCanPowerItself)) {
+                for (Side side : sidesInNetwork) {
+                    networkSignals.addSignal(side, -1);
+                }
+                continue;
+            }
+            if (network.getNetworkingNodes().isEmpty()) {
+                // Leaf nodes connected directly, the field only spreads through conductors
+                job.deferred.set(i);
+                continue;
+            }
+            if (strengthField == null) {
+                strengthField = strengthFields.get();
+                strengthField.compute(networkState.getConductorChains(network), networkState.getProducersInNetwork(network),
+                        networkState);
+            }
+            if (!consumerCanPowerItself && strengthField.hasSourceAt(PackedPositions.pack(consumerNode.location))) {
+                job.deferred.set(i);
+                continue;
+            }
+            for (Side side : sidesInNetwork) {
+                networkSignals.addSignal(side, strengthField.getSignalOnSide(consumerNode, side));
+            }
+        }
+    }
+
+    /**
+     * The consumers of a single network, with the cleared signals to fill for each of them.
+     */
+    static final class NetworkJob {
+        private int networkId;
+        private Network2<SignalNetworkNode> network;
+        private long computeTime;
+        private final List<SignalNetworkNode> consumers = Lists.newArrayList();
+        private final List<NetworkSignals> signals = Lists.newArrayList();
+        private final BitSet deferred = new BitSet();
+
+        /**
+         * @param consumerNode A consumer in the network
+         * @param networkSignals The cleared signals to fill for the consumer
+         */
+        void add(SignalNetworkNode consumerNode, NetworkSignals networkSignals) {
+            consumers.add(consumerNode);
+            signals.add(networkSignals);
+        }
+
+        /**
+         * @return The id of the network of the job
+         */
+        int getNetworkId() {
+            return networkId;
+        }
+
+        /**
+         * @return The network of the job
+         */
+        Network2<SignalNetworkNode> getNetwork() {
+            return network;
+        }
+
+        /**
+         * @return The time the pool took to fill the signals, in nanoseconds
+         */
+        long getComputeTime() {
+            return computeTime;
+        }
+
+        /**
+         * @return The number of consumers added
+         */
+        int getConsumerCount() {
+            return consumers.size();
+        }
+
+        /**
+         * @return The indexes of the consumers left for the main thread to fill
+         */
+        BitSet getDeferred() {
+            return deferred;
+        }
+
+        /**
+         * @param index The index of a consumer, in the order they were added
+         * @return The consumer
+         */
+        SignalNetworkNode getConsumer(int index) {
+            return consumers.get(index);
+        }
+
+        /**
+         * @param index The index of a consumer, in the order they were added
+         * @return The signals of the consumer
+         */
+        NetworkSignals getSignals(int index) {
+            return signals.get(index);
+        }
+
+        private void resetSignals() {
+            for (int i = 0; i < signals.size(); i++) {
+                signals.get(i).clear();
+            }
+            deferred.clear();
+        }
+
+        private void clear() {
+            network = null;
+            computeTime = 0;
+            consumers.clear();
+            signals.clear();
+            deferred.clear();
+        }
+    }
+
+    // Serializable through ForkJoinTask only, the tasks are never serialized
+    @SuppressWarnings("serial")
+    private final class JobRange extends RecursiveAction {
+        private final List<NetworkJob> rangeJobs;
+        private final int from;
+        private final int to;
+
+        private JobRange(List<NetworkJob> rangeJobs, int from, int to) {
+            this.rangeJobs = rangeJobs;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                computeJob(rangeJobs.get(from));
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new JobRange(rangeJobs, from, middle), new JobRange(rangeJobs, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import org.joml.Vector3f;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.logic.location.LocationComponent;
+
+import java.util.List;
+
+/**
+ * Orders networks by how close their consumers are to the nearest player, so that the circuits players can see are
+ * recalculated first when an update runs out of time.
+ * <p>
+ * Distances are squared and measured in blocks, from the block a player stands in to the nearest consumer of a network.
+ */
+final class PlayerProximity {
+    static final int UNKNOWN_DISTANCE = Integer.MAX_VALUE;
+
+    // The block positions of the players as triples of coordinates
+    private final TIntArrayList playerPositions = new TIntArrayList();
+    private final Vector3f playerPosition = new Vector3f();
+    // The sorted networks, as the distance in the upper and the network id in the lower half
+    private final TLongArrayList sortedNetworks = new TLongArrayList();
+
+    /**
+     * Takes the positions of the players, for the networks sorted until the next call.
+     *
+     * @param players The entities of the players
+     */
+    void setPlayers(Iterable<EntityRef> players) {
+        playerPositions.resetQuick();
+        for (EntityRef player : players) {
+            LocationComponent location = player.getComponent(LocationComponent.class);
+            if (location != null) {
+                location.getWorldPosition(playerPosition);
+                playerPositions.add(Math.round(playerPosition.x));
+                playerPositions.add(Math.round(playerPosition.y));
+                playerPositions.add(Math.round(playerPosition.z));
+            }
+        }
+    }
+
+    /**
+     * Sorts network ids from the network with the consumer nearest to a player to the farthest. Networks without consumers
+     * go last.
+     *
+     * @param networkIds The ids to sort
+     * @param networkState The state to look up the consumers of every network in
+     */
+    void sortByDistance(TIntList networkIds, SignalEfficientNetworkState networkState) {
+        sortedNetworks.resetQuick();
+        for (int i = 0; i < networkIds.size(); i++) {
+            int networkId = networkIds.get(i);
+            long distance = getDistanceSquared(networkState.getConsumersInNetwork(networkState.getNetwork(networkId)));
+            sortedNetworks.add(distance << 32 | networkId);
+        }
+        sortedNetworks.sort();
+        for (int i = 0; i < sortedNetworks.size(); i++) {
+            networkIds.set(i, (int) sortedNetworks.get(i));
+        }
+    }
+
+    /**
+     * @param index The index of a network id in the last {@link #sortByDistance sorted} list
+     * @return The squared distance of the network to the nearest player, or {@link #UNKNOWN_DISTANCE}
+     */
+    int getSortedDistanceSquared(int index) {
+        return (int) (sortedNetworks.get(index) >>> 32);
+    }
+
+    private int getDistanceSquared(List<SignalNetworkNode> consumers) {
+        long result = UNKNOWN_DISTANCE;
+        for (int c = 0; c < consumers.size(); c++) {
+            SignalNetworkNode consumer = consumers.get(c);
+            for (int i = 0; i < playerPositions.size(); i += 3) {
+                long dx = consumer.location.x - playerPositions.get(i);
+                long dy = consumer.location.y - playerPositions.get(i + 1);
+                long dz = consumer.location.z - playerPositions.get(i + 2);
+                result = Math.min(result, dx * dx + dy * dy + dz * dz);
+            }
+        }
+        return (int) result;
+    }
+}
@@ -0,0 +1,202 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.procedure.TLongIntProcedure;
+import org.terasology.blockNetwork.Network2;
+import org.terasology.engine.math.Side;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the distances between producers and consumers of signal networks, so that a change of producer strength does
+ * not need another path search.
+ * <p>
+ * Distances only depend on the conductors of a network, so the cached distances of a network are dropped by
+ * {@link SignalEfficientNetworkState} whenever its networking nodes change or it is removed. The cache holds at most
+ * {@link #setMaximumSize(int) a given number} of producer and consumer pairs, and drops the least recently used networks
+ * first when it runs out of room.
+ */
+final class SignalDistanceCache {
+    /**
+     * The default maximum number of producer and consumer pairs to keep distances for.
+     */
+    static final int DEFAULT_MAXIMUM_SIZE = 65536;
+
+    private static final int SIDES = Side.values().length;
+
+    private final LinkedHashMap<Network2<SignalNetworkNode>, NetworkDistances> networkDistances =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private int maximumSize = DEFAULT_MAXIMUM_SIZE;
+    private int size;
+
+    /**
+     * Sets the maximum number of producer and consumer pairs to keep distances for. Zero disables caching.
+     *
+     * @param maximumSize The maximum number of pairs
+     */
+    void setMaximumSize(int maximumSize) {
+        this.maximumSize = Math.max(0, maximumSize);
+        evictColdNetworks(null);
+    }
+
+    /**
+     * Returns the distance between a producer and a consumer on the given side of the consumer, the same way as
+     * {@link Network2#getDistanceWithSide}, searching the network only if the distance is not known yet.
+     *
+     * @param network The network both nodes are in
+     * @param producer The producer the signal comes from
+     * @param consumer The consumer receiving the signal
+     * @param side The side of the consumer
+     * @param maxToSearch The maximum distance of interest
+     * @return The distance, or -1 if it is larger than {@code maxToSearch}
+     */
+    int getDistanceWithSide(Network2<SignalNetworkNode> network, SignalNetworkNode producer, SignalNetworkNode consumer,
+                            Side side, int maxToSearch) {
+        if (maximumSize == 0 || maxToSearch <= 0) {
+            return network.getDistanceWithSide(producer, consumer, side, maxToSearch);
+        }
+
+        NetworkDistances distances = networkDistances.get(network);
+        int slot = distances != null ? distances.get(producer, consumer) : NetworkDistances.NONE;
+        int index = slot * SIDES + side.ordinal();
+        if (slot != NetworkDistances.NONE) {
+            int cached = distances.sideDistances[index];
+            if (cached > 0) {
+                int distance = cached - 1;
+                return distance <= maxToSearch ? distance : -1;
+            } else if (cached < 0 && maxToSearch <= -cached) {
+                return -1;
+            }
+        }
+
+        int distance = network.getDistanceWithSide(producer, consumer, side, maxToSearch);
+
+        if (slot == NetworkDistances.NONE) {
+            if (size >= maximumSize) {
+                evictColdNetworks(network);
+                if (size >= maximumSize) {
+                    return distance;
+                }
+            }
+            if (distances == null) {
+                distances = new NetworkDistances();
+                networkDistances.put(network, distances);
+            }
+            slot = distances.create(producer, consumer);
+            index = slot * SIDES + side.ordinal();
+            size++;
+        }
+        distances.sideDistances[index] = distance != -1 ? distance + 1 : -maxToSearch;
+        return distance;
+    }
+
+    /**
+     * Drops all the distances known in the given network.
+     *
+     * @param network The network whose conductors have changed
+     */
+    void invalidateNetwork(Network2<SignalNetworkNode> network) {
+        NetworkDistances distances = networkDistances.remove(network);
+        if (distances != null) {
+            size -= distances.size;
+        }
+    }
+
+    /**
+     * Drops the distances from or to a leaf node that has left the given network.
+     *
+     * @param network The network the leaf node was removed from
+     * @param leafNode The removed leaf node
+     */
+    void removeLeafNode(Network2<SignalNetworkNode> network, SignalNetworkNode leafNode) {
+        NetworkDistances distances = networkDistances.get(network);
+        if (distances != null) {
+            size -= distances.remove(leafNode);
+        }
+    }
+
+    private void evictColdNetworks(Network2<SignalNetworkNode> networkInUse) {
+        Iterator<Map.Entry<Network2<SignalNetworkNode>, NetworkDistances>> iterator =
+                networkDistances.entrySet().iterator();
+        while (size >= maximumSize && iterator.hasNext()) {
+            Map.Entry<Network2<SignalNetworkNode>, NetworkDistances> eldest = iterator.next();
+            if (eldest.getKey() != networkInUse) {
+                size -= eldest.getValue().size;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * The distances of every producer and consumer pair of a single network, per side of the consumer.
+     * <p>
+     * Pairs are keyed by the ids of both nodes, and their distances are kept in a slot of {@link #SIDES} values in a shared
+     * array, whose slots are reused once their pair is removed. A side holds 0 if its distance is not known yet, the distance
+     * plus one if there is a path, or the negated search limit if there is no path within that limit.
+     */
+    private static final class NetworkDistances {
+        private static final int NONE = -1;
+
+        private final TLongIntHashMap slotsByPair = new TLongIntHashMap(16, 0.5f, Long.MIN_VALUE, NONE);
+        private final TIntList freeSlots = new TIntArrayList();
+        // Kept, as are the entries removed from the map, so pairs are removed and added again without allocating
+        private final TLongIntProcedure keepPairProcedure = this::keepPair;
+        private int removedId;
+        private int[] sideDistances = new int[16 * SIDES];
+        private int slotCount;
+        private int size;
+
+        private NetworkDistances() {
+            // Compacting would rehash into new arrays, the entries left removed are taken again by later pairs instead
+            slotsByPair.setAutoCompactionFactor(0);
+        }
+
+        private int get(SignalNetworkNode producer, SignalNetworkNode consumer) {
+            return slotsByPair.get(pair(producer.getId(), consumer.getId()));
+        }
+
+        private int create(SignalNetworkNode producer, SignalNetworkNode consumer) {
+            int slot;
+            if (freeSlots.isEmpty()) {
+                slot = slotCount++;
+                if (slotCount * SIDES > sideDistances.length) {
+                    sideDistances = Arrays.copyOf(sideDistances, sideDistances.length * 2);
+                }
+            } else {
+                slot = freeSlots.removeAt(freeSlots.size() - 1);
+                Arrays.fill(sideDistances, slot * SIDES, (slot + 1) * SIDES, 0);
+            }
+            slotsByPair.put(pair(producer.getId(), consumer.getId()), slot);
+            size++;
+            return slot;
+        }
+
+        private int remove(SignalNetworkNode leafNode) {
+            removedId = leafNode.getId();
+            int sizeBefore = slotsByPair.size();
+            slotsByPair.retainEntries(keepPairProcedure);
+            int removed = sizeBefore - slotsByPair.size();
+            size -= removed;
+            return removed;
+        }
+
+        private boolean keepPair(long pair, int slot) {
+            if ((int) (pair >>> Integer.SIZE) == removedId || (int) pair == removedId) {
+                freeSlots.add(slot);
+                return false;
+            }
+            return true;
+        }
+
+        private static long pair(int producerId, int consumerId) {
+            return (long) producerId << Integer.SIZE | consumerId & 0xFFFFFFFFL;
+        }
+    }
+}
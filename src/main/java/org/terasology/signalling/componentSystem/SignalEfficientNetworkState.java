@@ -2,97 +2,366 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.terasology.signalling.componentSystem;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
 import org.terasology.blockNetwork.EfficientNetworkTopologyListener;
 import org.terasology.blockNetwork.Network2;
 import org.terasology.blockNetwork.NetworkChangeReason;
 
-import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
- * A class that stores the states of {@link SignalNetworkNode}s.
+ * A class that stores the states of {@link SignalNetworkNode}s, including the signal strength of every producer.
+ * <p>
+ * Also keeps the producers and consumers of every network partitioned by type, and the networks every leaf node belongs to,
+ * so that neither lookup needs to scan the leaf nodes or the networks of the world.
+ * <p>
+ * Every indexed network is given a dense id, and producer strengths are stored in an array indexed by the
+ * {@link SignalNetworkNode#getId() node id}.
  */
 public class SignalEfficientNetworkState implements EfficientNetworkTopologyListener<SignalNetworkNode> {
-    private Set<Network2<SignalNetworkNode>> networksToRecalculate = Sets.newHashSet();
-    private Set<SignalNetworkNode> consumersToRecalculate = Sets.newHashSet();
+    // Indexed by network id, networks without consumers or producers are never indexed and need no recalculation
+    private final BitSet networksToRecalculate = new BitSet();
+    private final Set<SignalNetworkNode> consumersToRecalculate = Sets.newHashSet();
+    private final List<SignalNetworkNode> nearbyConsumers = Lists.newArrayList();
 
-    private Iterable<SignalNetworkNode> getConsumersInNetwork(Network2<SignalNetworkNode> network) {
-        return Iterables.filter(network.getLeafNodes(),
-                new Predicate<SignalNetworkNode>() {
-                    @Override
-                    public boolean apply(@Nullable SignalNetworkNode input) {
-                        return input.getType() == SignalNetworkNode.Type.CONSUMER;
-                    }
-                });
+    private Map<Network2<SignalNetworkNode>, SignalNetworkPartition> networkPartitions = Maps.newHashMap();
+    private List<SignalNetworkPartition> partitionsById = Lists.newArrayList();
+    private TIntList freeNetworkIds = new TIntArrayList();
+    // Only registered node instances are ever added to the block network, so they can be told apart by identity
+    // A leaf node is only in a handful of networks, so a list walked by index serves better than a set
+    private Map<SignalNetworkNode, List<Network2<SignalNetworkNode>>> leafNodeNetworks = Maps.newIdentityHashMap();
+
+    private int[] producerSignalStrengths = new int[64];
+    // Incremented on every change to the nodes of any network
+    private long topologyVersion;
+
+    private final SignalDistanceCache distanceCache;
+    private final SignalNodeRegistry nodeRegistry;
+
+    /**
+     * @param distanceCache The distance cache to invalidate when the conductors of a network change
+     * @param nodeRegistry The registry holding every node added to a network
+     */
+    SignalEfficientNetworkState(SignalDistanceCache distanceCache, SignalNodeRegistry nodeRegistry) {
+        this.distanceCache = distanceCache;
+        this.nodeRegistry = nodeRegistry;
+    }
+
+    /**
+     * Sets the signal strength of a registered producer. This has to be done before the producer is added to the block network.
+     *
+     * @param producer The producer node
+     * @param signalStrength The strength, -1 for infinite
+     */
+    public void setProducerSignalStrength(SignalNetworkNode producer, int signalStrength) {
+        int id = producer.getId();
+        if (id == SignalNetworkNode.NO_ID) {
+            throw new IllegalArgumentException("Producer has not been registered: " + producer);
+        }
+        if (id >= producerSignalStrengths.length) {
+            producerSignalStrengths =
+                    Arrays.copyOf(producerSignalStrengths, Math.max(id + 1, producerSignalStrengths.length * 2));
+        }
+        int oldSignalStrength = producerSignalStrengths[id];
+        producerSignalStrengths[id] = signalStrength;
+        if (oldSignalStrength != signalStrength && (oldSignalStrength == -1 || signalStrength == -1)) {
+            List<Network2<SignalNetworkNode>> networks = leafNodeNetworks.get(producer);
+            if (networks != null) {
+                for (int i = 0; i < networks.size(); i++) {
+                    networkPartitions.get(networks.get(i)).setProducerSignalStrength(producer, signalStrength);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets the signal strength of a producer. This has to be done after the producer is removed from the block network.
+     *
+     * @param producer The producer node
+     */
+    public void removeProducerSignalStrength(SignalNetworkNode producer) {
+        int id = producer.getId();
+        if (id >= 0 && id < producerSignalStrengths.length) {
+            producerSignalStrengths[id] = 0;
+        }
+    }
+
+    /**
+     * @param producer The producer node
+     * @return The signal strength of the producer, -1 for infinite, 0 if it is not known
+     */
+    public int getProducerSignalStrength(SignalNetworkNode producer) {
+        int id = producer.getId();
+        return id >= 0 && id < producerSignalStrengths.length ? producerSignalStrengths[id] : 0;
+    }
+
+    /**
+     * @param network An indexed network
+     * @return The conductors of the network with runs of cable contracted
+     */
+    ConductorChains getConductorChains(Network2<SignalNetworkNode> network) {
+        return networkPartitions.get(network).getConductorChains();
     }
 
     /**
-     * Forces a recalculation for this SignalEfficientNetworkState's networks.
+     * Checks in constant time whether a consumer is powered by a producer with infinite strength in the given network.
      *
-     * @return A collection of {@link SignalNetworkNode nodes}.
+     * @param network The network to check
+     * @param consumer A consumer in the network
+     * @param consumerCanPowerItself Whether a producer on the location of the consumer counts
+     * @return True if the consumer receives a signal of infinite strength from the network
      */
-    public Collection<Network2<SignalNetworkNode>> consumeNetworksToRecalculate() {
-        Set<Network2<SignalNetworkNode>> result = networksToRecalculate;
-        networksToRecalculate = Sets.newHashSet();
-        return Collections.unmodifiableCollection(result);
+    public boolean hasUnlimitedSignal(Network2<SignalNetworkNode> network, SignalNetworkNode consumer,
+                                      boolean consumerCanPowerItself) {
+        SignalNetworkPartition partition = networkPartitions.get(network);
+        return partition != null && partition.hasUnlimitedSignalFor(consumer, consumerCanPowerItself);
     }
 
-    public Collection<SignalNetworkNode> consumeConsumersToRecalculate() {
-        Set<SignalNetworkNode> result = consumersToRecalculate;
-        consumersToRecalculate = Sets.newHashSet();
-        return Collections.unmodifiableCollection(result);
+    /**
+     * @param network The network to check
+     * @return The number of producers with infinite strength in the network
+     */
+    public int getUnlimitedProducerCount(Network2<SignalNetworkNode> network) {
+        SignalNetworkPartition partition = networkPartitions.get(network);
+        return partition != null ? partition.getUnlimitedProducerCount() : 0;
+    }
+
+    /**
+     * @param network An indexed network
+     * @return The version of the nodes in the network, which changes with any node added to or removed from it, and is never
+     *     shared with another network
+     */
+    public long getTopologyVersion(Network2<SignalNetworkNode> network) {
+        SignalNetworkPartition partition = networkPartitions.get(network);
+        return partition != null ? partition.getTopologyVersion() : 0;
+    }
+
+    /**
+     * Hashes the strengths of the producers in a network, regardless of their order.
+     *
+     * @param network An indexed network
+     * @return The hash of every producer id together with its strength
+     */
+    public long getProducerStrengthHash(Network2<SignalNetworkNode> network) {
+        long result = 0;
+        List<SignalNetworkNode> producers = getProducersInNetwork(network);
+        for (int i = 0; i < producers.size(); i++) {
+            SignalNetworkNode producer = producers.get(i);
+            long entry = (long) producer.getId() << 32 | (getProducerSignalStrength(producer) & 0xFFFFFFFFL);
+            // The finalizer of SplitMix64, so that summing the entries does not cancel them out
+            entry = (entry ^ (entry >>> 30)) * 0xBF58476D1CE4E5B9L;
+            entry = (entry ^ (entry >>> 27)) * 0x94D049BB133111EBL;
+            result += entry ^ (entry >>> 31);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the networks a leaf node is connected to. The list is live and must not be modified, so no view needs to be
+     * allocated on every lookup.
+     *
+     * @param leafNode The producer or consumer to look up
+     * @return The networks containing the given leaf node
+     */
+    public List<Network2<SignalNetworkNode>> getNetworksWithLeafNode(SignalNetworkNode leafNode) {
+        List<Network2<SignalNetworkNode>> networks = leafNodeNetworks.get(leafNode);
+        return networks != null ? networks : Collections.emptyList();
+    }
+
+    /**
+     * Finds the producers in a network.
+     *
+     * @param network The network to query for producers
+     * @return A read-only view of the producers on the given network, in no particular order
+     */
+    public List<SignalNetworkNode> getProducersInNetwork(Network2<SignalNetworkNode> network) {
+        SignalNetworkPartition partition = networkPartitions.get(network);
+        return partition != null ? partition.getProducers() : Collections.emptyList();
     }
 
     /**
-     * Adds the given network to a set of networks to recalculate.
+     * Finds the consumers in a network.
+     *
+     * @param network The network to query for consumers
+     * @return A read-only view of the consumers on the given network, in no particular order
+     */
+    public List<SignalNetworkNode> getConsumersInNetwork(Network2<SignalNetworkNode> network) {
+        SignalNetworkPartition partition = networkPartitions.get(network);
+        return partition != null ? partition.getConsumers() : Collections.emptyList();
+    }
+
+    /**
+     * @param network A network
+     * @return The dense id of the network, or -1 if it is not indexed
+     */
+    public int getNetworkId(Network2<SignalNetworkNode> network) {
+        SignalNetworkPartition partition = networkPartitions.get(network);
+        return partition != null ? partition.getId() : -1;
+    }
+
+    /**
+     * @param networkId The dense id of a network
+     * @return The network with the given id, or null if the id is not in use
+     */
+    public Network2<SignalNetworkNode> getNetwork(int networkId) {
+        SignalNetworkPartition partition = networkId >= 0 && networkId < partitionsById.size()
+                ? partitionsById.get(networkId) : null;
+        return partition != null ? partition.getNetwork() : null;
+    }
+
+    private SignalNetworkPartition getOrCreatePartition(Network2<SignalNetworkNode> network) {
+        SignalNetworkPartition partition = networkPartitions.get(network);
+        if (partition == null) {
+            int networkId;
+            if (freeNetworkIds.isEmpty()) {
+                networkId = partitionsById.size();
+                partitionsById.add(null);
+            } else {
+                networkId = freeNetworkIds.removeAt(freeNetworkIds.size() - 1);
+            }
+            partition = new SignalNetworkPartition(network, networkId, nodeRegistry);
+            partition.setTopologyVersion(++topologyVersion);
+            partitionsById.set(networkId, partition);
+            networkPartitions.put(network, partition);
+        }
+        return partition;
+    }
+
+    private void indexLeafNode(Network2<SignalNetworkNode> network, SignalNetworkPartition partition,
+                               SignalNetworkNode leafNode) {
+        partition.addLeafNode(leafNode, getProducerSignalStrength(leafNode));
+        List<Network2<SignalNetworkNode>> networks =
+                leafNodeNetworks.computeIfAbsent(leafNode, key -> Lists.newArrayListWithCapacity(2));
+        if (!networks.contains(network)) {
+            networks.add(network);
+        }
+    }
+
+    private void unindexLeafNode(Network2<SignalNetworkNode> network, SignalNetworkNode leafNode) {
+        List<Network2<SignalNetworkNode>> networks = leafNodeNetworks.get(leafNode);
+        if (networks != null) {
+            networks.remove(network);
+            if (networks.isEmpty()) {
+                leafNodeNetworks.remove(leafNode);
+            }
+        }
+    }
+
+    /**
+     * Moves the ids of the networks that need to be recalculated into the given set, and forgets them.
+     *
+     * @param networkIds The set to add the {@link #getNetworkId(Network2) network ids} to
+     */
+    public void consumeNetworksToRecalculate(BitSet networkIds) {
+        networkIds.or(networksToRecalculate);
+        networksToRecalculate.clear();
+    }
+
+    /**
+     * Moves the consumers that need to be recalculated into the given collection, and forgets them. This includes consumers
+     * that have been removed from the signal network since.
+     *
+     * @param consumers The collection to add the consumers to
+     */
+    public void consumeConsumersToRecalculate(Collection<SignalNetworkNode> consumers) {
+        if (!consumersToRecalculate.isEmpty()) {
+            consumers.addAll(consumersToRecalculate);
+            consumersToRecalculate.clear();
+        }
+    }
+
+    private void markNetworkToRecalculate(Network2<SignalNetworkNode> network) {
+        SignalNetworkPartition partition = networkPartitions.get(network);
+        if (partition != null) {
+            networksToRecalculate.set(partition.getId());
+        }
+    }
+
+    /**
+     * Indexes the leaf nodes of the given network and adds it to a set of networks to recalculate.
      *
      * @param network A network to eventually recalculate, must be non-null
      * @param reason An ignored reason
      */
     @Override
     public void networkAdded(Network2<SignalNetworkNode> network, NetworkChangeReason reason) {
-        networksToRecalculate.add(network);
+        SignalNetworkPartition partition = getOrCreatePartition(network);
+        for (SignalNetworkNode leafNode : network.getLeafNodes()) {
+            indexLeafNode(network, partition, leafNode);
+        }
+        networksToRecalculate.set(partition.getId());
     }
 
     /**
-     * Adds the nodes in the given network to a set to recalculate.
+     * Adds the consumers in the given network to a set to recalculate and drops the network from the index.
      *
      * @param network A network to eventually recalculate, must be non-null
      * @param reason An ignored reason
      */
     @Override
     public void networkRemoved(Network2<SignalNetworkNode> network, NetworkChangeReason reason) {
-        for (SignalNetworkNode signalNetworkNode : getConsumersInNetwork(network)) {
-            consumersToRecalculate.add(signalNetworkNode);
+        distanceCache.invalidateNetwork(network);
+        SignalNetworkPartition partition = networkPartitions.remove(network);
+        if (partition != null) {
+            partitionsById.set(partition.getId(), null);
+            networksToRecalculate.clear(partition.getId());
+            freeNetworkIds.add(partition.getId());
+            List<SignalNetworkNode> producers = partition.getProducers();
+            for (int i = 0; i < producers.size(); i++) {
+                unindexLeafNode(network, producers.get(i));
+            }
+            List<SignalNetworkNode> consumers = partition.getConsumers();
+            for (int i = 0; i < consumers.size(); i++) {
+                consumersToRecalculate.add(consumers.get(i));
+                unindexLeafNode(network, consumers.get(i));
+            }
         }
     }
 
     /**
-     * Adds the given network to a set of networks to recalculate.
+     * Adds the consumers of the given network that the new conductors can affect to a set to recalculate.
      *
-     * @param network A network to eventually recalculate, must be non-null
+     * @param network The network the conductors joined, must be non-null
+     * @param networkingNodes The conductors added to the network
      * @param reason An ignored reason
      */
     @Override
     public void networkingNodesAdded(Network2<SignalNetworkNode> network, Set<SignalNetworkNode> networkingNodes, NetworkChangeReason reason) {
-        networksToRecalculate.add(network);
+        distanceCache.invalidateNetwork(network);
+        SignalNetworkPartition partition = networkPartitions.get(network);
+        if (partition != null) {
+            partition.addConductors(networkingNodes);
+            partition.setTopologyVersion(++topologyVersion);
+        }
+        markConsumersNearConductors(network, networkingNodes);
     }
 
     /**
-     * Adds the given network node to a set of networks to recalculate.
+     * Adds the consumers of the given network that the removed conductors can affect to a set to recalculate.
      *
-     * @param network A network to eventually recalculate, must be non-null
-     * @param networkingNodes A set of ignored nodes
+     * @param network The network the conductors left, must be non-null
+     * @param networkingNodes The conductors removed from the network
      * @param reason An ignored reason
      */
     @Override
     public void networkingNodesRemoved(Network2<SignalNetworkNode> network, Set<SignalNetworkNode> networkingNodes, NetworkChangeReason reason) {
-        networksToRecalculate.add(network);
+        distanceCache.invalidateNetwork(network);
+        SignalNetworkPartition partition = networkPartitions.get(network);
+        if (partition != null) {
+            partition.removeConductors(networkingNodes);
+            partition.setTopologyVersion(++topologyVersion);
+        }
+        markConsumersNearConductors(network, networkingNodes);
     }
 
     /**
@@ -104,9 +373,12 @@ public class SignalEfficientNetworkState implements EfficientNetworkTopologyList
      */
     @Override
     public void leafNodesAdded(Network2<SignalNetworkNode> network, Set<SignalNetworkNode> leafNodes, NetworkChangeReason reason) {
+        SignalNetworkPartition partition = getOrCreatePartition(network);
+        partition.setTopologyVersion(++topologyVersion);
         for (SignalNetworkNode modifiedLeafNode : leafNodes) {
+            indexLeafNode(network, partition, modifiedLeafNode);
             if (modifiedLeafNode.getType() == SignalNetworkNode.Type.PRODUCER) {
-                networksToRecalculate.add(network);
+                networksToRecalculate.set(partition.getId());
             } else {
                 consumersToRecalculate.add(modifiedLeafNode);
             }
@@ -122,12 +394,75 @@ public class SignalEfficientNetworkState implements EfficientNetworkTopologyList
      */
     @Override
     public void leafNodesRemoved(Network2<SignalNetworkNode> network, Set<SignalNetworkNode> leafNodes, NetworkChangeReason reason) {
+        SignalNetworkPartition partition = networkPartitions.get(network);
+        if (partition != null) {
+            partition.setTopologyVersion(++topologyVersion);
+        }
         for (SignalNetworkNode modifiedLeafNode : leafNodes) {
+            if (partition != null) {
+                partition.removeLeafNode(modifiedLeafNode);
+            }
+            unindexLeafNode(network, modifiedLeafNode);
+            distanceCache.removeLeafNode(network, modifiedLeafNode);
             if (modifiedLeafNode.getType() == SignalNetworkNode.Type.PRODUCER) {
-                networksToRecalculate.add(network);
+                markNetworkToRecalculate(network);
             } else {
                 consumersToRecalculate.add(modifiedLeafNode);
             }
         }
     }
+
+    /**
+     * Marks the consumers a change to the given conductors can affect.
+     * <p>
+     * A producer of strength {@code s} does not reach past its {@code s}th conductor, so a path through a changed conductor
+     * only reaches consumers within {@code s} blocks of it. Consumers right next to a changed conductor are always marked, as
+     * the sides they are attached to the network on may have changed, even if the network has no limited strength producer.
+     * If most consumers are close enough anyway, the whole network is recalculated instead, which may use a
+     * {@link SignalStrengthField}.
+     */
+    private void markConsumersNearConductors(Network2<SignalNetworkNode> network, Set<SignalNetworkNode> networkingNodes) {
+        SignalNetworkPartition partition = networkPartitions.get(network);
+        if (partition == null || networksToRecalculate.get(partition.getId())) {
+            return;
+        }
+        int maxStrength = 1;
+        List<SignalNetworkNode> producers = partition.getProducers();
+        for (int i = 0; i < producers.size(); i++) {
+            maxStrength = Math.max(maxStrength, getProducerSignalStrength(producers.get(i)));
+        }
+
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        int maxZ = Integer.MIN_VALUE;
+        for (SignalNetworkNode networkingNode : networkingNodes) {
+            minX = Math.min(minX, networkingNode.location.x);
+            minY = Math.min(minY, networkingNode.location.y);
+            minZ = Math.min(minZ, networkingNode.location.z);
+            maxX = Math.max(maxX, networkingNode.location.x);
+            maxY = Math.max(maxY, networkingNode.location.y);
+            maxZ = Math.max(maxZ, networkingNode.location.z);
+        }
+
+        List<SignalNetworkNode> consumers = partition.getConsumers();
+        nearbyConsumers.clear();
+        for (int i = 0; i < consumers.size(); i++) {
+            SignalNetworkNode consumer = consumers.get(i);
+            int distance = Math.max(0, Math.max(minX - consumer.location.x, consumer.location.x - maxX))
+                    + Math.max(0, Math.max(minY - consumer.location.y, consumer.location.y - maxY))
+                    + Math.max(0, Math.max(minZ - consumer.location.z, consumer.location.z - maxZ));
+            if (distance <= maxStrength) {
+                nearbyConsumers.add(consumer);
+            }
+        }
+        if (nearbyConsumers.size() * 2 > consumers.size()) {
+            networksToRecalculate.set(partition.getId());
+        } else {
+            consumersToRecalculate.addAll(nearbyConsumers);
+        }
+        nearbyConsumers.clear();
+    }
 }
@@ -0,0 +1,635 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import org.terasology.blockNetwork.EfficientNetworkTopologyListener;
+import org.terasology.blockNetwork.Network2;
+import org.terasology.blockNetwork.NetworkChangeReason;
+import org.terasology.engine.math.Side;
+import org.terasology.engine.math.SideBitFlag;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link SignalNetworkEngine} owned by the signalling module, built for the way signal networks change.
+ * <p>
+ * Conductors and leaf nodes are indexed by {@link PackedPositions packed position}. Two nodes next to each other connect when
+ * the output side of one faces an input side of the other. Leaf nodes are attached to a network on the sides that connect
+ * to its conductors, and two leaf nodes connecting directly form a network of their own.
+ * <p>
+ * Leaf nodes whose sides change while they stay in a network are reported as removed from it and added again, so that
+ * listeners see the new sides.
+ * <p>
+ * Adding a conductor merges the networks around it into the largest one, so a node moves between networks at most a
+ * logarithmic number of times. Removing a conductor starts one search from each of its former neighbours and advances them in
+ * turns. The searches stop as soon as they have all met, and a search that runs out of nodes first has found a part that
+ * split off. The work is bounded by the size of the smaller parts, so cutting a cable near the end of a huge network does
+ * not flood the whole of it.
+ * <p>
+ * A {@link #addNetworkingBlockGroups group of conductors} known to be connected, such as a saved world loading, is made a
+ * network in one pass, merged only with the networks it touches.
+ */
+final class SignalGraph implements SignalNetworkEngine {
+    private final TLongObjectMap<List<SignalNetworkNode>> networkingNodesByPosition = new TLongObjectHashMap<>();
+    private final TLongObjectMap<List<SignalNetworkNode>> leafNodesByPosition = new TLongObjectHashMap<>();
+    private final Map<SignalNetworkNode, SignalGraphNetwork> networkingNodeNetworks = Maps.newIdentityHashMap();
+    private final Map<SignalNetworkNode, List<SignalGraphNetwork>> leafNodeNetworks = Maps.newIdentityHashMap();
+    private final Set<SignalGraphNetwork> networks = Sets.newIdentityHashSet();
+
+    private final List<EfficientNetworkTopologyListener<SignalNetworkNode>> listeners = Lists.newArrayList();
+
+    @Override
+    public void addTopologyListener(EfficientNetworkTopologyListener<SignalNetworkNode> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void addNetworkingBlocks(Set<SignalNetworkNode> networkingNodes, NetworkChangeReason reason) {
+        for (SignalNetworkNode networkingNode : networkingNodes) {
+            addNetworkingNode(networkingNode, reason);
+        }
+    }
+
+    @Override
+    public void addNetworkingBlockGroups(List<Set<SignalNetworkNode>> groups, NetworkChangeReason reason) {
+        for (Set<SignalNetworkNode> group : groups) {
+            addNetworkingGroup(group, reason);
+        }
+    }
+
+    @Override
+    public void removeNetworkingBlocks(Set<SignalNetworkNode> networkingNodes, NetworkChangeReason reason) {
+        for (SignalNetworkNode networkingNode : networkingNodes) {
+            removeNetworkingNode(networkingNode, reason);
+        }
+    }
+
+    @Override
+    public void addLeafBlocks(Set<SignalNetworkNode> leafNodes, NetworkChangeReason reason) {
+        for (SignalNetworkNode leafNode : leafNodes) {
+            addLeafNode(leafNode, reason);
+        }
+    }
+
+    @Override
+    public void removeLeafBlocks(Set<SignalNetworkNode> leafNodes, NetworkChangeReason reason) {
+        for (SignalNetworkNode leafNode : leafNodes) {
+            removeLeafNode(leafNode, reason);
+        }
+    }
+
+    @Override
+    public boolean isNetworkActive(Network2<SignalNetworkNode> network) {
+        return networks.contains(network);
+    }
+
+    @Override
+    public boolean containsLeafNode(SignalNetworkNode leafNode) {
+        return leafNodeNetworks.containsKey(leafNode);
+    }
+
+    /**
+     * @param position A packed position
+     * @return The conductors at the position
+     */
+    List<SignalNetworkNode> getNetworkingNodesAt(long position) {
+        List<SignalNetworkNode> nodesAtPosition = networkingNodesByPosition.get(position);
+        return nodesAtPosition != null ? nodesAtPosition : Collections.emptyList();
+    }
+
+    private void addNetworkingNode(SignalNetworkNode networkingNode, NetworkChangeReason reason) {
+        if (networkingNodeNetworks.containsKey(networkingNode)) {
+            return;
+        }
+        long position = PackedPositions.pack(networkingNode.location);
+        addAtPosition(networkingNodesByPosition, position, networkingNode);
+
+        List<SignalGraphNetwork> neighbourNetworks = Lists.newArrayListWithCapacity(2);
+        for (Side side : getConnectionSides(networkingNode)) {
+            for (SignalNetworkNode neighbour : getNetworkingNodesAt(PackedPositions.move(position, side))) {
+                SignalGraphNetwork neighbourNetwork = networkingNodeNetworks.get(neighbour);
+                if (neighbourNetwork != null && connects(networkingNode, side, neighbour)
+                        && !neighbourNetworks.contains(neighbourNetwork)) {
+                    neighbourNetworks.add(neighbourNetwork);
+                }
+            }
+        }
+
+        if (neighbourNetworks.isEmpty()) {
+            SignalGraphNetwork network = new SignalGraphNetwork(this);
+            networks.add(network);
+            network.addNetworkingNode(networkingNode);
+            networkingNodeNetworks.put(networkingNode, network);
+            attachLeafNodesAround(networkingNode, network, Sets.newHashSet(), Sets.newHashSet());
+            for (EfficientNetworkTopologyListener<SignalNetworkNode> listener : listeners) {
+                listener.networkAdded(network, reason);
+            }
+            return;
+        }
+
+        SignalGraphNetwork network = neighbourNetworks.get(0);
+        for (SignalGraphNetwork neighbourNetwork : neighbourNetworks) {
+            if (neighbourNetwork.getNetworkSize() > network.getNetworkSize()) {
+                network = neighbourNetwork;
+            }
+        }
+        for (SignalGraphNetwork neighbourNetwork : neighbourNetworks) {
+            if (neighbourNetwork != network) {
+                mergeInto(network, neighbourNetwork, reason);
+            }
+        }
+
+        network.addNetworkingNode(networkingNode);
+        networkingNodeNetworks.put(networkingNode, network);
+        Set<SignalNetworkNode> attachedLeafNodes = Sets.newHashSet();
+        Set<SignalNetworkNode> changedLeafNodes = Sets.newHashSet();
+        attachLeafNodesAround(networkingNode, network, attachedLeafNodes, changedLeafNodes);
+        for (EfficientNetworkTopologyListener<SignalNetworkNode> listener : listeners) {
+            listener.networkingNodesAdded(network, Collections.singleton(networkingNode), reason);
+        }
+        fireLeafSidesChanged(network, changedLeafNodes, reason);
+        fireLeafNodesAdded(network, attachedLeafNodes, reason);
+    }
+
+    /**
+     * Adds connected conductors to a network at once, which is a new network unless they touch existing ones.
+     */
+    private void addNetworkingGroup(Set<SignalNetworkNode> group, NetworkChangeReason reason) {
+        List<SignalNetworkNode> addedNodes = Lists.newArrayListWithCapacity(group.size());
+        for (SignalNetworkNode networkingNode : group) {
+            if (!networkingNodeNetworks.containsKey(networkingNode)) {
+                addAtPosition(networkingNodesByPosition, PackedPositions.pack(networkingNode.location), networkingNode);
+                addedNodes.add(networkingNode);
+            }
+        }
+        if (addedNodes.isEmpty()) {
+            return;
+        }
+
+        List<SignalGraphNetwork> neighbourNetworks = Lists.newArrayListWithCapacity(2);
+        for (SignalNetworkNode networkingNode : addedNodes) {
+            long position = PackedPositions.pack(networkingNode.location);
+            for (Side side : getConnectionSides(networkingNode)) {
+                for (SignalNetworkNode neighbour : getNetworkingNodesAt(PackedPositions.move(position, side))) {
+                    SignalGraphNetwork neighbourNetwork = networkingNodeNetworks.get(neighbour);
+                    if (neighbourNetwork != null && connects(networkingNode, side, neighbour)
+                            && !neighbourNetworks.contains(neighbourNetwork)) {
+                        neighbourNetworks.add(neighbourNetwork);
+                    }
+                }
+            }
+        }
+
+        SignalGraphNetwork network;
+        if (neighbourNetworks.isEmpty()) {
+            network = new SignalGraphNetwork(this);
+            networks.add(network);
+        } else {
+            network = neighbourNetworks.get(0);
+            for (SignalGraphNetwork neighbourNetwork : neighbourNetworks) {
+                if (neighbourNetwork.getNetworkSize() > network.getNetworkSize()) {
+                    network = neighbourNetwork;
+                }
+            }
+            for (SignalGraphNetwork neighbourNetwork : neighbourNetworks) {
+                if (neighbourNetwork != network) {
+                    mergeInto(network, neighbourNetwork, reason);
+                }
+            }
+        }
+
+        for (SignalNetworkNode networkingNode : addedNodes) {
+            network.addNetworkingNode(networkingNode);
+            networkingNodeNetworks.put(networkingNode, network);
+        }
+        Set<SignalNetworkNode> attachedLeafNodes = Sets.newHashSet();
+        Set<SignalNetworkNode> changedLeafNodes = Sets.newHashSet();
+        for (SignalNetworkNode networkingNode : addedNodes) {
+            attachLeafNodesAround(networkingNode, network, attachedLeafNodes, changedLeafNodes);
+        }
+
+        if (neighbourNetworks.isEmpty()) {
+            for (EfficientNetworkTopologyListener<SignalNetworkNode> listener : listeners) {
+                listener.networkAdded(network, reason);
+            }
+            return;
+        }
+        for (EfficientNetworkTopologyListener<SignalNetworkNode> listener : listeners) {
+            listener.networkingNodesAdded(network, Sets.newHashSet(addedNodes), reason);
+        }
+        fireLeafSidesChanged(network, changedLeafNodes, reason);
+        fireLeafNodesAdded(network, attachedLeafNodes, reason);
+    }
+
+    private void removeNetworkingNode(SignalNetworkNode networkingNode, NetworkChangeReason reason) {
+        SignalGraphNetwork network = networkingNodeNetworks.remove(networkingNode);
+        if (network == null) {
+            return;
+        }
+        long position = PackedPositions.pack(networkingNode.location);
+        removeAtPosition(networkingNodesByPosition, position, networkingNode);
+        network.removeNetworkingNode(networkingNode);
+
+        List<SignalNetworkNode> formerNeighbours = Lists.newArrayListWithCapacity(2);
+        Set<SignalNetworkNode> detachedLeafNodes = Sets.newHashSet();
+        Set<SignalNetworkNode> changedLeafNodes = Sets.newHashSet();
+        for (Side side : getConnectionSides(networkingNode)) {
+            long neighbourPosition = PackedPositions.move(position, side);
+            for (SignalNetworkNode neighbour : getNetworkingNodesAt(neighbourPosition)) {
+                if (connects(networkingNode, side, neighbour)) {
+                    formerNeighbours.add(neighbour);
+                }
+            }
+            for (SignalNetworkNode leafNode : getLeafNodesAt(neighbourPosition)) {
+                if (network.hasLeafNode(leafNode) && connects(networkingNode, side, leafNode)) {
+                    reattachLeafNode(leafNode, network, detachedLeafNodes, changedLeafNodes);
+                }
+            }
+        }
+
+        if (network.getNetworkingNodes().isEmpty()) {
+            // The leaf nodes of the last conductor have all been detached
+            networks.remove(network);
+            for (EfficientNetworkTopologyListener<SignalNetworkNode> listener : listeners) {
+                listener.networkRemoved(network, reason);
+            }
+            return;
+        }
+
+        fireLeafNodesRemoved(network, detachedLeafNodes, reason);
+        fireLeafSidesChanged(network, changedLeafNodes, reason);
+        for (EfficientNetworkTopologyListener<SignalNetworkNode> listener : listeners) {
+            listener.networkingNodesRemoved(network, Collections.singleton(networkingNode), reason);
+        }
+        splitOffDisconnectedParts(network, formerNeighbours, reason);
+    }
+
+    private void addLeafNode(SignalNetworkNode leafNode, NetworkChangeReason reason) {
+        if (leafNodeNetworks.containsKey(leafNode)) {
+            return;
+        }
+        long position = PackedPositions.pack(leafNode.location);
+        addAtPosition(leafNodesByPosition, position, leafNode);
+        List<SignalGraphNetwork> networksOfLeafNode = Lists.newArrayListWithCapacity(2);
+        leafNodeNetworks.put(leafNode, networksOfLeafNode);
+
+        for (Side side : getConnectionSides(leafNode)) {
+            for (SignalNetworkNode neighbour : getNetworkingNodesAt(PackedPositions.move(position, side))) {
+                if (connects(leafNode, side, neighbour)) {
+                    SignalGraphNetwork network = networkingNodeNetworks.get(neighbour);
+                    network.addLeafSides(leafNode, SideBitFlag.getSide(side));
+                    if (!networksOfLeafNode.contains(network)) {
+                        networksOfLeafNode.add(network);
+                    }
+                }
+            }
+        }
+        for (SignalGraphNetwork network : networksOfLeafNode) {
+            fireLeafNodesAdded(network, Collections.singleton(leafNode), reason);
+        }
+
+        for (Side side : getConnectionSides(leafNode)) {
+            for (SignalNetworkNode neighbour : getLeafNodesAt(PackedPositions.move(position, side))) {
+                if (connects(leafNode, side, neighbour)) {
+                    SignalGraphNetwork network = new SignalGraphNetwork(this);
+                    network.addLeafSides(leafNode, SideBitFlag.getSide(side));
+                    network.addLeafSides(neighbour, SideBitFlag.getSide(side.reverse()));
+                    networks.add(network);
+                    networksOfLeafNode.add(network);
+                    leafNodeNetworks.get(neighbour).add(network);
+                    for (EfficientNetworkTopologyListener<SignalNetworkNode> listener : listeners) {
+                        listener.networkAdded(network, reason);
+                    }
+                }
+            }
+        }
+    }
+
+    private void removeLeafNode(SignalNetworkNode leafNode, NetworkChangeReason reason) {
+        List<SignalGraphNetwork> networksOfLeafNode = leafNodeNetworks.remove(leafNode);
+        if (networksOfLeafNode == null) {
+            return;
+        }
+        removeAtPosition(leafNodesByPosition, PackedPositions.pack(leafNode.location), leafNode);
+
+        for (SignalGraphNetwork network : networksOfLeafNode) {
+            network.setLeafSides(leafNode, (byte) 0);
+            if (network.isDirectConnection()) {
+                networks.remove(network);
+                for (SignalNetworkNode otherLeafNode : network.getLeafNodes()) {
+                    leafNodeNetworks.get(otherLeafNode).remove(network);
+                }
+                for (EfficientNetworkTopologyListener<SignalNetworkNode> listener : listeners) {
+                    listener.networkRemoved(network, reason);
+                }
+            } else {
+                fireLeafNodesRemoved(network, Collections.singleton(leafNode), reason);
+            }
+        }
+    }
+
+    /**
+     * Moves all nodes of a network into another one, and drops the emptied network.
+     */
+    private void mergeInto(SignalGraphNetwork network, SignalGraphNetwork mergedNetwork, NetworkChangeReason reason) {
+        networks.remove(mergedNetwork);
+        for (EfficientNetworkTopologyListener<SignalNetworkNode> listener : listeners) {
+            listener.networkRemoved(mergedNetwork, reason);
+        }
+
+        Set<SignalNetworkNode> movedNetworkingNodes = Sets.newHashSet(mergedNetwork.getNetworkingNodes());
+        for (SignalNetworkNode movedNetworkingNode : movedNetworkingNodes) {
+            network.addNetworkingNode(movedNetworkingNode);
+            networkingNodeNetworks.put(movedNetworkingNode, network);
+        }
+        Set<SignalNetworkNode> movedLeafNodes = Sets.newHashSet();
+        Set<SignalNetworkNode> changedLeafNodes = Sets.newHashSet();
+        for (SignalNetworkNode leafNode : mergedNetwork.getLeafNodes()) {
+            List<SignalGraphNetwork> networksOfLeafNode = leafNodeNetworks.get(leafNode);
+            networksOfLeafNode.remove(mergedNetwork);
+            attachLeafNode(leafNode, network, mergedNetwork.getLeafSidesInNetwork(leafNode), movedLeafNodes, changedLeafNodes);
+        }
+
+        for (EfficientNetworkTopologyListener<SignalNetworkNode> listener : listeners) {
+            listener.networkingNodesAdded(network, movedNetworkingNodes, reason);
+        }
+        fireLeafSidesChanged(network, changedLeafNodes, reason);
+        fireLeafNodesAdded(network, movedLeafNodes, reason);
+    }
+
+    /**
+     * Finds the parts of a network that a removed conductor was holding together, and moves every part but one into a
+     * network of its own.
+     *
+     * @param network The network the conductor has been removed from
+     * @param formerNeighbours The conductors the removed one connected to
+     * @param reason The reason the conductor was removed
+     */
+    private void splitOffDisconnectedParts(SignalGraphNetwork network, List<SignalNetworkNode> formerNeighbours,
+                                           NetworkChangeReason reason) {
+        int searchCount = formerNeighbours.size();
+        if (searchCount < 2) {
+            return;
+        }
+
+        TObjectIntMap<SignalNetworkNode> searchOfNode = new TObjectIntHashMap<>(16, 0.5f, -1);
+        List<Deque<SignalNetworkNode>> frontiers = Lists.newArrayListWithCapacity(searchCount);
+        List<List<SignalNetworkNode>> visitedNodes = Lists.newArrayListWithCapacity(searchCount);
+        int[] parentSearches = new int[searchCount];
+        boolean[] splitOff = new boolean[searchCount];
+        int partCount = searchCount;
+        for (int i = 0; i < searchCount; i++) {
+            SignalNetworkNode start = formerNeighbours.get(i);
+            parentSearches[i] = i;
+            frontiers.add(new ArrayDeque<>());
+            visitedNodes.add(Lists.newArrayList());
+            int otherSearch = searchOfNode.putIfAbsent(start, i);
+            if (otherSearch == -1) {
+                frontiers.get(i).add(start);
+                visitedNodes.get(i).add(start);
+            } else {
+                // Connected to the removed conductor more than once
+                parentSearches[i] = findSearch(parentSearches, otherSearch);
+                partCount--;
+            }
+        }
+
+        while (partCount > 1) {
+            // Advance every search by one node, in turns
+            for (int i = 0; i < searchCount && partCount > 1; i++) {
+                SignalNetworkNode node = frontiers.get(i).poll();
+                if (node == null) {
+                    continue;
+                }
+                long position = PackedPositions.pack(node.location);
+                for (Side side : getConnectionSides(node)) {
+                    for (SignalNetworkNode neighbour : getNetworkingNodesAt(PackedPositions.move(position, side))) {
+                        if (!connects(node, side, neighbour)) {
+                            continue;
+                        }
+                        int otherSearch = searchOfNode.putIfAbsent(neighbour, i);
+                        if (otherSearch == -1) {
+                            frontiers.get(i).add(neighbour);
+                            visitedNodes.get(i).add(neighbour);
+                        } else {
+                            int part = findSearch(parentSearches, i);
+                            int otherPart = findSearch(parentSearches, otherSearch);
+                            if (part != otherPart) {
+                                parentSearches[otherPart] = part;
+                                partCount--;
+                            }
+                        }
+                    }
+                }
+            }
+
+            // A part whose searches have all run out of nodes is no longer connected to the rest
+            for (int part = 0; part < searchCount && partCount > 1; part++) {
+                if (parentSearches[part] == part && !splitOff[part] && isExhausted(part, parentSearches, frontiers)) {
+                    List<SignalNetworkNode> partNodes = Lists.newArrayList();
+                    for (int i = 0; i < searchCount; i++) {
+                        if (findSearch(parentSearches, i) == part) {
+                            partNodes.addAll(visitedNodes.get(i));
+                        }
+                    }
+                    splitOff(network, partNodes, reason);
+                    splitOff[part] = true;
+                    partCount--;
+                }
+            }
+        }
+    }
+
+    private static boolean isExhausted(int part, int[] parentSearches, List<Deque<SignalNetworkNode>> frontiers) {
+        for (int i = 0; i < parentSearches.length; i++) {
+            if (!frontiers.get(i).isEmpty() && findSearch(parentSearches, i) == part) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int findSearch(int[] parentSearches, int search) {
+        int root = search;
+        while (parentSearches[root] != root) {
+            root = parentSearches[root];
+        }
+        return root;
+    }
+
+    /**
+     * Moves the given conductors, and the leaf nodes attached to them, out of a network into a new one.
+     */
+    private void splitOff(SignalGraphNetwork network, List<SignalNetworkNode> partNodes, NetworkChangeReason reason) {
+        SignalGraphNetwork splitNetwork = new SignalGraphNetwork(this);
+        networks.add(splitNetwork);
+        for (SignalNetworkNode partNode : partNodes) {
+            network.removeNetworkingNode(partNode);
+            splitNetwork.addNetworkingNode(partNode);
+            networkingNodeNetworks.put(partNode, splitNetwork);
+        }
+
+        Set<SignalNetworkNode> splitLeafNodes = Sets.newHashSet();
+        Set<SignalNetworkNode> detachedLeafNodes = Sets.newHashSet();
+        Set<SignalNetworkNode> changedLeafNodes = Sets.newHashSet();
+        for (SignalNetworkNode partNode : partNodes) {
+            attachLeafNodesAround(partNode, splitNetwork, splitLeafNodes, splitLeafNodes);
+            long position = PackedPositions.pack(partNode.location);
+            for (Side side : getConnectionSides(partNode)) {
+                for (SignalNetworkNode leafNode : getLeafNodesAt(PackedPositions.move(position, side))) {
+                    if (network.hasLeafNode(leafNode) && connects(partNode, side, leafNode)) {
+                        reattachLeafNode(leafNode, network, detachedLeafNodes, changedLeafNodes);
+                    }
+                }
+            }
+        }
+        // A leaf node losing sides first and then all of them has only been detached
+        changedLeafNodes.removeAll(detachedLeafNodes);
+
+        for (EfficientNetworkTopologyListener<SignalNetworkNode> listener : listeners) {
+            listener.networkingNodesRemoved(network, Sets.newHashSet(partNodes), reason);
+        }
+        fireLeafNodesRemoved(network, detachedLeafNodes, reason);
+        fireLeafSidesChanged(network, changedLeafNodes, reason);
+        for (EfficientNetworkTopologyListener<SignalNetworkNode> listener : listeners) {
+            listener.networkAdded(splitNetwork, reason);
+        }
+    }
+
+    /**
+     * Attaches the leaf nodes next to a conductor to its network.
+     *
+     * @param attachedLeafNodes Receives the leaf nodes that were not in the network before
+     * @param changedLeafNodes Receives the leaf nodes that were in the network before, and are attached on more sides now
+     */
+    private void attachLeafNodesAround(SignalNetworkNode networkingNode, SignalGraphNetwork network,
+                                       Set<SignalNetworkNode> attachedLeafNodes, Set<SignalNetworkNode> changedLeafNodes) {
+        long position = PackedPositions.pack(networkingNode.location);
+        for (Side side : getConnectionSides(networkingNode)) {
+            for (SignalNetworkNode leafNode : getLeafNodesAt(PackedPositions.move(position, side))) {
+                if (connects(networkingNode, side, leafNode)) {
+                    attachLeafNode(leafNode, network, SideBitFlag.getSide(side.reverse()), attachedLeafNodes,
+                            changedLeafNodes);
+                }
+            }
+        }
+    }
+
+    private void attachLeafNode(SignalNetworkNode leafNode, SignalGraphNetwork network, byte sides,
+                                Set<SignalNetworkNode> attachedLeafNodes, Set<SignalNetworkNode> changedLeafNodes) {
+        byte oldSides = network.getLeafSidesInNetwork(leafNode);
+        if (network.addLeafSides(leafNode, sides)) {
+            leafNodeNetworks.get(leafNode).add(network);
+            attachedLeafNodes.add(leafNode);
+        } else if ((oldSides | sides) != oldSides && !attachedLeafNodes.contains(leafNode)) {
+            changedLeafNodes.add(leafNode);
+        }
+    }
+
+    /**
+     * Works out again the sides a leaf node is attached to a network on, after conductors next to it have left the network.
+     *
+     * @param detachedLeafNodes Receives the leaf node if it is no longer attached to the network
+     * @param changedLeafNodes Receives the leaf node if it is still attached to the network, on fewer sides
+     */
+    private void reattachLeafNode(SignalNetworkNode leafNode, SignalGraphNetwork network,
+                                  Set<SignalNetworkNode> detachedLeafNodes, Set<SignalNetworkNode> changedLeafNodes) {
+        byte oldSides = network.getLeafSidesInNetwork(leafNode);
+        byte sides = 0;
+        long position = PackedPositions.pack(leafNode.location);
+        for (Side side : getConnectionSides(leafNode)) {
+            for (SignalNetworkNode neighbour : getNetworkingNodesAt(PackedPositions.move(position, side))) {
+                if (networkingNodeNetworks.get(neighbour) == network && connects(leafNode, side, neighbour)) {
+                    sides |= SideBitFlag.getSide(side);
+                }
+            }
+        }
+        network.setLeafSides(leafNode, sides);
+        if (sides == 0) {
+            leafNodeNetworks.get(leafNode).remove(network);
+            detachedLeafNodes.add(leafNode);
+        } else if (sides != oldSides) {
+            changedLeafNodes.add(leafNode);
+        }
+    }
+
+    private void fireLeafNodesAdded(SignalGraphNetwork network, Set<SignalNetworkNode> leafNodes,
+                                    NetworkChangeReason reason) {
+        if (!leafNodes.isEmpty()) {
+            for (EfficientNetworkTopologyListener<SignalNetworkNode> listener : listeners) {
+                listener.leafNodesAdded(network, leafNodes, reason);
+            }
+        }
+    }
+
+    private void fireLeafNodesRemoved(SignalGraphNetwork network, Set<SignalNetworkNode> leafNodes,
+                                      NetworkChangeReason reason) {
+        if (!leafNodes.isEmpty()) {
+            for (EfficientNetworkTopologyListener<SignalNetworkNode> listener : listeners) {
+                listener.leafNodesRemoved(network, leafNodes, reason);
+            }
+        }
+    }
+
+    /**
+     * Reports leaf nodes that are attached to a network on other sides than before as removed and added again.
+     */
+    private void fireLeafSidesChanged(SignalGraphNetwork network, Set<SignalNetworkNode> leafNodes,
+                                      NetworkChangeReason reason) {
+        fireLeafNodesRemoved(network, leafNodes, reason);
+        fireLeafNodesAdded(network, leafNodes, reason);
+    }
+
+    private List<SignalNetworkNode> getLeafNodesAt(long position) {
+        List<SignalNetworkNode> nodesAtPosition = leafNodesByPosition.get(position);
+        return nodesAtPosition != null ? nodesAtPosition : Collections.emptyList();
+    }
+
+    private static Side[] getConnectionSides(SignalNetworkNode node) {
+        return NetworkSignals.getSides((byte) (node.inputConnectionSides | node.outputConnectionSides));
+    }
+
+    /**
+     * @return True if the output of either node faces an input of the other one
+     */
+    private static boolean connects(SignalNetworkNode node, Side side, SignalNetworkNode neighbour) {
+        Side fromSide = side.reverse();
+        return SideBitFlag.hasSide(node.outputConnectionSides, side)
+                && SideBitFlag.hasSide(neighbour.inputConnectionSides, fromSide)
+                || SideBitFlag.hasSide(node.inputConnectionSides, side)
+                && SideBitFlag.hasSide(neighbour.outputConnectionSides, fromSide);
+    }
+
+    private static void addAtPosition(TLongObjectMap<List<SignalNetworkNode>> nodesByPosition, long position,
+                                      SignalNetworkNode node) {
+        List<SignalNetworkNode> nodesAtPosition = nodesByPosition.get(position);
+        if (nodesAtPosition == null) {
+            nodesAtPosition = Lists.newArrayListWithCapacity(1);
+            nodesByPosition.put(position, nodesAtPosition);
+        }
+        nodesAtPosition.add(node);
+    }
+
+    private static void removeAtPosition(TLongObjectMap<List<SignalNetworkNode>> nodesByPosition, long position,
+                                         SignalNetworkNode node) {
+        List<SignalNetworkNode> nodesAtPosition = nodesByPosition.get(position);
+        if (nodesAtPosition != null) {
+            nodesAtPosition.remove(node);
+            if (nodesAtPosition.isEmpty()) {
+                nodesByPosition.remove(position);
+            }
+        }
+    }
+}
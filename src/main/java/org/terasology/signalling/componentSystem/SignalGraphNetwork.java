@@ -0,0 +1,190 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.terasology.blockNetwork.Network2;
+import org.terasology.engine.math.Side;
+import org.terasology.engine.math.SideBitFlag;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A network of the {@link SignalGraph} engine.
+ * <p>
+ * Holds its conductors and, for every producer and consumer attached to it, the {@link SideBitFlag} mask of the sides it is
+ * attached on. A network without conductors is made of two leaf nodes connected to each other directly.
+ * <p>
+ * Distances follow the direction signals travel in: out of the output sides of a node into the input sides of the next one.
+ * They count the conductors on the way, so a consumer attached to a conductor next to the producer is at distance 1. Two leaf
+ * nodes connected directly are at distance 1 as well.
+ */
+final class SignalGraphNetwork implements Network2<SignalNetworkNode> {
+    private final SignalGraph graph;
+
+    private final Set<SignalNetworkNode> networkingNodes = Sets.newLinkedHashSet();
+    private final Map<SignalNetworkNode, Byte> leafSides = Maps.newLinkedHashMap();
+
+    private final Collection<SignalNetworkNode> networkingNodesView = Collections.unmodifiableSet(networkingNodes);
+    private final Collection<SignalNetworkNode> leafNodesView = Collections.unmodifiableSet(leafSides.keySet());
+
+    /**
+     * @param graph The engine the network belongs to
+     */
+    SignalGraphNetwork(SignalGraph graph) {
+        this.graph = graph;
+    }
+
+    void addNetworkingNode(SignalNetworkNode networkingNode) {
+        networkingNodes.add(networkingNode);
+    }
+
+    void removeNetworkingNode(SignalNetworkNode networkingNode) {
+        networkingNodes.remove(networkingNode);
+    }
+
+    /**
+     * Attaches a leaf node on the given sides, on top of the sides it is attached on already.
+     *
+     * @param leafNode The producer or consumer
+     * @param sides The {@link SideBitFlag} mask of the sides to attach it on
+     * @return True if the leaf node was not in the network before
+     */
+    boolean addLeafSides(SignalNetworkNode leafNode, byte sides) {
+        Byte oldSides = leafSides.put(leafNode, (byte) (sides | getLeafSidesInNetwork(leafNode)));
+        return oldSides == null;
+    }
+
+    /**
+     * Replaces the sides a leaf node is attached on, removing it from the network if there are none left.
+     *
+     * @param leafNode The producer or consumer
+     * @param sides The {@link SideBitFlag} mask of the sides it is attached on
+     */
+    void setLeafSides(SignalNetworkNode leafNode, byte sides) {
+        if (sides == 0) {
+            leafSides.remove(leafNode);
+        } else {
+            leafSides.put(leafNode, sides);
+        }
+    }
+
+    /**
+     * @return True if the network is made of two leaf nodes connected directly
+     */
+    boolean isDirectConnection() {
+        return networkingNodes.isEmpty();
+    }
+
+    @Override
+    public boolean hasNetworkingNode(SignalNetworkNode networkNode) {
+        return networkingNodes.contains(networkNode);
+    }
+
+    @Override
+    public boolean hasLeafNode(SignalNetworkNode networkNode) {
+        return leafSides.containsKey(networkNode);
+    }
+
+    @Override
+    public int getNetworkSize() {
+        return networkingNodes.size() + leafSides.size();
+    }
+
+    @Override
+    public Collection<SignalNetworkNode> getNetworkingNodes() {
+        return networkingNodesView;
+    }
+
+    @Override
+    public Collection<SignalNetworkNode> getLeafNodes() {
+        return leafNodesView;
+    }
+
+    @Override
+    public byte getLeafSidesInNetwork(SignalNetworkNode networkNode) {
+        Byte sides = leafSides.get(networkNode);
+        return sides != null ? sides : 0;
+    }
+
+    @Override
+    public int getDistance(SignalNetworkNode from, SignalNetworkNode to, int maxToSearch) {
+        int result = -1;
+        for (Side side : NetworkSignals.getSides(getLeafSidesInNetwork(to))) {
+            int distance = getDistanceWithSide(from, to, side, maxToSearch);
+            if (distance != -1 && (result == -1 || distance < result)) {
+                result = distance;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int getDistanceWithSide(SignalNetworkNode from, SignalNetworkNode to, Side toSide, int maxToSearch) {
+        byte fromSides = (byte) (getLeafSidesInNetwork(from) & from.outputConnectionSides);
+        byte toSides = (byte) (getLeafSidesInNetwork(to) & to.inputConnectionSides);
+        if (fromSides == 0 || !SideBitFlag.hasSide(toSides, toSide) || maxToSearch < 1) {
+            return -1;
+        }
+        if (isDirectConnection()) {
+            return 1;
+        }
+
+        long fromPosition = PackedPositions.pack(from.location);
+        long targetPosition = PackedPositions.move(PackedPositions.pack(to.location), toSide);
+        Side towardsTo = toSide.reverse();
+
+        Set<SignalNetworkNode> visited = Sets.newIdentityHashSet();
+        List<SignalNetworkNode> level = Lists.newArrayList();
+        for (Side side : NetworkSignals.getSides(fromSides)) {
+            offerFedNodes(PackedPositions.move(fromPosition, side), side.reverse(), visited, level);
+        }
+
+        List<SignalNetworkNode> nextLevel = Lists.newArrayList();
+        for (int distance = 1; !level.isEmpty() && distance <= maxToSearch; distance++) {
+            for (int i = 0; i < level.size(); i++) {
+                SignalNetworkNode node = level.get(i);
+                long position = PackedPositions.pack(node.location);
+                if (position == targetPosition && SideBitFlag.hasSide(node.outputConnectionSides, towardsTo)) {
+                    return distance;
+                }
+                for (Side side : NetworkSignals.getSides(node.outputConnectionSides)) {
+                    offerFedNodes(PackedPositions.move(position, side), side.reverse(), visited, nextLevel);
+                }
+            }
+            List<SignalNetworkNode> swap = level;
+            level = nextLevel;
+            nextLevel = swap;
+            nextLevel.clear();
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean isInDistance(int distance, SignalNetworkNode from, SignalNetworkNode to) {
+        return getDistance(from, to, distance) != -1;
+    }
+
+    @Override
+    public boolean isInDistanceWithSide(int distance, SignalNetworkNode from, SignalNetworkNode to, Side toSide) {
+        return getDistanceWithSide(from, to, toSide, distance) != -1;
+    }
+
+    private void offerFedNodes(long position, Side fromSide, Set<SignalNetworkNode> visited,
+                               List<SignalNetworkNode> level) {
+        List<SignalNetworkNode> nodesAtPosition = graph.getNetworkingNodesAt(position);
+        for (int i = 0; i < nodesAtPosition.size(); i++) {
+            SignalNetworkNode node = nodesAtPosition.get(i);
+            if (SideBitFlag.hasSide(node.inputConnectionSides, fromSide) && networkingNodes.contains(node)
+                    && visited.add(node)) {
+                level.add(node);
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import org.terasology.blockNetwork.EfficientNetworkTopologyListener;
+import org.terasology.blockNetwork.Network2;
+import org.terasology.blockNetwork.NetworkChangeReason;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The graph engine keeping track of which {@link SignalNetworkNode}s form a network together.
+ * <p>
+ * Changes to the networks are reported to the {@link EfficientNetworkTopologyListener}s, the same way the BlockNetwork
+ * module reports them, so the signal system does not depend on the engine in use.
+ */
+interface SignalNetworkEngine {
+    /**
+     * @param listener The listener to notify of every change to the networks
+     */
+    void addTopologyListener(EfficientNetworkTopologyListener<SignalNetworkNode> listener);
+
+    /**
+     * @param networkingNodes The conductors to add
+     * @param reason The reason the conductors are added
+     */
+    void addNetworkingBlocks(Set<SignalNetworkNode> networkingNodes, NetworkChangeReason reason);
+
+    /**
+     * Adds conductors that are known to form connected groups, such as those {@link ConnectedGroups} finds. An engine may build
+     * the network of a group at once, instead of growing it one conductor at a time.
+     *
+     * @param groups The conductors to add, each group connected within itself
+     * @param reason The reason the conductors are added
+     */
+    void addNetworkingBlockGroups(List<Set<SignalNetworkNode>> groups, NetworkChangeReason reason);
+
+    /**
+     * @param networkingNodes The conductors to remove
+     * @param reason The reason the conductors are removed
+     */
+    void removeNetworkingBlocks(Set<SignalNetworkNode> networkingNodes, NetworkChangeReason reason);
+
+    /**
+     * @param leafNodes The producers and consumers to add
+     * @param reason The reason the nodes are added
+     */
+    void addLeafBlocks(Set<SignalNetworkNode> leafNodes, NetworkChangeReason reason);
+
+    /**
+     * @param leafNodes The producers and consumers to remove
+     * @param reason The reason the nodes are removed
+     */
+    void removeLeafBlocks(Set<SignalNetworkNode> leafNodes, NetworkChangeReason reason);
+
+    /**
+     * @param network A network reported to the listeners
+     * @return True if the network has not been removed since
+     */
+    boolean isNetworkActive(Network2<SignalNetworkNode> network);
+
+    /**
+     * @param leafNode A producer or consumer
+     * @return True if the node has been added to the engine
+     */
+    boolean containsLeafNode(SignalNetworkNode leafNode);
+}
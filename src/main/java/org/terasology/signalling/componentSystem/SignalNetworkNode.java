@@ -7,13 +7,21 @@ import org.terasology.blockNetwork.NetworkNode;
 
 /**
  * Note that two nodes will be considered the same if their types are equal.
+ * <p>
+ * The dense id given to a node by the signal system is not part of its identity.
  */
 public class SignalNetworkNode extends NetworkNode {
+    /**
+     * The id of a node that has not been registered with the signal system.
+     */
+    public static final int NO_ID = -1;
+
     public enum Type {
         PRODUCER, CONSUMER, CONDUCTOR
     }
 
     private Type type;
+    private int id = NO_ID;
 
     public SignalNetworkNode(Vector3ic location, byte inputSides, byte outputSides, Type type) {
         super(location, inputSides, outputSides);
@@ -27,6 +35,17 @@ public class SignalNetworkNode extends NetworkNode {
         return type;
     }
 
+    /**
+     * @return The dense id of this node, or {@link #NO_ID} if it is not registered with the signal system
+     */
+    public int getId() {
+        return id;
+    }
+
+    void setId(int id) {
+        this.id = id;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
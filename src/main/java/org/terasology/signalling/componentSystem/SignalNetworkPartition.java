@@ -0,0 +1,229 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import gnu.trove.map.TLongIntMap;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import org.terasology.blockNetwork.Network2;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The leaf nodes of a single signal network, split by their {@link SignalNetworkNode.Type}.
+ * <p>
+ * Kept up to date by {@link SignalEfficientNetworkState} from the topology callbacks, so that the producers and consumers of
+ * a network can be read without filtering its leaf nodes. The producers with infinite strength are also counted per
+ * position, which tells in constant time whether a consumer is powered by the whole network.
+ * <p>
+ * The producers and consumers are kept in lists, which the signal update walks by index without allocating an iterator. A
+ * removed node is replaced by the last one of its list, so the order of the nodes is not kept.
+ * <p>
+ * The {@link ConductorChains} of the network are kept here as well, built when first needed and updated in place as
+ * conductors join and leave the network.
+ */
+final class SignalNetworkPartition {
+    private final Network2<SignalNetworkNode> network;
+    private final int id;
+    private final SignalNodeRegistry nodeRegistry;
+
+    private final List<SignalNetworkNode> producers = Lists.newArrayList();
+    private final List<SignalNetworkNode> consumers = Lists.newArrayList();
+    // The index of every producer and consumer in its list
+    private final TObjectIntMap<SignalNetworkNode> leafNodeIndices = new TObjectIntHashMap<>(16, 0.5f, -1);
+
+    private final List<SignalNetworkNode> producersView = Collections.unmodifiableList(producers);
+    private final List<SignalNetworkNode> consumersView = Collections.unmodifiableList(consumers);
+
+    private final Set<SignalNetworkNode> unlimitedProducers = Sets.newHashSet();
+    private final TLongIntMap unlimitedProducerPositions = new TLongIntHashMap();
+
+    private ConductorChains conductorChains;
+    private long topologyVersion;
+
+    /**
+     * @param network The network the partition belongs to
+     * @param id The dense id given to the network
+     * @param nodeRegistry The registry the conductors of the network are looked up in
+     */
+    SignalNetworkPartition(Network2<SignalNetworkNode> network, int id, SignalNodeRegistry nodeRegistry) {
+        this.network = network;
+        this.id = id;
+        this.nodeRegistry = nodeRegistry;
+    }
+
+    /**
+     * @return The network the partition belongs to
+     */
+    Network2<SignalNetworkNode> getNetwork() {
+        return network;
+    }
+
+    /**
+     * @return The dense id of the network
+     */
+    int getId() {
+        return id;
+    }
+
+    /**
+     * @return The version of the nodes in the network, unique among all networks
+     */
+    long getTopologyVersion() {
+        return topologyVersion;
+    }
+
+    /**
+     * @param topologyVersion The new version of the nodes in the network, after a change to them
+     */
+    void setTopologyVersion(long topologyVersion) {
+        this.topologyVersion = topologyVersion;
+    }
+
+    /**
+     * @return The contracted conductors of the network, built when first needed
+     */
+    ConductorChains getConductorChains() {
+        if (conductorChains == null) {
+            conductorChains = new ConductorChains(network, nodeRegistry);
+        }
+        return conductorChains;
+    }
+
+    /**
+     * Contracts conductors that joined the network, if its conductors have been contracted already.
+     *
+     * @param conductors The conductors added to the network
+     */
+    void addConductors(Collection<SignalNetworkNode> conductors) {
+        if (conductorChains != null) {
+            conductorChains.addConductors(conductors);
+        }
+    }
+
+    /**
+     * Drops conductors that left the network from its contracted conductors, if there are any.
+     *
+     * @param conductors The conductors removed from the network
+     */
+    void removeConductors(Collection<SignalNetworkNode> conductors) {
+        if (conductorChains != null) {
+            conductorChains.removeConductors(conductors);
+        }
+    }
+
+    /**
+     * Adds a leaf node to the partition matching its type.
+     *
+     * @param leafNode The leaf node that joined the network
+     * @param signalStrength The strength of the leaf node if it is a producer
+     */
+    void addLeafNode(SignalNetworkNode leafNode, int signalStrength) {
+        if (leafNode.getType() == SignalNetworkNode.Type.PRODUCER) {
+            if (addToList(producers, leafNode)) {
+                setProducerSignalStrength(leafNode, signalStrength);
+            }
+        } else if (leafNode.getType() == SignalNetworkNode.Type.CONSUMER) {
+            addToList(consumers, leafNode);
+        }
+    }
+
+    /**
+     * Removes a leaf node from the partition matching its type.
+     *
+     * @param leafNode The leaf node that left the network
+     */
+    void removeLeafNode(SignalNetworkNode leafNode) {
+        if (leafNode.getType() == SignalNetworkNode.Type.PRODUCER) {
+            removeFromList(producers, leafNode);
+            setProducerSignalStrength(leafNode, 0);
+        } else if (leafNode.getType() == SignalNetworkNode.Type.CONSUMER) {
+            removeFromList(consumers, leafNode);
+        }
+    }
+
+    private boolean addToList(List<SignalNetworkNode> leafNodes, SignalNetworkNode leafNode) {
+        if (leafNodeIndices.containsKey(leafNode)) {
+            return false;
+        }
+        leafNodeIndices.put(leafNode, leafNodes.size());
+        leafNodes.add(leafNode);
+        return true;
+    }
+
+    private void removeFromList(List<SignalNetworkNode> leafNodes, SignalNetworkNode leafNode) {
+        int index = leafNodeIndices.remove(leafNode);
+        if (index == -1) {
+            return;
+        }
+        SignalNetworkNode last = leafNodes.remove(leafNodes.size() - 1);
+        if (last != leafNode) {
+            leafNodes.set(index, last);
+            leafNodeIndices.put(last, index);
+        }
+    }
+
+    /**
+     * Updates the count of producers with infinite strength after the strength of a producer has changed.
+     *
+     * @param producer A producer in the network
+     * @param signalStrength The new strength of the producer
+     */
+    void setProducerSignalStrength(SignalNetworkNode producer, int signalStrength) {
+        long position = PackedPositions.pack(producer.location);
+        if (signalStrength == -1) {
+            if (unlimitedProducers.add(producer)) {
+                unlimitedProducerPositions.adjustOrPutValue(position, 1, 1);
+            }
+        } else if (unlimitedProducers.remove(producer)) {
+            if (unlimitedProducerPositions.adjustOrPutValue(position, -1, 0) <= 0) {
+                unlimitedProducerPositions.remove(position);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the given consumer receives a signal of infinite strength from this network.
+     *
+     * @param consumer A consumer in the network
+     * @param consumerCanPowerItself Whether a producer on the location of the consumer counts
+     * @return True if a producer with infinite strength powers the consumer
+     */
+    boolean hasUnlimitedSignalFor(SignalNetworkNode consumer, boolean consumerCanPowerItself) {
+        int unlimitedProducerCount = unlimitedProducers.size();
+        if (unlimitedProducerCount == 0) {
+            return false;
+        }
+        if (consumerCanPowerItself) {
+            return true;
+        }
+        return unlimitedProducerCount > unlimitedProducerPositions.get(PackedPositions.pack(consumer.location));
+    }
+
+    /**
+     * @return The number of producers with infinite strength in the network
+     */
+    int getUnlimitedProducerCount() {
+        return unlimitedProducers.size();
+    }
+
+    /**
+     * @return A read-only view of the producers in the network, in no particular order
+     */
+    List<SignalNetworkNode> getProducers() {
+        return producersView;
+    }
+
+    /**
+     * @return A read-only view of the consumers in the network, in no particular order
+     */
+    List<SignalNetworkNode> getConsumers() {
+        return consumersView;
+    }
+}
@@ -0,0 +1,164 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import com.google.common.collect.Lists;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Hands out dense integer ids to the {@link SignalNetworkNode}s added to the signal network, and keeps the one canonical
+ * instance of every registered node.
+ * <p>
+ * The id of a node is stored on the registered instance itself, so state kept per node can live in plain arrays indexed by
+ * it. Ids of unregistered nodes are reused, keeping the arrays as small as the number of nodes in the world.
+ * <p>
+ * Registered nodes are indexed by their {@link PackedPositions packed position}, so the nodes of a block can be found again
+ * without building a node to compare against, which would need the connections of the block to be worked out again. A
+ * position holds at most one producer and one consumer, but may hold a conductor for every connection group of its block.
+ * <p>
+ * The {@link ConductorChains} of every network look up conductors by position here, also from the background tasks of the
+ * pipelined signal update. While positions are {@link #holdPositions() held}, a changed position is copied and only
+ * {@link #publishPositions() published} once those tasks are done, so they never see the index change under them.
+ */
+final class SignalNodeRegistry {
+    private final TLongObjectMap<List<SignalNetworkNode>> nodesByPosition = new TLongObjectHashMap<>();
+    // The positions changed while held, empty lists for positions left without nodes
+    private final TLongObjectMap<List<SignalNetworkNode>> unpublishedPositions = new TLongObjectHashMap<>();
+    private boolean positionsHeld;
+    private final List<SignalNetworkNode> nodesById = Lists.newArrayList();
+    private final TIntList freeIds = new TIntArrayList();
+
+    /**
+     * Registers a node, giving it an id. If an equal node is registered already, that one is returned instead.
+     *
+     * @param node The node to register
+     * @return The registered instance equal to the given node
+     */
+    SignalNetworkNode register(SignalNetworkNode node) {
+        long position = PackedPositions.pack(node.location);
+        List<SignalNetworkNode> nodesAtPosition = getCurrentNodesAt(position);
+        if (nodesAtPosition != null) {
+            for (int i = 0; i < nodesAtPosition.size(); i++) {
+                SignalNetworkNode registeredNode = nodesAtPosition.get(i);
+                if (registeredNode.equals(node)) {
+                    return registeredNode;
+                }
+            }
+        }
+        getNodesToChangeAt(position).add(node);
+
+        int id;
+        if (freeIds.isEmpty()) {
+            id = nodesById.size();
+            nodesById.add(node);
+        } else {
+            id = freeIds.removeAt(freeIds.size() - 1);
+            nodesById.set(id, node);
+        }
+        node.setId(id);
+        return node;
+    }
+
+    /**
+     * @param position The packed position of the nodes
+     * @return A read-only view of the nodes registered at the position, of any type
+     */
+    List<SignalNetworkNode> getNodesAt(long position) {
+        List<SignalNetworkNode> nodesAtPosition = getCurrentNodesAt(position);
+        return nodesAtPosition != null ? Collections.unmodifiableList(nodesAtPosition) : Collections.emptyList();
+    }
+
+    /**
+     * Reads the nodes at a position as last published, which is safe from other threads while positions are held. Does not
+     * allocate a view, the list must not be modified.
+     *
+     * @param position The packed position of the nodes
+     * @return The nodes registered at the position, of any type
+     */
+    List<SignalNetworkNode> getPublishedNodesAt(long position) {
+        List<SignalNetworkNode> nodesAtPosition = nodesByPosition.get(position);
+        return nodesAtPosition != null ? nodesAtPosition : Collections.emptyList();
+    }
+
+    /**
+     * Keeps the published positions as they are until {@link #publishPositions()}, while nodes are still registered and
+     * unregistered.
+     */
+    void holdPositions() {
+        positionsHeld = true;
+    }
+
+    /**
+     * Publishes the positions changed since {@link #holdPositions()}.
+     */
+    void publishPositions() {
+        positionsHeld = false;
+        unpublishedPositions.forEachEntry((position, nodesAtPosition) -> {
+            if (nodesAtPosition.isEmpty()) {
+                nodesByPosition.remove(position);
+            } else {
+                nodesByPosition.put(position, nodesAtPosition);
+            }
+            return true;
+        });
+        unpublishedPositions.clear();
+    }
+
+    private List<SignalNetworkNode> getCurrentNodesAt(long position) {
+        List<SignalNetworkNode> nodesAtPosition = positionsHeld ? unpublishedPositions.get(position) : null;
+        return nodesAtPosition != null ? nodesAtPosition : nodesByPosition.get(position);
+    }
+
+    private List<SignalNetworkNode> getNodesToChangeAt(long position) {
+        TLongObjectMap<List<SignalNetworkNode>> positions = positionsHeld ? unpublishedPositions : nodesByPosition;
+        List<SignalNetworkNode> nodesAtPosition = positions.get(position);
+        if (nodesAtPosition == null) {
+            List<SignalNetworkNode> publishedNodes = positionsHeld ? nodesByPosition.get(position) : null;
+            nodesAtPosition = publishedNodes != null ? Lists.newArrayList(publishedNodes) : Lists.newArrayListWithCapacity(1);
+            positions.put(position, nodesAtPosition);
+        }
+        return nodesAtPosition;
+    }
+
+    /**
+     * Unregisters a node, releasing its id. The instance is left without an id.
+     *
+     * @param node The registered instance
+     */
+    void unregister(SignalNetworkNode node) {
+        int id = node.getId();
+        if (id == SignalNetworkNode.NO_ID) {
+            return;
+        }
+        long position = PackedPositions.pack(node.location);
+        List<SignalNetworkNode> nodesAtPosition = getNodesToChangeAt(position);
+        nodesAtPosition.remove(node);
+        if (nodesAtPosition.isEmpty() && !positionsHeld) {
+            nodesByPosition.remove(position);
+        }
+        nodesById.set(id, null);
+        freeIds.add(id);
+        node.setId(SignalNetworkNode.NO_ID);
+    }
+
+    /**
+     * @param id The id of a node
+     * @return The registered node with the given id, or null if the id is not in use
+     */
+    SignalNetworkNode getNode(int id) {
+        return id >= 0 && id < nodesById.size() ? nodesById.get(id) : null;
+    }
+
+    /**
+     * @return One more than the highest id handed out so far
+     */
+    int getIdLimit() {
+        return nodesById.size();
+    }
+}
@@ -0,0 +1,212 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import com.google.common.collect.Lists;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.procedure.TObjectProcedure;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import org.terasology.engine.math.Side;
+import org.terasology.engine.math.SideBitFlag;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The best remaining signal strength at every networking node of a network, computed with a single breadth-first search
+ * started from all limited strength producers at once.
+ * <p>
+ * A producer of strength {@code s} gives strength {@code s} to the conductors next to it, and every further conductor on
+ * the way takes one away. A consumer receives on a side the strength of the best conductor connecting to it on that side,
+ * which is the same {@code strength - distance + 1} that a path search between every producer and consumer would give.
+ * Producers with infinite strength are not part of the field, as they power the whole network anyway.
+ * <p>
+ * The search runs over the {@link ConductorChains} of the network, so it only visits junctions. The strength of a conductor
+ * inside a chain is worked out when it is read, from the strengths at both ends of the chain and the producers attached to it.
+ */
+final class SignalStrengthField {
+    private ConductorChains conductorChains;
+    private int[] junctionStrengths = new int[64];
+    // Producers attached to conductors inside a chain, as pairs of chain index and strength by chain id
+    private final TIntObjectMap<TIntArrayList> chainSources = new TIntObjectHashMap<>();
+    private final List<TIntArrayList> freeSourceLists = Lists.newArrayList();
+    private final TLongSet sourcePositions = new TLongHashSet();
+    private final List<TIntArrayList> buckets = Lists.newArrayList();
+    private final TObjectProcedure<TIntArrayList> releaseSourceList = sources -> {
+        sources.resetQuick();
+        freeSourceLists.add(sources);
+        return true;
+    };
+
+    /**
+     * Computes the field for a network, discarding the previously computed one.
+     *
+     * @param chains The contracted conductors of the network to compute the field for
+     * @param producers The producers in the network
+     * @param networkState The state holding the current strength of every producer
+     */
+    void compute(ConductorChains chains, List<SignalNetworkNode> producers, SignalEfficientNetworkState networkState) {
+        clear();
+        conductorChains = chains;
+
+        int junctionCount = chains.getJunctionCount();
+        if (junctionStrengths.length < junctionCount) {
+            junctionStrengths = new int[Math.max(junctionCount, junctionStrengths.length * 2)];
+        } else {
+            Arrays.fill(junctionStrengths, 0, junctionCount, 0);
+        }
+
+        int maxStrength = 0;
+        for (int i = 0; i < producers.size(); i++) {
+            maxStrength = Math.max(maxStrength, networkState.getProducerSignalStrength(producers.get(i)));
+        }
+        if (maxStrength <= 0) {
+            return;
+        }
+
+        while (buckets.size() <= maxStrength) {
+            buckets.add(new TIntArrayList());
+        }
+
+        for (int p = 0; p < producers.size(); p++) {
+            SignalNetworkNode producer = producers.get(p);
+            int signalStrength = networkState.getProducerSignalStrength(producer);
+            if (signalStrength > 0) {
+                long position = PackedPositions.pack(producer.location);
+                sourcePositions.add(position);
+                for (Side side : NetworkSignals.getSides(producer.outputConnectionSides)) {
+                    List<SignalNetworkNode> nodesAtPosition = chains.getNodesAt(PackedPositions.move(position, side));
+                    Side fromSide = side.reverse();
+                    for (int i = 0; i < nodesAtPosition.size(); i++) {
+                        SignalNetworkNode neighbour = nodesAtPosition.get(i);
+                        if (SideBitFlag.hasSide(neighbour.inputConnectionSides, fromSide) && chains.contains(neighbour)) {
+                            offerSource(neighbour, signalStrength);
+                        }
+                    }
+                }
+            }
+        }
+
+        // Strengths only ever decrease along the way, so visiting buckets from the strongest down guarantees that every
+        // junction is expanded with its best strength only
+        for (int strength = maxStrength; strength > 1; strength--) {
+            TIntList bucket = buckets.get(strength);
+            for (int i = 0; i < bucket.size(); i++) {
+                int junctionId = bucket.get(i);
+                if (junctionStrengths[junctionId] == strength) {
+                    TIntList targets = chains.getEdgeTargets(junctionId);
+                    TIntList weights = chains.getEdgeWeights(junctionId);
+                    for (int j = 0; j < targets.size(); j++) {
+                        offer(targets.get(j), strength - weights.get(j));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param position The packed position of a producer
+     * @return If a limited strength producer at the given position is one of the sources of the field
+     */
+    boolean hasSourceAt(long position) {
+        return sourcePositions.contains(position);
+    }
+
+    /**
+     * Reads the strongest signal reaching the consumer on the given side.
+     *
+     * @param consumerNode The consumer receiving the signal
+     * @param side The side of the consumer to check
+     * @return The strength of the signal, 0 if none reaches the consumer on that side
+     */
+    int getSignalOnSide(SignalNetworkNode consumerNode, Side side) {
+        if (!SideBitFlag.hasSide(consumerNode.inputConnectionSides, side)) {
+            return 0;
+        }
+        List<SignalNetworkNode> nodesAtPosition =
+                conductorChains.getNodesAt(PackedPositions.move(PackedPositions.pack(consumerNode.location), side));
+        Side towardsConsumer = side.reverse();
+        int result = 0;
+        for (int i = 0; i < nodesAtPosition.size(); i++) {
+            SignalNetworkNode networkingNode = nodesAtPosition.get(i);
+            if (SideBitFlag.hasSide(networkingNode.outputConnectionSides, towardsConsumer)
+                    && conductorChains.contains(networkingNode)) {
+                result = Math.max(result, getRemainingStrength(networkingNode));
+            }
+        }
+        return result;
+    }
+
+    private int getRemainingStrength(SignalNetworkNode networkingNode) {
+        int junctionId = conductorChains.getJunctionId(networkingNode);
+        if (junctionId != ConductorChains.NONE) {
+            return junctionStrengths[junctionId];
+        }
+        int chainId = conductorChains.getChainId(networkingNode);
+        int index = conductorChains.getChainIndex(networkingNode);
+        int length = conductorChains.getChainLength(chainId);
+        int result = 0;
+        if (conductorChains.startFeedsChain(chainId)) {
+            result = Math.max(result, junctionStrengths[conductorChains.getChainStart(chainId)] - index);
+        }
+        if (conductorChains.endFeedsChain(chainId)) {
+            result = Math.max(result, junctionStrengths[conductorChains.getChainEnd(chainId)] - (length + 1 - index));
+        }
+        TIntList sources = chainSources.get(chainId);
+        if (sources != null) {
+            for (int i = 0; i < sources.size(); i += 2) {
+                result = Math.max(result, sources.get(i + 1) - Math.abs(index - sources.get(i)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gives the strength of a producer to a conductor next to it. A conductor inside a chain keeps it for reads, and passes it
+     * on to the ends of the chain.
+     */
+    private void offerSource(SignalNetworkNode networkingNode, int strength) {
+        int junctionId = conductorChains.getJunctionId(networkingNode);
+        if (junctionId != ConductorChains.NONE) {
+            offer(junctionId, strength);
+            return;
+        }
+        int chainId = conductorChains.getChainId(networkingNode);
+        int index = conductorChains.getChainIndex(networkingNode);
+        TIntArrayList sources = chainSources.get(chainId);
+        if (sources == null) {
+            sources = freeSourceLists.isEmpty() ? new TIntArrayList(2) : freeSourceLists.remove(freeSourceLists.size() - 1);
+            chainSources.put(chainId, sources);
+        }
+        sources.add(index);
+        sources.add(strength);
+        if (conductorChains.chainFeedsStart(chainId)) {
+            offer(conductorChains.getChainStart(chainId), strength - index);
+        }
+        if (conductorChains.chainFeedsEnd(chainId)) {
+            offer(conductorChains.getChainEnd(chainId), strength - (conductorChains.getChainLength(chainId) + 1 - index));
+        }
+    }
+
+    private void offer(int junctionId, int strength) {
+        if (strength > 0 && junctionStrengths[junctionId] < strength) {
+            junctionStrengths[junctionId] = strength;
+            buckets.get(strength).add(junctionId);
+        }
+    }
+
+    private void clear() {
+        conductorChains = null;
+        chainSources.forEachValue(releaseSourceList);
+        chainSources.clear();
+        sourcePositions.clear();
+        // Unlike clear, resetQuick keeps the backing arrays instead of allocating new ones
+        for (int i = 0; i < buckets.size(); i++) {
+            buckets.get(i).resetQuick();
+        }
+    }
+}
@@ -36,11 +36,9 @@ import org.terasology.engine.world.block.BlockComponent;
 import org.terasology.engine.world.block.BlockManager;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
 import org.terasology.signalling.components.SignalConsumerAdvancedStatusComponent;
-import org.terasology.signalling.components.SignalConsumerComponent;
 import org.terasology.signalling.components.SignalConsumerStatusComponent;
 import org.terasology.signalling.components.SignalGateComponent;
 import org.terasology.signalling.components.SignalProducerComponent;
-import org.terasology.signalling.components.SignalProducerModifiedComponent;
 import org.terasology.signalling.components.SignalTimeDelayComponent;
 import org.terasology.signalling.components.SignalTimeDelayModifiedComponent;
 import org.terasology.signalling.nui.SetSignalDelayEvent;
@@ -81,6 +79,8 @@ public class SignalSwitchBehaviourSystem extends BaseComponentSystem implements
     private BlockEntityRegistry blockEntityRegistry;
     @In
     private DelayManager delayManager;
+    @In
+    private SignalSystem signalSystem;
 
 
     private Set<Vector3i> activatedPressurePlates = Sets.newHashSet();
@@ -89,8 +89,6 @@ public class SignalSwitchBehaviourSystem extends BaseComponentSystem implements
 
     private long lastSignalCleanupExecuteTime;
 
-    private Block lampTurnedOff;
-    private Block lampTurnedOn;
     private Block signalTransformer;
     private Block signalPressurePlate;
     private Block signalSwitch;
@@ -107,8 +105,6 @@ public class SignalSwitchBehaviourSystem extends BaseComponentSystem implements
     @Override
     public void initialise() {
         final BlockManager blockManager = CoreRegistry.get(BlockManager.class);
-        lampTurnedOff = blockManager.getBlock("signalling:SignalLampOff");
-        lampTurnedOn = blockManager.getBlock("signalling:SignalLampOn");
         signalTransformer = blockManager.getBlock("signalling:SignalTransformer");
         signalPressurePlate = blockManager.getBlock("signalling:SignalPressurePlate");
         signalSwitch = blockManager.getBlock("signalling:SignalSwitch");
@@ -321,19 +317,7 @@ public class SignalSwitchBehaviourSystem extends BaseComponentSystem implements
                 }
             }
         }
-        if (producerComponent.signalStrength != resultSignal) {
-            producerComponent.signalStrength = resultSignal;
-            blockEntity.saveComponent(producerComponent);
-            if (resultSignal != 0) {
-                if (!blockEntity.hasComponent(SignalProducerModifiedComponent.class)) {
-                    blockEntity.addComponent(new SignalProducerModifiedComponent());
-                }
-            } else if (blockEntity.hasComponent(SignalProducerModifiedComponent.class)) {
-                blockEntity.removeComponent(SignalProducerModifiedComponent.class);
-            }
-            return true;
-        }
-        return false;
+        return signalSystem.setProducerSignalStrength(blockEntity, resultSignal);
     }
 
     /**
@@ -525,34 +509,6 @@ public class SignalSwitchBehaviourSystem extends BaseComponentSystem implements
         }
     }
 
-    /**
-     * Updates a Consumer of a signal based on a change to that signal.
-     * Example: Turning on and off a lamp.
-     * @param event The event modifying the consumer.
-     * @param entity The consumer to be updated.
-     */
-    @ReceiveEvent(components = SignalConsumerStatusComponent.class)
-    public void consumerModified(OnChangedComponent event, EntityRef entity) {
-        if (entity.hasComponent(BlockComponent.class)) {
-            SignalConsumerStatusComponent consumerStatusComponent = entity.getComponent(SignalConsumerStatusComponent.class);
-            Vector3i blockLocation = entity.getComponent(BlockComponent.class).getPosition(new Vector3i());
-            Block block = worldProvider.getBlock(blockLocation);
-
-            SignalConsumerComponent signalConsumerComponent = entity.getComponent(SignalConsumerComponent.class);
-
-            if (block == lampTurnedOff && consumerStatusComponent.hasSignal) {
-                lampTurnedOn.setKeepActive(true);
-                worldProvider.setBlock(blockLocation, lampTurnedOn);
-            } else if (block == lampTurnedOn && !consumerStatusComponent.hasSignal) {
-                lampTurnedOff.setKeepActive(true);
-                worldProvider.setBlock(blockLocation, lampTurnedOff);
-            }
-            blockEntityRegistry.getBlockEntityAt(blockLocation).addOrSaveComponent(signalConsumerComponent);
-            worldProvider.getBlock(blockLocation).setKeepActive(true);
-
-        }
-    }
-
     private void signalChangedForDelayOffGate(EntityRef entity, SignalConsumerStatusComponent consumerStatusComponent) {
         SignalTimeDelayComponent delay = entity.getComponent(SignalTimeDelayComponent.class);
         if (consumerStatusComponent.hasSignal) {
@@ -613,14 +569,7 @@ public class SignalSwitchBehaviourSystem extends BaseComponentSystem implements
      * @return A boolean stating whether a change to the {@link SignalProducerComponent} was actually made.
      */
     private boolean startProducingSignal(EntityRef entity, int signalStrength) {
-        final SignalProducerComponent producer = entity.getComponent(SignalProducerComponent.class);
-        if (producer.signalStrength != signalStrength) {
-            producer.signalStrength = signalStrength;
-            entity.saveComponent(producer);
-            entity.addComponent(new SignalProducerModifiedComponent());
-            return true;
-        }
-        return false;
+        return signalSystem.setProducerSignalStrength(entity, signalStrength);
     }
 
     /**
@@ -630,13 +579,6 @@ public class SignalSwitchBehaviourSystem extends BaseComponentSystem implements
      * @return A boolean stating whether a change to the {@link SignalProducerComponent} was actually made.
      */
     private boolean stopProducingSignal(EntityRef entity) {
-        SignalProducerComponent producer = entity.getComponent(SignalProducerComponent.class);
-        if (producer.signalStrength != 0) {
-            producer.signalStrength = 0;
-            entity.saveComponent(producer);
-            entity.removeComponent(SignalProducerModifiedComponent.class);
-            return true;
-        }
-        return false;
+        return signalSystem.setProducerSignalStrength(entity, 0);
     }
 }
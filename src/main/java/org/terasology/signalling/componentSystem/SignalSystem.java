@@ -2,48 +2,61 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.terasology.signalling.componentSystem;
 
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Maps;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import gnu.trove.list.array.TIntArrayList;
 import org.joml.Vector3i;
 import org.joml.Vector3ic;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.terasology.blockNetwork.BlockNetworkUtil;
-import org.terasology.blockNetwork.EfficientBlockNetwork;
+import org.terasology.blockNetwork.EfficientNetworkTopologyListener;
 import org.terasology.blockNetwork.Network2;
 import org.terasology.blockNetwork.NetworkChangeReason;
 import org.terasology.engine.core.Time;
+import org.terasology.engine.entitySystem.entity.EntityManager;
 import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnActivatedComponent;
 import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnChangedComponent;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterMode;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
 import org.terasology.engine.entitySystem.systems.UpdateSubscriberSystem;
+import org.terasology.engine.logic.characters.CharacterComponent;
 import org.terasology.engine.logic.config.ModuleConfigManager;
 import org.terasology.engine.logic.health.BeforeDestroyEvent;
+import org.terasology.engine.logic.location.LocationComponent;
 import org.terasology.engine.math.Side;
 import org.terasology.engine.math.SideBitFlag;
 import org.terasology.engine.registry.In;
+import org.terasology.engine.registry.Share;
 import org.terasology.engine.world.BlockEntityRegistry;
 import org.terasology.engine.world.WorldProvider;
 import org.terasology.engine.world.block.BeforeDeactivateBlocks;
+import org.terasology.engine.world.block.Block;
 import org.terasology.engine.world.block.BlockComponent;
+import org.terasology.engine.world.block.BlockManager;
 import org.terasology.engine.world.block.OnActivatedBlocks;
 import org.terasology.engine.world.block.items.OnBlockItemPlaced;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
+import org.terasology.signalling.components.SignalBlockStateConsumerComponent;
 import org.terasology.signalling.components.SignalConductorComponent;
 import org.terasology.signalling.components.SignalConsumerAdvancedStatusComponent;
 import org.terasology.signalling.components.SignalConsumerComponent;
 import org.terasology.signalling.components.SignalConsumerStatusComponent;
 import org.terasology.signalling.components.SignalProducerComponent;
+import org.terasology.signalling.components.SignalProducerModifiedComponent;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 /**
  * A system that manages networks of signal producers, conductors, and consumers.
@@ -52,8 +65,11 @@ import java.util.stream.Collectors;
  * {@link SignalProducerComponent}, {@link SignalConductorComponent}, and {@link SignalConsumerComponent}.
  */
 @RegisterSystem(value = RegisterMode.AUTHORITY)
+@Share(SignalSystem.class)
 public class SignalSystem extends BaseComponentSystem implements UpdateSubscriberSystem {
     private static final Logger logger = LoggerFactory.getLogger(SignalSystem.class);
+    // Matches no real strength, so a producer modified with it is never considered changed back
+    private static final int UNKNOWN_SIGNAL_STRENGTH = Integer.MIN_VALUE;
 
     @In
     private Time time;
@@ -66,50 +82,322 @@ public class SignalSystem extends BaseComponentSystem implements UpdateSubscribe
     @In
     private ModuleConfigManager moduleConfigManager;
 
-    private EfficientBlockNetwork<SignalNetworkNode> signalNetwork;
-    private SignalEfficientNetworkState signalNetworkState = new SignalEfficientNetworkState();
+    @In
+    private EntityManager entityManager;
+
+    @In
+    private BlockManager blockManager;
+
+    private SignalNetworkEngine signalNetwork;
+    private SignalDistanceCache distanceCache = new SignalDistanceCache();
+    // Gives every node a dense id, the state below is indexed by it
+    private SignalNodeRegistry nodeRegistry = new SignalNodeRegistry();
+    private SignalEfficientNetworkState signalNetworkState = new SignalEfficientNetworkState(distanceCache, nodeRegistry);
 
     private long processingMinimumInterval;
+    // Adapts the interval to the time updates take, null to keep the minimum interval
+    private AdaptiveProcessingInterval adaptiveInterval;
+    // The time in milliseconds an update may spend recalculating networks, 0 for no limit
+    private long processingTimeBudget;
+    // Orders networks by the distance to the nearest player, null to recalculate them in the order of their ids
+    private PlayerProximity playerProximity;
+    // Networks farther than this from every player are only recalculated every farNetworkInterval milliseconds
+    private long farNetworkDistanceSquared;
+    private long farNetworkInterval;
+    private long lastFarNetworkUpdate;
     private boolean consumerCanPowerItself;
 
-    // Used to detect producer changes
-    private Map<SignalNetworkNode, Integer> producerSignalStrengths = Maps.newHashMap();
+    // Nodes added and removed by the event handlers, applied to the network engine at the next update
+    private SignalTopologyTransaction topologyTransaction = new SignalTopologyTransaction();
+    private List<SignalNetworkNode> removedNodes = Lists.newArrayList();
 
-    private Set<SignalNetworkNode> modifiedProducers = Sets.newHashSet();
-    private Set<SignalNetworkNode> modifiedConsumers = Sets.newHashSet();
+    private BitSet modifiedProducers = new BitSet();
+    private BitSet modifiedConsumers = new BitSet();
+    // The strength every modified producer had at the last update, indexed by node id
+    private int[] unmodifiedProducerSignalStrengths = new int[64];
+    // Producers changed through setProducerSignalStrength, whose components are saved at the end of the update
+    private Set<EntityRef> unsavedProducers = Sets.newLinkedHashSet();
+    private List<EntityRef> producersToSave = Lists.newArrayList();
+    private Vector3i producerLocation = new Vector3i();
 
     // Used to store signal for consumer from networks
-    private Map<SignalNetworkNode, Map<Network2<SignalNetworkNode>, NetworkSignals>> consumerSignalInNetworks =
-            Maps.newHashMap();
+    private ConsumerSignals[] consumerSignals = new ConsumerSignals[64];
+    // The resolved block entities of consumers, indexed by node id, null until the next evaluation
+    private ConsumerHandle[] consumerHandles = new ConsumerHandle[64];
+    // The blocks consumers without entities are swapped between, indexed by node id, null for consumers with entities
+    private BlockStateConsumer[] blockStateConsumers = new BlockStateConsumer[64];
+    // Whether every consumer without an entity shows its signalled block, indexed by node id
+    private BitSet blockStateSignals = new BitSet();
+    // The consumer without an entity whose block is being swapped, which stays in the network meanwhile
+    private SignalNetworkNode swappedConsumer;
+
+    // Reused by every update, indexed by network and node id respectively
+    private BitSet networksToRecalculate = new BitSet();
+    private BitSet recalculatedNetworks = new BitSet();
+    private TIntArrayList networkOrder = new TIntArrayList();
+    // The topology version and producer strength hash every network was last recalculated with, indexed by network id
+    private long[] networkTopologyVersions = new long[64];
+    private long[] networkProducerStrengthHashes = new long[64];
+    private long fingerprintHits;
+    private long fingerprintMisses;
+    // Networks an earlier update ran out of time for, or skipped as far from every player, indexed by network id
+    private BitSet deferredNetworks = new BitSet();
+    // The same networks, in the order they were deferred in
+    private TIntArrayList deferredNetworkQueue = new TIntArrayList();
+    // The time the last recalculation of every network took on the pool and the main thread, in nanoseconds, indexed by
+    // network id. Networks not measured yet are estimated by their number of consumers
+    private long[] networkCosts = new long[64];
+    private long consumerCost;
+    // The estimated time of the networks handed to the pool in this update, in nanoseconds
+    private long plannedJobTime;
+    // Whether the last update ran out of time before recalculating every network, which far networks do not count towards
+    private boolean networksOverBudget;
+    // The time spent in updates since the adaptive interval last recorded one, in nanoseconds
+    private long unrecordedUpdateTime;
+    private BitSet consumersToEvaluate = new BitSet();
+    private List<SignalNetworkNode> consumersToRecalculate = Lists.newArrayList();
+    private Vector3i consumerLocation = new Vector3i();
+    private Map<String, Integer> advancedSignalResult = new HashMap<>();
+
+    // Reused for every network that is recalculated as a whole
+    private SignalStrengthField signalStrengthField = new SignalStrengthField();
+    // Fills the signals of recalculated networks on several threads, null to fill them on the main thread
+    private ParallelSignalCalculator parallelCalculator;
+    private boolean pipelined;
+    private boolean signalsPending;
+    // Producer strengths set while the background tasks run, which are applied once they are done, indexed by node id
+    private BitSet queuedProducers = new BitSet();
+    private int[] queuedSignalStrengths = new int[64];
+    // The networks of the queued producers, whose signals are filled again once the background tasks are done
+    private BitSet queuedNetworks = new BitSet();
+    // Signals of networks a consumer has left, ready to be filled again
+    private Deque<NetworkSignals> networkSignalsPool = new ArrayDeque<>();
 
     private long lastUpdate;
 
+    // Splits the added conductors into connected groups to build networks from, null to add them one by one
+    private ConnectedGroups connectedGroups;
+    // Whether the blocks gathered while the world loaded have been added to the networks
+    private boolean worldLoaded;
+
+    public SignalSystem() {
+    }
+
+    /**
+     * Creates a system with the given collaborators, instead of injecting them.
+     */
+    @VisibleForTesting
+    SignalSystem(Time time, WorldProvider worldProvider, BlockEntityRegistry blockEntityRegistry,
+                 ModuleConfigManager moduleConfigManager, EntityManager entityManager, BlockManager blockManager) {
+        this.time = time;
+        this.worldProvider = worldProvider;
+        this.blockEntityRegistry = blockEntityRegistry;
+        this.moduleConfigManager = moduleConfigManager;
+        this.entityManager = entityManager;
+        this.blockManager = blockManager;
+    }
+
     @Override
     public void initialise() {
-        signalNetwork = new EfficientBlockNetwork<>();
+        // Read here rather than in preBegin, as the networks are built while the world loads
+        if (moduleConfigManager.getBooleanVariable("Signalling", "nativeGraphEngine", false)) {
+            signalNetwork = new SignalGraph();
+        } else {
+            signalNetwork = new BlockNetworkSignalEngine();
+        }
+        // Before the state, which forgets the consumers of removed networks
+        signalNetwork.addTopologyListener(new StaleSignalsListener());
         signalNetwork.addTopologyListener(signalNetworkState);
     }
 
     @Override
     public void preBegin() {
         processingMinimumInterval = moduleConfigManager.getIntVariable("Signalling", "processingMinimumInterval", 0);
+        if (moduleConfigManager.getBooleanVariable("Signalling", "adaptiveProcessingInterval", false)) {
+            // The minimum interval becomes the lower bound of the adaptive one
+            adaptiveInterval = new AdaptiveProcessingInterval(processingMinimumInterval,
+                    moduleConfigManager.getIntVariable("Signalling", "processingMaximumInterval", 1000),
+                    moduleConfigManager.getIntVariable("Signalling", "processingTargetPercentage", 10) / 100f);
+        }
+        processingTimeBudget = moduleConfigManager.getIntVariable("Signalling", "processingTimeBudget", 0);
+        if (moduleConfigManager.getBooleanVariable("Signalling", "prioritiseNearPlayers", false)) {
+            playerProximity = new PlayerProximity();
+            // 0 recalculates far networks as often as any other
+            long farNetworkDistance = moduleConfigManager.getIntVariable("Signalling", "farNetworkDistance", 0);
+            farNetworkDistanceSquared = farNetworkDistance > 0 ? farNetworkDistance * farNetworkDistance : Long.MAX_VALUE;
+            farNetworkInterval = moduleConfigManager.getIntVariable("Signalling", "farNetworkInterval", 1000);
+        }
         consumerCanPowerItself = moduleConfigManager.getBooleanVariable("Signalling", "consumerCanPowerItself", false);
+        distanceCache.setMaximumSize(moduleConfigManager.getIntVariable("Signalling", "distanceCacheSize",
+                SignalDistanceCache.DEFAULT_MAXIMUM_SIZE));
+        // 0 keeps the calculation on the main thread, -1 uses the common pool of the JVM
+        int parallelThreads = moduleConfigManager.getIntVariable("Signalling", "parallelNetworkThreads", 0);
+        // Signals computed in the background are applied one update later. Producers changed meanwhile have the signals of
+        // their networks filled again on the main thread before that
+        pipelined = moduleConfigManager.getBooleanVariable("Signalling", "pipelinedSignals", false);
+        if (parallelThreads != 0) {
+            parallelCalculator = new ParallelSignalCalculator(parallelThreads);
+        } else if (pipelined) {
+            parallelCalculator = new ParallelSignalCalculator(1);
+        }
+        // No update runs while the world loads, so the blocks activated until it is loaded are gathered into the first
+        // topology transaction. With the warm-up, that and every later transaction is split into connected groups, whose
+        // networks are built at once
+        if (moduleConfigManager.getBooleanVariable("Signalling", "networkWarmUp", false)) {
+            // Linked on the pool of the signal calculation if there is one, and on the main thread otherwise
+            connectedGroups = new ConnectedGroups(parallelThreads != 0 ? parallelCalculator.getPool() : null);
+        }
+    }
+
+    @Override
+    public void preSave() {
+        saveProducerComponents();
     }
 
     @Override
     public void shutdown() {
+        saveProducerComponents();
+        if (signalsPending) {
+            parallelCalculator.finish();
+            parallelCalculator.clear();
+            nodeRegistry.publishPositions();
+            signalsPending = false;
+        }
+        if (parallelCalculator != null) {
+            parallelCalculator.shutdown();
+            parallelCalculator = null;
+        }
         signalNetwork = null;
     }
 
     @Override
     public void update(float delta) {
+        long startTime = System.nanoTime();
+        if (signalsPending) {
+            // Before the topology changes, as the background tasks read the networks
+            finishPendingSignals();
+        }
+
+        // Topology changes are applied every tick, so that the networks never lag far behind the world
+        applyTopologyTransaction();
+        if (!worldLoaded) {
+            worldLoaded = true;
+            logger.debug("Built the signal networks of the loaded world in " + (System.nanoTime() - startTime) / 1000000
+                    + " ms");
+        }
+
         long worldTime = time.getGameTimeInMs();
+
         // Ensures that computers cannot be faster than the processing interval
-        if (worldTime > lastUpdate + processingMinimumInterval) {
+        long processingInterval = adaptiveInterval != null ? adaptiveInterval.getInterval() : processingMinimumInterval;
+        long elapsed = 0;
+        if (worldTime > lastUpdate + processingInterval) {
+            elapsed = worldTime - lastUpdate;
             lastUpdate = worldTime;
-
             updateSignals();
         }
+
+        if (adaptiveInterval != null) {
+            // All of every update counts, including the updates in between that only apply topology changes and the signals
+            // of the pipelined mode
+            unrecordedUpdateTime += System.nanoTime() - startTime;
+            if (elapsed > 0) {
+                if (adaptiveInterval.record(unrecordedUpdateTime, elapsed, networksOverBudget)) {
+                    logger.debug("Signal processing interval changed to " + adaptiveInterval.getInterval()
+                            + " ms, share of time " + adaptiveInterval.getShare());
+                }
+                unrecordedUpdateTime = 0;
+            }
+        }
+
+        // Every tick, so that replication and persistence see the strengths set during it
+        saveProducerComponents();
+    }
+
+    /**
+     * Changes the strength of a producer block in the signal network right away, without going through the component events.
+     * The component is changed in place, so systems reading it see the new strength right away. It is saved at the end of the
+     * update, along with the {@link SignalProducerModifiedComponent} marking it as modified, so chained gates do not send
+     * component events on every hop, and a producer changed several times in a tick is saved once. Saves are also made before
+     * the world is saved, before producer blocks are deactivated and on shutdown.
+     *
+     * @param entity The block entity of the producer
+     * @param signalStrength The new strength, -1 for infinite
+     * @return True if the strength has changed
+     */
+    public boolean setProducerSignalStrength(EntityRef entity, int signalStrength) {
+        SignalProducerComponent producerComponent = entity.getComponent(SignalProducerComponent.class);
+        if (producerComponent == null || producerComponent.signalStrength == signalStrength) {
+            return false;
+        }
+        producerComponent.signalStrength = signalStrength;
+
+        BlockComponent blockComponent = entity.getComponent(BlockComponent.class);
+        SignalNetworkNode producerNode = blockComponent != null
+                ? getRegisteredLeafNode(blockComponent.getPosition(producerLocation), SignalNetworkNode.Type.PRODUCER) : null;
+        if (producerNode == null) {
+            // Not part of the signal network, the component event takes care of it
+            saveProducerComponent(entity, producerComponent);
+        } else {
+            updateProducerSignalStrength(producerNode, signalStrength);
+            unsavedProducers.add(entity);
+        }
+        return true;
+    }
+
+    /**
+     * Saves the components of the producers changed through {@link #setProducerSignalStrength} since the last call. The
+     * strengths are already in the signal network, so the component events that follow change nothing.
+     */
+    private void saveProducerComponents() {
+        if (unsavedProducers.isEmpty()) {
+            return;
+        }
+        // Copied, as the component events may change further producers
+        producersToSave.addAll(unsavedProducers);
+        unsavedProducers.clear();
+        for (EntityRef entity : producersToSave) {
+            SignalProducerComponent producerComponent = entity.getComponent(SignalProducerComponent.class);
+            if (producerComponent != null) {
+                saveProducerComponent(entity, producerComponent);
+            }
+        }
+        producersToSave.clear();
+    }
+
+    private void saveProducerComponent(EntityRef entity, SignalProducerComponent producerComponent) {
+        entity.saveComponent(producerComponent);
+        if (producerComponent.signalStrength != 0) {
+            if (!entity.hasComponent(SignalProducerModifiedComponent.class)) {
+                entity.addComponent(new SignalProducerModifiedComponent());
+            }
+        } else if (entity.hasComponent(SignalProducerModifiedComponent.class)) {
+            entity.removeComponent(SignalProducerModifiedComponent.class);
+        }
+    }
+
+    /**
+     * @return The interval in milliseconds signal updates currently run at, at the least
+     */
+    public long getProcessingInterval() {
+        return adaptiveInterval != null ? adaptiveInterval.getInterval() : processingMinimumInterval;
+    }
+
+    /**
+     * @return The intervals of the latest signal updates in milliseconds, oldest first, empty unless the interval is adaptive
+     */
+    public long[] getProcessingIntervalHistory() {
+        return adaptiveInterval != null ? adaptiveInterval.getHistory() : new long[0];
+    }
+
+    /**
+     * @return The lowest and the highest interval in milliseconds signal updates have run at so far
+     */
+    public long[] getProcessingIntervalRange() {
+        if (adaptiveInterval != null) {
+            return new long[]{adaptiveInterval.getLowestInterval(), adaptiveInterval.getHighestInterval()};
+        }
+        return new long[]{processingMinimumInterval, processingMinimumInterval};
     }
 
     /**
@@ -117,84 +405,428 @@ public class SignalSystem extends BaseComponentSystem implements UpdateSubscribe
      */
     private void updateSignals() {
         // Gather all networks that might have their signal state modified
-        Set<Network2<SignalNetworkNode>> networksToRecalculate =
-                Sets.newHashSet(signalNetworkState.consumeNetworksToRecalculate());
+        networksToRecalculate.clear();
+        signalNetworkState.consumeNetworksToRecalculate(networksToRecalculate);
 
         // This includes networks with modified producers
         appendNetworksContainingModifiedProducer(networksToRecalculate);
 
+        // Networks left over by earlier updates are recalculated as a whole as well, but go first
+        networksToRecalculate.or(deferredNetworks);
+
         // Gather all consumers that might be affected by the changes
-        Set<SignalNetworkNode> consumersToEvaluate = Sets.newHashSet();
-
-        for (Network2<SignalNetworkNode> network : networksToRecalculate) {
-            if (signalNetwork.isNetworkActive(network)) {
-                Iterable<SignalNetworkNode> consumers = getConsumersInNetwork(network);
-                for (SignalNetworkNode consumer : consumers) {
-                    // Set the signal for each consumer in the affected network
-                    NetworkSignals consumerSignalInNetwork = getConsumerSignalInNetwork(network, consumer);
-                    consumerSignalInNetworks.get(consumer).put(network, consumerSignalInNetwork);
-                }
-                consumersToEvaluate.addAll(Sets.newHashSet(consumers));
+        consumersToEvaluate.clear();
+
+        recalculatedNetworks.clear();
+        networksOverBudget = false;
+        plannedJobTime = 0;
+        long deadline = processingTimeBudget > 0 ? System.nanoTime() + processingTimeBudget * 1000000L : Long.MAX_VALUE;
+        boolean farNetworksDue = true;
+        if (playerProximity != null) {
+            playerProximity.setPlayers(getPlayers());
+            long worldTime = time.getGameTimeInMs();
+            farNetworksDue = worldTime > lastFarNetworkUpdate + farNetworkInterval;
+            if (farNetworksDue) {
+                lastFarNetworkUpdate = worldTime;
             }
         }
 
-        // Update signals of consumers that have been changed in networks that are not going to be recalculated
-        for (SignalNetworkNode modifiedConsumer : Iterables.concat(modifiedConsumers,
-                signalNetworkState.consumeConsumersToRecalculate())) {
-            for (Network2<SignalNetworkNode> network : signalNetwork.getNetworks()) {
-                if (!networksToRecalculate.contains(network) && network.hasLeafNode(modifiedConsumer)) {
-                    NetworkSignals consumerSignalInNetwork = getConsumerSignalInNetwork(network, modifiedConsumer);
-                    consumerSignalInNetworks.get(modifiedConsumer).put(network, consumerSignalInNetwork);
-                }
+        // The network deferred the longest goes first, so every deferred network gets its turn however many are deferred
+        if (!deferredNetworkQueue.isEmpty()) {
+            networkOrder.resetQuick();
+            networkOrder.add(deferredNetworkQueue.get(0));
+            recalculateNetworksInOrder(deadline, farNetworksDue);
+            networkOrder.resetQuick();
+            for (int i = 1; i < deferredNetworkQueue.size(); i++) {
+                networkOrder.add(deferredNetworkQueue.get(i));
             }
+            recalculateNetworksInOrder(deadline, farNetworksDue);
+        }
 
-            consumersToEvaluate.add(modifiedConsumer);
+        networkOrder.resetQuick();
+        for (int networkId = networksToRecalculate.nextSetBit(0); networkId >= 0;
+             networkId = networksToRecalculate.nextSetBit(networkId + 1)) {
+            if (!recalculatedNetworks.get(networkId) && !deferredNetworks.get(networkId)) {
+                networkOrder.add(networkId);
+            }
+        }
+        recalculateNetworksInOrder(deadline, farNetworksDue);
+        removeRecalculatedFromDeferredNetworkQueue();
+
+        if (pipelined) {
+            // Filled while the game goes on, and applied at the start of the next update
+            parallelCalculator.start(signalNetworkState, consumerCanPowerItself);
+            // The background tasks look up conductors by position
+            nodeRegistry.holdPositions();
+            signalsPending = true;
+        } else if (parallelCalculator != null) {
+            parallelCalculator.run(signalNetworkState, consumerCanPowerItself);
+            fillDeferredJobs();
         }
 
+        // Update signals of consumers that have been changed in networks that are not going to be recalculated
+        for (int consumerId = modifiedConsumers.nextSetBit(0); consumerId >= 0;
+             consumerId = modifiedConsumers.nextSetBit(consumerId + 1)) {
+            SignalNetworkNode modifiedConsumer = nodeRegistry.getNode(consumerId);
+            if (modifiedConsumer != null) {
+                updateModifiedConsumer(modifiedConsumer);
+            }
+        }
+        signalNetworkState.consumeConsumersToRecalculate(consumersToRecalculate);
+        for (int i = 0; i < consumersToRecalculate.size(); i++) {
+            SignalNetworkNode modifiedConsumer = consumersToRecalculate.get(i);
+            // Consumers that have been removed since are no longer registered
+            if (modifiedConsumer.getId() != SignalNetworkNode.NO_ID) {
+                updateModifiedConsumer(modifiedConsumer);
+            }
+        }
+        consumersToRecalculate.clear();
+
         // Clearing the changed states
         modifiedProducers.clear();
         modifiedConsumers.clear();
 
-        // Set consumer status changes
-        for (SignalNetworkNode consumerToEvaluate : consumersToEvaluate) {
-            if (signalNetwork.containsLeafNode(consumerToEvaluate)) {
-                final EntityRef blockEntity =
-                        blockEntityRegistry.getBlockEntityAt(consumerToEvaluate.location.toVector3i());
-                final SignalConsumerComponent consumerComponent =
-                        blockEntity.getComponent(SignalConsumerComponent.class);
-                if (consumerComponent != null) {
-                    Map<Network2<SignalNetworkNode>, NetworkSignals> consumerSignals =
-                            consumerSignalInNetworks.get(consumerToEvaluate);
-                    removeStaleSignals(consumerToEvaluate, consumerSignals);
-
-                    processSignalConsumerResult(consumerSignals.values(), consumerComponent, blockEntity);
+        if (!signalsPending) {
+            evaluateConsumers();
+        }
+    }
+
+    /**
+     * Recalculates the networks in {@link #networkOrder}, nearest to a player first if enabled. Networks are deferred to a
+     * later update once the time budget is used up, or if they are far from every player and not due yet. At least one
+     * network is recalculated per update, so the deferred networks never pile up.
+     * <p>
+     * Networks handed to the pool are charged to the budget with the time they took the last time, as they are only
+     * computed once all of them have been handed over.
+     *
+     * @param deadline The {@link System#nanoTime()} to stop recalculating at
+     * @param farNetworksDue Whether networks far from every player are recalculated in this update
+     */
+    private void recalculateNetworksInOrder(long deadline, boolean farNetworksDue) {
+        if (playerProximity != null) {
+            playerProximity.sortByDistance(networkOrder, signalNetworkState);
+        }
+        for (int i = 0; i < networkOrder.size(); i++) {
+            int networkId = networkOrder.get(i);
+            boolean throttled = !farNetworksDue && playerProximity.getSortedDistanceSquared(i) > farNetworkDistanceSquared;
+            if (throttled) {
+                deferNetwork(networkId);
+            } else if (!recalculatedNetworks.isEmpty() && System.nanoTime() + plannedJobTime > deadline) {
+                // The rest waits for the next update
+                deferNetwork(networkId);
+                networksOverBudget = true;
+            } else {
+                recalculateNetwork(networkId);
+                recalculatedNetworks.set(networkId);
+                deferredNetworks.clear(networkId);
+            }
+        }
+    }
+
+    private void deferNetwork(int networkId) {
+        if (!deferredNetworks.get(networkId)) {
+            deferredNetworks.set(networkId);
+            deferredNetworkQueue.add(networkId);
+        }
+    }
+
+    /**
+     * Drops the networks recalculated in this update from {@link #deferredNetworkQueue}, keeping the order of the others.
+     */
+    private void removeRecalculatedFromDeferredNetworkQueue() {
+        int size = 0;
+        for (int i = 0; i < deferredNetworkQueue.size(); i++) {
+            int networkId = deferredNetworkQueue.get(i);
+            if (deferredNetworks.get(networkId)) {
+                deferredNetworkQueue.set(size++, networkId);
+            }
+        }
+        deferredNetworkQueue.remove(size, deferredNetworkQueue.size() - size);
+    }
+
+    /**
+     * Recalculates the signals of all consumers in a network, or adds them to the jobs of the {@link ParallelSignalCalculator}.
+     *
+     * @param networkId The id of the network
+     */
+    private void recalculateNetwork(int networkId) {
+        Network2<SignalNetworkNode> network = signalNetworkState.getNetwork(networkId);
+        // Networks deferred by an earlier update might have been removed since
+        if (network == null) {
+            return;
+        }
+        List<SignalNetworkNode> consumers = signalNetworkState.getConsumersInNetwork(network);
+        if (signalNetwork.isNetworkActive(network) && !consumers.isEmpty()) {
+            if (matchesLastFingerprint(networkId, network)) {
+                // Same nodes and producer strengths as the last time, so the consumers already have the right signals
+                fingerprintHits++;
+                return;
+            }
+            fingerprintMisses++;
+            if (parallelCalculator != null) {
+                if (!network.getNetworkingNodes().isEmpty()) {
+                    // Built here, as the background tasks only read the state of the signal network
+                    signalNetworkState.getConductorChains(network);
+                }
+                ParallelSignalCalculator.NetworkJob job = parallelCalculator.addNetwork(networkId, network);
+                plannedJobTime += estimateNetworkCost(networkId, consumers.size());
+                for (int i = 0; i < consumers.size(); i++) {
+                    SignalNetworkNode consumer = consumers.get(i);
+                    job.add(consumer, prepareConsumerSignalInNetwork(network, consumer));
+                    consumersToEvaluate.set(consumer.getId());
+                }
+                return;
+            }
+            SignalStrengthField strengthField = null;
+            if (!isPoweredByUnlimitedSignal(network) && prefersStrengthField(network, consumers)) {
+                // One search from all producers at once, instead of one path search per producer and consumer
+                strengthField = signalStrengthField;
+                strengthField.compute(signalNetworkState.getConductorChains(network),
+                        signalNetworkState.getProducersInNetwork(network), signalNetworkState);
+            }
+            for (int i = 0; i < consumers.size(); i++) {
+                SignalNetworkNode consumer = consumers.get(i);
+                // Set the signal for each consumer in the affected network
+                updateConsumerSignalInNetwork(network, consumer, strengthField);
+                consumersToEvaluate.set(consumer.getId());
+            }
+        }
+    }
+
+    /**
+     * Compares the nodes and producer strengths of a network with the ones it was last recalculated with, and remembers the
+     * current ones.
+     *
+     * @param networkId The id of the network
+     * @param network The network
+     * @return True if nothing has changed since the network was last recalculated
+     */
+    private boolean matchesLastFingerprint(int networkId, Network2<SignalNetworkNode> network) {
+        long topologyVersion = signalNetworkState.getTopologyVersion(network);
+        long producerStrengthHash = signalNetworkState.getProducerStrengthHash(network);
+        if (networkId >= networkTopologyVersions.length) {
+            int length = Math.max(networkId + 1, networkTopologyVersions.length * 2);
+            networkTopologyVersions = Arrays.copyOf(networkTopologyVersions, length);
+            networkProducerStrengthHashes = Arrays.copyOf(networkProducerStrengthHashes, length);
+        }
+        if (networkTopologyVersions[networkId] == topologyVersion
+                && networkProducerStrengthHashes[networkId] == producerStrengthHash) {
+            return true;
+        }
+        networkTopologyVersions[networkId] = topologyVersion;
+        networkProducerStrengthHashes[networkId] = producerStrengthHash;
+        return false;
+    }
+
+    /**
+     * @return The number of network recalculations skipped, as nothing had changed since the last one
+     */
+    public long getFingerprintHits() {
+        return fingerprintHits;
+    }
+
+    /**
+     * @return The number of networks recalculated, as their nodes or producer strengths had changed
+     */
+    public long getFingerprintMisses() {
+        return fingerprintMisses;
+    }
+
+    /**
+     * Looks up the players. The entity manager takes the component classes as generic varargs without being marked
+     * {@code @SafeVarargs}, although it only reads them, so the warning about the array created for them is suppressed.
+     *
+     * @return The entities of the players, whose locations are used to order the networks
+     */
+    @SuppressWarnings("unchecked")
+    private Iterable<EntityRef> getPlayers() {
+        return entityManager.getEntitiesWith(CharacterComponent.class, LocationComponent.class);
+    }
+
+    /**
+     * Applies the signals filled in the background since the last update. The producer strengths set meanwhile are applied
+     * first, and the signals of the networks of those producers are filled again from them.
+     */
+    private void finishPendingSignals() {
+        parallelCalculator.finish();
+        nodeRegistry.publishPositions();
+        for (int producerId = queuedProducers.nextSetBit(0); producerId >= 0;
+             producerId = queuedProducers.nextSetBit(producerId + 1)) {
+            SignalNetworkNode producer = nodeRegistry.getNode(producerId);
+            signalNetworkState.setProducerSignalStrength(producer, queuedSignalStrengths[producerId]);
+            List<Network2<SignalNetworkNode>> networks = signalNetworkState.getNetworksWithLeafNode(producer);
+            for (int i = 0; i < networks.size(); i++) {
+                int networkId = signalNetworkState.getNetworkId(networks.get(i));
+                if (networkId >= 0) {
+                    queuedNetworks.set(networkId);
+                }
+            }
+        }
+        queuedProducers.clear();
+        if (!queuedNetworks.isEmpty()) {
+            parallelCalculator.rerun(signalNetworkState, consumerCanPowerItself, queuedNetworks);
+            queuedNetworks.clear();
+        }
+        fillDeferredJobs();
+        signalsPending = false;
+        evaluateConsumers();
+    }
+
+    /**
+     * Sends the current signals of every consumer marked for evaluation to its components.
+     */
+    private void evaluateConsumers() {
+        for (int consumerId = consumersToEvaluate.nextSetBit(0); consumerId >= 0;
+             consumerId = consumersToEvaluate.nextSetBit(consumerId + 1)) {
+            SignalNetworkNode consumerToEvaluate = nodeRegistry.getNode(consumerId);
+            // Consumer handlers triggered by earlier status changes might have replaced the node
+            if (consumerToEvaluate != null && consumerToEvaluate.getType() == SignalNetworkNode.Type.CONSUMER
+                    && signalNetwork.containsLeafNode(consumerToEvaluate)) {
+                BlockStateConsumer blockStateConsumer = consumerId < blockStateConsumers.length
+                        ? blockStateConsumers[consumerId] : null;
+                if (blockStateConsumer != null) {
+                    outputSignalToBlockStateConsumer(consumerToEvaluate, blockStateConsumer, consumerSignals[consumerId]);
+                    continue;
+                }
+                ConsumerHandle handle = getConsumerHandle(consumerToEvaluate);
+                if (handle.getConsumerComponent() != null) {
+                    processSignalConsumerResult(consumerSignals[consumerId], handle);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the handle of a consumer, resolving it if it has been dropped since the last evaluation.
+     *
+     * @param consumerNode The registered consumer node
+     * @return The handle of the block entity of the consumer
+     */
+    private ConsumerHandle getConsumerHandle(SignalNetworkNode consumerNode) {
+        int id = consumerNode.getId();
+        if (id >= consumerHandles.length) {
+            consumerHandles = Arrays.copyOf(consumerHandles, Math.max(id + 1, consumerHandles.length * 2));
+        }
+        ConsumerHandle handle = consumerHandles[id];
+        if (handle == null || !handle.isValid()) {
+            consumerLocation.set(consumerNode.location.x, consumerNode.location.y, consumerNode.location.z);
+            handle = new ConsumerHandle(blockEntityRegistry.getBlockEntityAt(consumerLocation));
+            consumerHandles[id] = handle;
+        }
+        return handle;
+    }
+
+    /**
+     * Drops the handle of a consumer, to be resolved again on its next evaluation.
+     *
+     * @param consumerNode The registered consumer node
+     */
+    private void dropConsumerHandle(SignalNetworkNode consumerNode) {
+        int id = consumerNode.getId();
+        if (id >= 0 && id < consumerHandles.length) {
+            consumerHandles[id] = null;
+        }
+    }
+
+    /**
+     * Fills the signals the {@link ParallelSignalCalculator} left to the main thread, in the order the networks were added,
+     * and clears its jobs.
+     */
+    private void fillDeferredJobs() {
+        int parallelism = parallelCalculator.getParallelism();
+        long totalCost = 0;
+        int totalConsumers = 0;
+        for (int i = 0; i < parallelCalculator.getJobCount(); i++) {
+            ParallelSignalCalculator.NetworkJob job = parallelCalculator.getJob(i);
+            long startTime = System.nanoTime();
+            BitSet deferred = job.getDeferred();
+            for (int index = deferred.nextSetBit(0); index >= 0; index = deferred.nextSetBit(index + 1)) {
+                SignalNetworkNode consumer = job.getConsumer(index);
+                // In the pipelined mode, the consumer might have been removed since the job was added
+                if (consumer.getId() != SignalNetworkNode.NO_ID) {
+                    fillConsumerSignalInNetwork(job.getNetwork(), consumer, null, job.getSignals(index));
                 }
             }
+            // The pool shares the work of its jobs among its threads, the main thread fills the rest alone
+            long cost = job.getComputeTime() / parallelism + System.nanoTime() - startTime;
+            recordNetworkCost(job.getNetworkId(), cost);
+            totalCost += cost;
+            totalConsumers += job.getConsumerCount();
+        }
+        if (totalConsumers > 0) {
+            consumerCost = totalCost / totalConsumers;
         }
+        parallelCalculator.clear();
+    }
+
+    private void recordNetworkCost(int networkId, long cost) {
+        if (networkId >= networkCosts.length) {
+            networkCosts = Arrays.copyOf(networkCosts, Math.max(networkId + 1, networkCosts.length * 2));
+        }
+        networkCosts[networkId] = cost;
     }
 
     /**
-     * Finds the consumers in a network
+     * @param networkId The id of a network
+     * @param consumerCount The number of consumers in the network
+     * @return The time recalculating the network is expected to take, in nanoseconds
+     */
+    private long estimateNetworkCost(int networkId, int consumerCount) {
+        long cost = networkId < networkCosts.length ? networkCosts[networkId] : 0;
+        return cost > 0 ? cost : consumerCount * consumerCost;
+    }
+
+    /**
+     * Updates the signals of a consumer from the networks that are not recalculated as a whole, and marks it for evaluation.
+     *
+     * @param modifiedConsumer The registered consumer node
+     */
+    private void updateModifiedConsumer(SignalNetworkNode modifiedConsumer) {
+        List<Network2<SignalNetworkNode>> networks = signalNetworkState.getNetworksWithLeafNode(modifiedConsumer);
+        for (int i = 0; i < networks.size(); i++) {
+            Network2<SignalNetworkNode> network = networks.get(i);
+            if (!networksToRecalculate.get(signalNetworkState.getNetworkId(network))) {
+                updateConsumerSignalInNetwork(network, modifiedConsumer, null);
+            }
+        }
+
+        consumersToEvaluate.set(modifiedConsumer.getId());
+    }
+
+    /**
+     * Checks whether every consumer in the network receives a signal of infinite strength, no matter where it is.
      *
-     * @param network The network to query for Consumers
-     * @return The consumers on the given network
+     * @param network The network to check
+     * @return True if limited signals do not need to be looked at in the network
      */
-    private Iterable<SignalNetworkNode> getConsumersInNetwork(Network2<SignalNetworkNode> network) {
-        return network.getLeafNodes().stream()
-                .filter(input -> input.getType() == SignalNetworkNode.Type.CONSUMER)
-                .collect(Collectors.toList());
+    private boolean isPoweredByUnlimitedSignal(Network2<SignalNetworkNode> network) {
+        int unlimitedProducerCount = signalNetworkState.getUnlimitedProducerCount(network);
+        return unlimitedProducerCount > 1 || (unlimitedProducerCount == 1 && consumerCanPowerItself);
     }
 
     /**
-     * Finds the producers in a network
+     * Decides whether the limited signals of a whole network are cheaper to get from a {@link SignalStrengthField} or from the
+     * distance between every producer and consumer. The field always visits every junction of the {@link ConductorChains},
+     * while the distances are mostly served from the {@link SignalDistanceCache}, so the latter wins when there are fewer
+     * producer and consumer pairs than junctions.
      *
-     * @param network The network to query for Producers
-     * @return The producers on the given network
+     * @param network The network to recalculate
+     * @param consumers The consumers in the network
+     * @return True if the field should be computed for the network
      */
-    private Iterable<SignalNetworkNode> getProducersInNetwork(Network2<SignalNetworkNode> network) {
-        return network.getLeafNodes().stream()
-                .filter(input -> input.getType() == SignalNetworkNode.Type.PRODUCER)
-                .collect(Collectors.toList());
+    private boolean prefersStrengthField(Network2<SignalNetworkNode> network, List<SignalNetworkNode> consumers) {
+        if (network.getNetworkingNodes().isEmpty()) {
+            // Leaf nodes connected directly, the field only spreads through conductors
+            return false;
+        }
+        long limitedProducerCount = 0;
+        List<SignalNetworkNode> producers = signalNetworkState.getProducersInNetwork(network);
+        for (int i = 0; i < producers.size(); i++) {
+            if (signalNetworkState.getProducerSignalStrength(producers.get(i)) > 0) {
+                limitedProducerCount++;
+            }
+        }
+        return limitedProducerCount * consumers.size() > signalNetworkState.getConductorChains(network).getJunctionCount();
     }
 
     /**
@@ -202,71 +834,168 @@ public class SignalSystem extends BaseComponentSystem implements UpdateSubscribe
      *
      * @param networksToRecalculate The list of networks that need to be recalculated
      */
-    private void appendNetworksContainingModifiedProducer(Set<Network2<SignalNetworkNode>> networksToRecalculate) {
-        for (Network2<SignalNetworkNode> network : signalNetwork.getNetworks()) {
-            if (!networksToRecalculate.contains(network)) {
-                for (SignalNetworkNode modifiedProducer : modifiedProducers) {
-                    if (network.getLeafNodes().contains(modifiedProducer)) {
-                        networksToRecalculate.add(network);
-                        break;
-                    }
+    private void appendNetworksContainingModifiedProducer(BitSet networksToRecalculate) {
+        for (int producerId = modifiedProducers.nextSetBit(0); producerId >= 0;
+             producerId = modifiedProducers.nextSetBit(producerId + 1)) {
+            SignalNetworkNode modifiedProducer = nodeRegistry.getNode(producerId);
+            if (modifiedProducer != null) {
+                List<Network2<SignalNetworkNode>> networks = signalNetworkState.getNetworksWithLeafNode(modifiedProducer);
+                for (int i = 0; i < networks.size(); i++) {
+                    networksToRecalculate.set(signalNetworkState.getNetworkId(networks.get(i)));
                 }
             }
         }
     }
 
     /**
-     * Removes the signals for a consumer which have gone stale. A stale network is that which is no longer active or does not contain the
-     * consumer.
+     * Removes the signals a consumer has stored for a network, returning them to the pool.
      *
-     * @param consumerToEvaluate The network node of the consumer with respect to which stale signals are evaluated.
-     * @param consumerSignals A mapping of the networks containing the consumer and the signals they contain.
+     * @param consumerNode The consumer node
+     * @param network The network the signals are from
      */
-    private void removeStaleSignals(SignalNetworkNode consumerToEvaluate, Map<Network2<SignalNetworkNode>,
-            NetworkSignals> consumerSignals) {
-        Iterator<Map.Entry<Network2<SignalNetworkNode>, NetworkSignals>> signalInNetworkIterator =
-                consumerSignals.entrySet().iterator();
-        while (signalInNetworkIterator.hasNext()) {
-            Map.Entry<Network2<SignalNetworkNode>, NetworkSignals> signalEntry = signalInNetworkIterator.next();
-            // If the network no longer is active or no longer contains the consumer - it is "stale"
-            if (!signalNetwork.isNetworkActive(signalEntry.getKey()) || !signalEntry.getKey().hasLeafNode(consumerToEvaluate)) {
-                signalInNetworkIterator.remove();
+    private void removeStaleSignals(SignalNetworkNode consumerNode, Network2<SignalNetworkNode> network) {
+        int id = consumerNode.getId();
+        if (id >= 0 && id < consumerSignals.length && consumerSignals[id] != null) {
+            NetworkSignals removed = consumerSignals[id].remove(network);
+            if (removed != null) {
+                networkSignalsPool.push(removed);
             }
         }
     }
 
+    /**
+     * Registers a consumer that is added to the signal network, so signals from its networks can be stored. The signals of a
+     * consumer that is still stored are kept.
+     *
+     * @param consumerNode The registered consumer node
+     */
+    private void addConsumerSignals(SignalNetworkNode consumerNode) {
+        int id = consumerNode.getId();
+        if (id >= consumerSignals.length) {
+            consumerSignals = Arrays.copyOf(consumerSignals, Math.max(id + 1, consumerSignals.length * 2));
+        }
+        if (consumerSignals[id] == null) {
+            consumerSignals[id] = new ConsumerSignals();
+        }
+    }
+
+    /**
+     * Forgets the signals of a consumer that has been removed from the signal network, returning them to the pool.
+     *
+     * @param consumerNode The registered consumer node
+     */
+    private void removeConsumerSignals(SignalNetworkNode consumerNode) {
+        int id = consumerNode.getId();
+        if (id >= 0 && id < consumerSignals.length && consumerSignals[id] != null) {
+            ConsumerSignals signals = consumerSignals[id];
+            for (int i = 0; i < signals.size(); i++) {
+                networkSignalsPool.push(signals.getSignals(i));
+            }
+            consumerSignals[id] = null;
+        }
+    }
+
+    /**
+     * Changes the strength of a producer that stays in the signal network, and marks it as modified. Changes that are undone
+     * before the next update, such as a button pressed and released, cancel out and leave the producer unmodified.
+     *
+     * @param producerNode The registered producer node
+     * @param signalStrength The new strength, -1 for infinite
+     */
+    void updateProducerSignalStrength(SignalNetworkNode producerNode, int signalStrength) {
+        int id = producerNode.getId();
+        int oldSignalStrength = queuedProducers.get(id)
+                ? queuedSignalStrengths[id] : signalNetworkState.getProducerSignalStrength(producerNode);
+        if (oldSignalStrength == signalStrength) {
+            return;
+        }
+        if (!modifiedProducers.get(id)) {
+            markProducerModified(id, oldSignalStrength);
+        } else if (unmodifiedProducerSignalStrengths[id] == signalStrength) {
+            modifiedProducers.clear(id);
+        }
+        setNetworkProducerSignalStrength(producerNode, signalStrength);
+    }
+
+    /**
+     * Sets the strength of a registered producer in the state of the signal network, or queues it while the background
+     * tasks of the pipelined mode read that state.
+     *
+     * @param producerNode The registered producer node
+     * @param signalStrength The new strength, -1 for infinite
+     */
+    private void setNetworkProducerSignalStrength(SignalNetworkNode producerNode, int signalStrength) {
+        if (signalsPending) {
+            int id = producerNode.getId();
+            if (id >= queuedSignalStrengths.length) {
+                queuedSignalStrengths = Arrays.copyOf(queuedSignalStrengths, Math.max(id + 1, queuedSignalStrengths.length * 2));
+            }
+            queuedSignalStrengths[id] = signalStrength;
+            queuedProducers.set(id);
+        } else {
+            signalNetworkState.setProducerSignalStrength(producerNode, signalStrength);
+        }
+    }
+
+    /**
+     * Marks a producer as modified since the last update.
+     *
+     * @param id The id of the producer node
+     * @param unmodifiedSignalStrength The strength it had at the last update, or {@link #UNKNOWN_SIGNAL_STRENGTH}
+     */
+    private void markProducerModified(int id, int unmodifiedSignalStrength) {
+        if (id >= unmodifiedProducerSignalStrengths.length) {
+            unmodifiedProducerSignalStrengths = Arrays.copyOf(unmodifiedProducerSignalStrengths,
+                    Math.max(id + 1, unmodifiedProducerSignalStrengths.length * 2));
+        }
+        unmodifiedProducerSignalStrengths[id] = unmodifiedSignalStrength;
+        modifiedProducers.set(id);
+    }
+
+    /**
+     * Unregisters a node that has been removed from the signal network, along with its modification flags.
+     *
+     * @param node The registered node
+     */
+    private void unregisterNode(SignalNetworkNode node) {
+        int id = node.getId();
+        if (id != SignalNetworkNode.NO_ID) {
+            modifiedProducers.clear(id);
+            modifiedConsumers.clear(id);
+        }
+        nodeRegistry.unregister(node);
+    }
+
     /**
      * Sends the correct signal to the correct entity based on the received signal
      *
-     * @param networkSignals The signals in the network
-     * @param signalConsumerComponent The component of the gate receiving the signal
-     * @param entity The block to send the signal to
+     * @param networkSignals The signals in the networks of the consumer
+     * @param handle The handle of the block to send the signal to
      */
-    private void processSignalConsumerResult(Collection<NetworkSignals> networkSignals,
-                                             SignalConsumerComponent signalConsumerComponent, EntityRef entity) {
-        final SignalConsumerComponent.Mode mode = signalConsumerComponent.mode;
+    private void processSignalConsumerResult(ConsumerSignals networkSignals, ConsumerHandle handle) {
+        final SignalConsumerComponent.Mode mode = handle.getConsumerComponent().mode;
         switch (mode) {
             // OR
             case AT_LEAST_ONE: {
                 final boolean signal = hasSignalForOr(networkSignals);
-                outputSignalToSimpleConsumer(entity, signal);
+                outputSignalToSimpleConsumer(handle, signal);
                 return;
             }
             // AND
             case ALL_CONNECTED: {
                 final boolean signal = hasSignalForAnd(networkSignals);
-                outputSignalToSimpleConsumer(entity, signal);
+                outputSignalToSimpleConsumer(handle, signal);
                 return;
             }
             // XOR
             case EXACTLY_ONE: {
                 final boolean signal = hasSignalForXor(networkSignals);
-                outputSignalToSimpleConsumer(entity, signal);
+                outputSignalToSimpleConsumer(handle, signal);
                 return;
             }
             // Special leaving the calculation to the block's system itself
             case SPECIAL: {
-                outputSignalToAdvancedConsumer(entity, networkSignals);
+                outputSignalToAdvancedConsumer(handle, networkSignals);
                 return;
             }
             default:
@@ -278,23 +1007,28 @@ public class SignalSystem extends BaseComponentSystem implements UpdateSubscribe
      * Sends a signal change to an advanced consumer represented by {@code entity}. This is done by updating the {@code signalStrengths}
      * field of the {@link SignalConsumerAdvancedStatusComponent} on the {@code entity}.
      *
-     * @param entity The consumer entity.
+     * @param handle The handle of the consumer entity.
      * @param networkSignals The signals in the network which are to be sent to the {@code entity}.
      */
-    private void outputSignalToAdvancedConsumer(EntityRef entity, Collection<NetworkSignals> networkSignals) {
-        final SignalConsumerAdvancedStatusComponent advancedStatusComponent =
-                entity.getComponent(SignalConsumerAdvancedStatusComponent.class);
-        Map<String, Integer> signalResult = new HashMap<>();
+    private void outputSignalToAdvancedConsumer(ConsumerHandle handle, ConsumerSignals networkSignals) {
+        final SignalConsumerAdvancedStatusComponent advancedStatusComponent = handle.getAdvancedStatusComponent();
+        // Only copied when the signals have changed, as it is then kept by the component
+        Map<String, Integer> signalResult = advancedSignalResult;
+        signalResult.clear();
         if (networkSignals != null) {
-            for (NetworkSignals networkSignal : networkSignals) {
-                for (Map.Entry<Side, Integer> sideSignalEntry : networkSignal.signalStrengths.entrySet()) {
-                    signalResult.put(sideSignalEntry.getKey().name(), sideSignalEntry.getValue());
+            for (int i = 0; i < networkSignals.size(); i++) {
+                NetworkSignals networkSignal = networkSignals.getSignals(i);
+                byte sidesInNetwork = networkSignal.getSidesInNetwork();
+                for (Side side : NetworkSignals.SIDES) {
+                    if (SideBitFlag.hasSide(sidesInNetwork, side)) {
+                        signalResult.put(side.name(), networkSignal.getSignalStrength(side));
+                    }
                 }
             }
         }
         if (!advancedStatusComponent.signalStrengths.equals(signalResult)) {
-            advancedStatusComponent.signalStrengths = signalResult;
-            entity.saveComponent(advancedStatusComponent);
+            advancedStatusComponent.signalStrengths = new HashMap<>(signalResult);
+            handle.getEntity().saveComponent(advancedStatusComponent);
         }
     }
 
@@ -302,37 +1036,88 @@ public class SignalSystem extends BaseComponentSystem implements UpdateSubscribe
      * Sends a signal change to a simple consumer represented by {@code entity}. This is done by updating the {@link
      * SignalConsumerStatusComponent} on the {@code entity}.
      *
-     * @param entity The consumer entity.
+     * @param handle The handle of the consumer entity.
      * @param result Whether a signal has been sent to the consumer or not.
      */
-    private void outputSignalToSimpleConsumer(EntityRef entity, boolean result) {
-        final SignalConsumerStatusComponent consumerStatusComponent =
-                entity.getComponent(SignalConsumerStatusComponent.class);
+    private void outputSignalToSimpleConsumer(ConsumerHandle handle, boolean result) {
+        final SignalConsumerStatusComponent consumerStatusComponent = handle.getStatusComponent();
         if (consumerStatusComponent.hasSignal != result) {
             consumerStatusComponent.hasSignal = result;
-            entity.saveComponent(consumerStatusComponent);
+            handle.getEntity().saveComponent(consumerStatusComponent);
             if (logger.isDebugEnabled()) {
                 logger.debug("Consumer has signal: " + result);
             }
         }
     }
 
+    /**
+     * Swaps a consumer without an entity to the block for its signal. Blocks that are neither of its two blocks are left alone,
+     * as they are about to be removed from the signal network.
+     *
+     * @param consumerNode The registered consumer node
+     * @param blockStateConsumer The blocks the consumer is swapped between
+     * @param networkSignals The signals in the networks of the consumer
+     */
+    private void outputSignalToBlockStateConsumer(SignalNetworkNode consumerNode, BlockStateConsumer blockStateConsumer,
+                                                  ConsumerSignals networkSignals) {
+        final boolean signal;
+        switch (blockStateConsumer.getMode()) {
+            case AT_LEAST_ONE:
+                signal = hasSignalForOr(networkSignals);
+                break;
+            case ALL_CONNECTED:
+                signal = hasSignalForAnd(networkSignals);
+                break;
+            case EXACTLY_ONE:
+                signal = hasSignalForXor(networkSignals);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported mode set for SignalBlockStateConsumerComponent");
+        }
+        int id = consumerNode.getId();
+        if (blockStateSignals.get(id) == signal) {
+            // Already showing the block for the signal, so the world is not looked at
+            return;
+        }
+        consumerLocation.set(consumerNode.location.x, consumerNode.location.y, consumerNode.location.z);
+        Block oldBlock = blockStateConsumer.getBlock(!signal);
+        Block newBlock = blockStateConsumer.getBlock(signal);
+        Block currentBlock = worldProvider.getBlock(consumerLocation);
+        if (oldBlock != newBlock && currentBlock == oldBlock) {
+            // Swapping the block deactivates and activates the consumer again, which leaves it in the network as it is
+            swappedConsumer = consumerNode;
+            try {
+                worldProvider.setBlock(consumerLocation, newBlock);
+            } finally {
+                swappedConsumer = null;
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Consumer block has signal: " + signal);
+            }
+        }
+        if (currentBlock == oldBlock || currentBlock == newBlock) {
+            blockStateSignals.set(id, signal);
+        }
+    }
+
     /**
      * Used for the XOR signal block
      *
-     * @param networkSignals The signals in the network
+     * @param networkSignals The signals in the networks of the consumer
      * @return True if the network has a XOR signal
      */
-    private boolean hasSignalForXor(Collection<NetworkSignals> networkSignals) {
+    private boolean hasSignalForXor(ConsumerSignals networkSignals) {
         if (networkSignals == null) {
             return false;
         }
         boolean connected = false;
-        for (NetworkSignals networkSignal : networkSignals) {
-            if (SideBitFlag.getSides(networkSignal.sidesWithSignal).size() > 1) {
+        for (int i = 0; i < networkSignals.size(); i++) {
+            NetworkSignals networkSignal = networkSignals.getSignals(i);
+            int sidesWithSignalCount = Integer.bitCount(networkSignal.getSidesWithSignal() & 0xFF);
+            if (sidesWithSignalCount > 1) {
                 // More than one side connected in network
                 return false;
-            } else if (networkSignal.sidesWithSignal > 0) {
+            } else if (sidesWithSignalCount == 1) {
                 if (connected) {
                     // One side connected in network, but already connected in other network
                     return false;
@@ -348,15 +1133,16 @@ public class SignalSystem extends BaseComponentSystem implements UpdateSubscribe
     /**
      * Used for the AND signal block
      *
-     * @param networkSignals The signals in the network
+     * @param networkSignals The signals in the networks of the consumer
      * @return True if the network has a AND signal
      */
-    private boolean hasSignalForAnd(Collection<NetworkSignals> networkSignals) {
+    private boolean hasSignalForAnd(ConsumerSignals networkSignals) {
         if (networkSignals == null) {
             return false;
         }
-        for (NetworkSignals networkSignal : networkSignals) {
-            if (networkSignal.sidesWithoutSignal > 0) {
+        for (int i = 0; i < networkSignals.size(); i++) {
+            NetworkSignals networkSignal = networkSignals.getSignals(i);
+            if (networkSignal.getSidesWithoutSignal() != 0) {
                 return false;
             }
         }
@@ -366,15 +1152,16 @@ public class SignalSystem extends BaseComponentSystem implements UpdateSubscribe
     /**
      * Used for the OR signal block
      *
-     * @param networkSignals The signals in the network
+     * @param networkSignals The signals in the networks of the consumer
      * @return True if the network has a OR signal
      */
-    private boolean hasSignalForOr(Collection<NetworkSignals> networkSignals) {
+    private boolean hasSignalForOr(ConsumerSignals networkSignals) {
         if (networkSignals == null) {
             return false;
         }
-        for (NetworkSignals networkSignal : networkSignals) {
-            if (networkSignal.sidesWithSignal > 0) {
+        for (int i = 0; i < networkSignals.size(); i++) {
+            NetworkSignals networkSignal = networkSignals.getSignals(i);
+            if (networkSignal.getSidesWithSignal() != 0) {
                 return true;
             }
         }
@@ -382,41 +1169,74 @@ public class SignalSystem extends BaseComponentSystem implements UpdateSubscribe
     }
 
     /**
-     * Returns the most powerful signals in the given network. If there is a signal with infinite strength on the network, the whole network
-     * is returned.
+     * Stores the most powerful signals the consumer receives from the given network, reusing the signals stored for the
+     * network before, or one from the pool.
      *
      * @param network The network to check for signals
      * @param consumerNode The node receiving the signals
-     * @return The most powerful of the signals
+     * @param strengthField The field computed for the network, or null to search the paths
      */
-    private NetworkSignals getConsumerSignalInNetwork(Network2<SignalNetworkNode> network,
-                                                      SignalNetworkNode consumerNode) {
-        // Check for infinite signal strength (-1), if there - it powers whole network
-        Iterable<SignalNetworkNode> producers = getProducersInNetwork(network);
-        for (SignalNetworkNode producer : producers) {
-            if (consumerCanPowerItself || !producer.location.equals(consumerNode.location)) {
-                final int signalStrength = producerSignalStrengths.get(producer);
-                if (signalStrength == -1) {
-                    NetworkSignals networkSignals = new NetworkSignals();
-                    for (Side side : SideBitFlag.getSides(network.getLeafSidesInNetwork(consumerNode))) {
-                        networkSignals.addSignal(side, -1);
-                    }
+    private void updateConsumerSignalInNetwork(Network2<SignalNetworkNode> network, SignalNetworkNode consumerNode,
+                                               SignalStrengthField strengthField) {
+        fillConsumerSignalInNetwork(network, consumerNode, strengthField, prepareConsumerSignalInNetwork(network, consumerNode));
+    }
 
-                    return networkSignals;
-                }
-            }
+    /**
+     * Clears the signals stored for the consumer from the given network, or stores new ones from the pool.
+     *
+     * @param network The network the signals are from
+     * @param consumerNode The node receiving the signals
+     * @return The cleared signals, to be filled
+     */
+    private NetworkSignals prepareConsumerSignalInNetwork(Network2<SignalNetworkNode> network, SignalNetworkNode consumerNode) {
+        ConsumerSignals signals = consumerSignals[consumerNode.getId()];
+        NetworkSignals networkSignals = signals.get(network);
+        if (networkSignals == null) {
+            networkSignals = networkSignalsPool.isEmpty() ? new NetworkSignals() : networkSignalsPool.pop();
+            signals.add(network, networkSignals);
         }
+        networkSignals.clear();
+        return networkSignals;
+    }
 
+    /**
+     * Finds the most powerful signals in the given network. If there is a signal with infinite strength on the network, the whole
+     * network is powered by it.
+     * <p>
+     * Limited strength signals are read from {@code strengthField} when it is given, otherwise they are found by searching the path
+     * from every producer. A consumer powered by a limited producer on its own location falls back to the path search, as the field
+     * cannot leave a single producer out.
+     *
+     * @param network The network to check for signals
+     * @param consumerNode The node receiving the signals
+     * @param strengthField The field computed for the network, or null to search the paths
+     * @param networkSignals The signals to fill with the most powerful of the signals
+     */
+    private void fillConsumerSignalInNetwork(Network2<SignalNetworkNode> network, SignalNetworkNode consumerNode,
+                                             SignalStrengthField strengthField, NetworkSignals networkSignals) {
         byte sidesInNetwork = network.getLeafSidesInNetwork(consumerNode);
 
-        NetworkSignals networkSignals = new NetworkSignals();
-
-        for (Side sideInNetwork : SideBitFlag.getSides(sidesInNetwork)) {
-            int maxSignal = getMaxSignalInNetworkOnSide(network, consumerNode, producers, sideInNetwork);
-            networkSignals.addSignal(sideInNetwork, maxSignal);
+        // Check for infinite signal strength (-1), if there - it powers whole network
+        if (signalNetworkState.hasUnlimitedSignal(network, consumerNode, consumerCanPowerItself)) {
+            for (Side side : NetworkSignals.SIDES) {
+                if (SideBitFlag.hasSide(sidesInNetwork, side)) {
+                    networkSignals.addSignal(side, -1);
+                }
+            }
+            return;
         }
 
-        return networkSignals;
+        List<SignalNetworkNode> producers = signalNetworkState.getProducersInNetwork(network);
+        boolean useStrengthField = strengthField != null
+                && (consumerCanPowerItself || !strengthField.hasSourceAt(PackedPositions.pack(consumerNode.location)));
+        for (Side sideInNetwork : NetworkSignals.SIDES) {
+            if (SideBitFlag.hasSide(sidesInNetwork, sideInNetwork)) {
+                int maxSignal = useStrengthField
+                        ? strengthField.getSignalOnSide(consumerNode, sideInNetwork)
+                        : getMaxSignalInNetworkOnSide(network, consumerNode, producers, sideInNetwork);
+                networkSignals.addSignal(sideInNetwork, maxSignal);
+            }
+        }
     }
 
     /**
@@ -429,12 +1249,14 @@ public class SignalSystem extends BaseComponentSystem implements UpdateSubscribe
      * @return The most powerful signal on the side
      */
     private int getMaxSignalInNetworkOnSide(Network2<SignalNetworkNode> network, SignalNetworkNode consumerNode,
-                                            Iterable<SignalNetworkNode> producers, Side sideInNetwork) {
+                                            List<SignalNetworkNode> producers, Side sideInNetwork) {
         int result = 0;
-        for (SignalNetworkNode producer : producers) {
+        for (int i = 0; i < producers.size(); i++) {
+            SignalNetworkNode producer = producers.get(i);
             if (consumerCanPowerItself || !producer.location.equals(consumerNode.location)) {
-                final int signalStrength = producerSignalStrengths.get(producer);
-                int distance = network.getDistanceWithSide(producer, consumerNode, sideInNetwork, signalStrength);
+                final int signalStrength = signalNetworkState.getProducerSignalStrength(producer);
+                int distance = distanceCache.getDistanceWithSide(network, producer, consumerNode, sideInNetwork,
+                        signalStrength);
                 if (distance != -1) {
                     result = Math.max(signalStrength - distance + 1, result);
                 }
@@ -469,6 +1291,172 @@ public class SignalSystem extends BaseComponentSystem implements UpdateSubscribe
         return BlockNetworkUtil.getResultConnections(worldProvider.getBlock(location), definedSides);
     }
 
+    /**
+     * Collects the registered nodes of the given type at a location, without building nodes to compare against. Nodes that are
+     * pending removal are left out.
+     *
+     * @param location The location of the block
+     * @param type The {@link SignalNetworkNode.Type} of the nodes
+     * @param nodes The collection to add the nodes to
+     */
+    private void collectRegisteredNodes(Vector3ic location, SignalNetworkNode.Type type,
+                                        Collection<SignalNetworkNode> nodes) {
+        for (SignalNetworkNode node : nodeRegistry.getNodesAt(PackedPositions.pack(location))) {
+            if (node.getType() == type && !topologyTransaction.isRemoving(node)) {
+                nodes.add(node);
+            }
+        }
+    }
+
+    /**
+     * Finds the registered producer or consumer at a location that is not pending removal.
+     *
+     * @param location The location of the block
+     * @param type The {@link SignalNetworkNode.Type} of the node
+     * @return The registered node, or null if there is none
+     */
+    private SignalNetworkNode getRegisteredLeafNode(Vector3ic location, SignalNetworkNode.Type type) {
+        for (SignalNetworkNode node : nodeRegistry.getNodesAt(PackedPositions.pack(location))) {
+            if (node.getType() == type && !topologyTransaction.isRemoving(node)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param node A registered node
+     * @param location A location
+     * @return Whether the node is at the location
+     */
+    private static boolean isAt(SignalNetworkNode node, Vector3ic location) {
+        return node.location.x == location.x() && node.location.y == location.y() && node.location.z == location.z();
+    }
+
+    /**
+     * Registers a conductor and adds it to the signal network with the next topology transaction.
+     *
+     * @param location The location of the conductor
+     * @param connectionGroup The connection group the conductor is made for
+     * @param reason The reason the conductor is added
+     */
+    @VisibleForTesting
+    void addConductor(Vector3ic location, SignalConductorComponent.ConnectionGroup connectionGroup, NetworkChangeReason reason) {
+        SignalNetworkNode conductorNode = nodeRegistry.register(toNode(location, connectionGroup.inputSides,
+                connectionGroup.outputSides, SignalNetworkNode.Type.CONDUCTOR));
+        topologyTransaction.add(conductorNode, reason);
+    }
+
+    /**
+     * Registers a producer with its strength and adds it to the signal network with the next topology transaction.
+     *
+     * @param location The location of the producer
+     * @param connectionSides The sides the producer outputs on
+     * @param signalStrength The strength of the producer, -1 for infinite
+     * @param reason The reason the producer is added
+     * @return The registered producer node
+     */
+    @VisibleForTesting
+    SignalNetworkNode addProducer(Vector3ic location, byte connectionSides, int signalStrength, NetworkChangeReason reason) {
+        SignalNetworkNode producerNode = nodeRegistry.register(toNode(location, 0, connectionSides,
+                SignalNetworkNode.Type.PRODUCER));
+        setNetworkProducerSignalStrength(producerNode, signalStrength);
+        if (topologyTransaction.add(producerNode, reason)) {
+            // The producer never left its networks, which are not told about the strength it came back with
+            markProducerModified(producerNode.getId(), UNKNOWN_SIGNAL_STRENGTH);
+        }
+        return producerNode;
+    }
+
+    /**
+     * Registers a consumer and adds it to the signal network with the next topology transaction.
+     *
+     * @param location The location of the consumer
+     * @param connectionSides The sides the consumer receives on
+     * @param reason The reason the consumer is added
+     * @return The registered consumer node
+     */
+    private SignalNetworkNode addConsumer(Vector3ic location, byte connectionSides, NetworkChangeReason reason) {
+        SignalNetworkNode consumerNode = nodeRegistry.register(toNode(location, connectionSides, 0,
+                SignalNetworkNode.Type.CONSUMER));
+        addConsumerSignals(consumerNode);
+        if (topologyTransaction.add(consumerNode, reason)) {
+            // The consumer never left its networks, but it may have been changed in the meantime
+            modifiedConsumers.set(consumerNode.getId());
+        }
+        return consumerNode;
+    }
+
+    /**
+     * Registers a consumer without an entity and adds it to the signal network with the next topology transaction.
+     *
+     * @param location The location of the consumer
+     * @param blockStateConsumer The blocks the consumer is swapped between
+     * @param reason The reason the consumer is added
+     */
+    @VisibleForTesting
+    void addBlockStateConsumer(Vector3ic location, BlockStateConsumer blockStateConsumer, NetworkChangeReason reason) {
+        SignalNetworkNode consumerNode = addConsumer(location, blockStateConsumer.getConnectionSides(), reason);
+        setBlockStateConsumer(consumerNode, blockStateConsumer);
+        blockStateSignals.set(consumerNode.getId(), worldProvider.getBlock(location) == blockStateConsumer.getBlock(true));
+    }
+
+    private void setBlockStateConsumer(SignalNetworkNode consumerNode, BlockStateConsumer blockStateConsumer) {
+        int id = consumerNode.getId();
+        if (id >= blockStateConsumers.length) {
+            blockStateConsumers = Arrays.copyOf(blockStateConsumers, Math.max(id + 1, blockStateConsumers.length * 2));
+        }
+        blockStateConsumers[id] = blockStateConsumer;
+    }
+
+    /**
+     * Removes a registered node from the signal network with the next topology transaction. The node is released right away
+     * if it has never been added to the network engine.
+     *
+     * @param node The registered node
+     * @param reason The reason the node is removed
+     */
+    private void removeNode(SignalNetworkNode node, NetworkChangeReason reason) {
+        if (topologyTransaction.remove(node, reason)) {
+            releaseNode(node);
+        }
+    }
+
+    /**
+     * Applies the buffered topology changes to the network engine, and releases the state of the nodes removed by them.
+     */
+    private void applyTopologyTransaction() {
+        if (!topologyTransaction.isEmpty()) {
+            topologyTransaction.apply(signalNetwork, removedNodes, connectedGroups);
+            for (int i = 0; i < removedNodes.size(); i++) {
+                releaseNode(removedNodes.get(i));
+            }
+            removedNodes.clear();
+        }
+    }
+
+    /**
+     * Forgets the state of a node that is no longer in the network engine, and unregisters it.
+     *
+     * @param node The registered node
+     */
+    private void releaseNode(SignalNetworkNode node) {
+        if (node.getType() == SignalNetworkNode.Type.PRODUCER) {
+            // While the background tasks run, only producers that never made it into a network are released, whose
+            // strength they do not read
+            signalNetworkState.removeProducerSignalStrength(node);
+            queuedProducers.clear(node.getId());
+        } else if (node.getType() == SignalNetworkNode.Type.CONSUMER) {
+            removeConsumerSignals(node);
+            dropConsumerHandle(node);
+            if (node.getId() < blockStateConsumers.length) {
+                blockStateConsumers[node.getId()] = null;
+            }
+            blockStateSignals.clear(node.getId());
+        }
+        unregisterNode(node);
+    }
+
     /**
      * Adds the placed block to the correct list
      *
@@ -484,31 +1472,26 @@ public class SignalSystem extends BaseComponentSystem implements UpdateSubscribe
             logger.debug("SignalConductor placed: " + ref.getParentPrefab());
             for (SignalConductorComponent.ConnectionGroup connectionGroup
                     : ref.getComponent(SignalConductorComponent.class).connectionGroups) {
-                final SignalNetworkNode conductorNode = toNode(location, connectionGroup.inputSides,
-                        connectionGroup.outputSides, SignalNetworkNode.Type.CONDUCTOR);
-                signalNetwork.addNetworkingBlock(conductorNode, NetworkChangeReason.WORLD_CHANGE);
+                addConductor(location, connectionGroup, NetworkChangeReason.WORLD_CHANGE);
             }
         }
 
-        if (ref.hasComponent(SignalConsumerComponent.class)) {
+        if (ref.hasComponent(SignalBlockStateConsumerComponent.class)) {
+            logger.debug("SignalBlockStateConsumer placed: " + ref.getParentPrefab());
+            addBlockStateConsumer(location,
+                    new BlockStateConsumer(ref.getComponent(SignalBlockStateConsumerComponent.class), blockManager),
+                    NetworkChangeReason.WORLD_CHANGE);
+        } else if (ref.hasComponent(SignalConsumerComponent.class)) {
             logger.debug("SignalConsumer placed: " + ref.getParentPrefab());
             byte connectingOnSides = ref.getComponent(SignalConsumerComponent.class).connectionSides;
 
-            SignalNetworkNode consumerNode = toNode(location, connectingOnSides, 0, SignalNetworkNode.Type.CONSUMER);
-
-            consumerSignalInNetworks.put(consumerNode, Maps.newHashMap());
-            signalNetwork.addLeafBlock(consumerNode, NetworkChangeReason.WORLD_CHANGE);
+            addConsumer(location, connectingOnSides, NetworkChangeReason.WORLD_CHANGE);
         } else if (ref.hasComponent(SignalProducerComponent.class)) {
             logger.debug("SignalProducer placed: " + ref.getParentPrefab());
             final SignalProducerComponent producerComponent = ref.getComponent(SignalProducerComponent.class);
-            final int signalStrength = producerComponent.signalStrength;
-            byte connectingOnSides = producerComponent.connectionSides;
 
-            final SignalNetworkNode producerNode = toNode(location, 0, connectingOnSides,
-                    SignalNetworkNode.Type.PRODUCER);
-
-            producerSignalStrengths.put(producerNode, signalStrength);
-            signalNetwork.addLeafBlock(producerNode, NetworkChangeReason.WORLD_CHANGE);
+            addProducer(location, producerComponent.connectionSides, producerComponent.signalStrength,
+                    NetworkChangeReason.WORLD_CHANGE);
         }
 
     }
@@ -522,28 +1505,20 @@ public class SignalSystem extends BaseComponentSystem implements UpdateSubscribe
     public void prefabConductorLoaded(OnActivatedBlocks event, EntityRef blockType) {
         for (SignalConductorComponent.ConnectionGroup connectionGroup
                 : blockType.getComponent(SignalConductorComponent.class).connectionGroups) {
-            Set<SignalNetworkNode> conductorNodes = Sets.newHashSet();
             for (Vector3ic location : event) {
-                final SignalNetworkNode conductorNode = toNode(location, connectionGroup.inputSides,
-                        connectionGroup.outputSides, SignalNetworkNode.Type.CONDUCTOR);
-                conductorNodes.add(conductorNode);
+                addConductor(location, connectionGroup, NetworkChangeReason.CHUNK_EVENT);
             }
-            signalNetwork.addNetworkingBlocks(conductorNodes, NetworkChangeReason.CHUNK_EVENT);
         }
     }
 
     @ReceiveEvent(components = SignalConductorComponent.class)
     public void prefabConductorUnloaded(BeforeDeactivateBlocks event, EntityRef blockType) {
-        for (SignalConductorComponent.ConnectionGroup connectionGroup
-                : blockType.getComponent(SignalConductorComponent.class).connectionGroups) {
-            Set<SignalNetworkNode> conductorNodes = Sets.newHashSet();
-            // Quite messy due to the order of operations, need to check if the order is important
-            for (Vector3ic location : event) {
-                final SignalNetworkNode conductorNode = toNode(location, connectionGroup.inputSides,
-                        connectionGroup.outputSides, SignalNetworkNode.Type.CONDUCTOR);
-                conductorNodes.add(conductorNode);
-            }
-            signalNetwork.removeNetworkingBlocks(conductorNodes, NetworkChangeReason.CHUNK_EVENT);
+        Set<SignalNetworkNode> conductorNodes = Sets.newHashSet();
+        for (Vector3ic location : event) {
+            collectRegisteredNodes(location, SignalNetworkNode.Type.CONDUCTOR, conductorNodes);
+        }
+        for (SignalNetworkNode conductorNode : conductorNodes) {
+            removeNode(conductorNode, NetworkChangeReason.CHUNK_EVENT);
         }
     }
 
@@ -551,11 +1526,10 @@ public class SignalSystem extends BaseComponentSystem implements UpdateSubscribe
     @ReceiveEvent(components = {BlockComponent.class, SignalConductorComponent.class})
     public void conductorRemoved(BeforeDestroyEvent event, EntityRef block) {
         final Vector3i location = block.getComponent(BlockComponent.class).getPosition(new Vector3i());
-        for (SignalConductorComponent.ConnectionGroup connectionGroup
-                : block.getComponent(SignalConductorComponent.class).connectionGroups) {
-            final SignalNetworkNode conductorNode = toNode(location, connectionGroup.inputSides,
-                    connectionGroup.outputSides, SignalNetworkNode.Type.CONDUCTOR);
-            signalNetwork.removeNetworkingBlock(conductorNode, NetworkChangeReason.WORLD_CHANGE);
+        Set<SignalNetworkNode> conductorNodes = Sets.newHashSet();
+        collectRegisteredNodes(location, SignalNetworkNode.Type.CONDUCTOR, conductorNodes);
+        for (SignalNetworkNode conductorNode : conductorNodes) {
+            removeNode(conductorNode, NetworkChangeReason.WORLD_CHANGE);
         }
     }
 
@@ -566,32 +1540,21 @@ public class SignalSystem extends BaseComponentSystem implements UpdateSubscribe
     @ReceiveEvent(components = SignalProducerComponent.class)
     public void prefabProducerLoaded(OnActivatedBlocks event, EntityRef blockType) {
         final SignalProducerComponent producerComponent = blockType.getComponent(SignalProducerComponent.class);
-        int signalStrength = producerComponent.signalStrength;
-        Set<SignalNetworkNode> producerNodes = Sets.newHashSet();
         for (Vector3ic location : event) {
-            final SignalNetworkNode producerNode = toNode(location, 0,
-                    producerComponent.connectionSides, SignalNetworkNode.Type.PRODUCER);
-
-            producerSignalStrengths.put(producerNode, signalStrength);
-            producerNodes.add(producerNode);
+            addProducer(location, producerComponent.connectionSides, producerComponent.signalStrength,
+                    NetworkChangeReason.CHUNK_EVENT);
         }
-        signalNetwork.addLeafBlocks(producerNodes, NetworkChangeReason.CHUNK_EVENT);
     }
 
     @ReceiveEvent(components = SignalProducerComponent.class)
     public void prefabProducerUnloaded(BeforeDeactivateBlocks event, EntityRef blockType) {
-        byte connectingOnSides = blockType.getComponent(SignalProducerComponent.class).connectionSides;
-        // Quite messy due to the order of operations, need to check if the order is important
-        Set<SignalNetworkNode> producerNodes = Sets.newHashSet();
+        // Before the block entities are stored away
+        saveProducerComponents();
         for (Vector3ic location : event) {
-            final SignalNetworkNode producerNode = toNode(location, 0, connectingOnSides,
-                    SignalNetworkNode.Type.PRODUCER);
-            producerNodes.add(producerNode);
-        }
-
-        signalNetwork.removeLeafBlocks(producerNodes, NetworkChangeReason.CHUNK_EVENT);
-        for (SignalNetworkNode producerNode : producerNodes) {
-            producerSignalStrengths.remove(producerNode);
+            SignalNetworkNode producerNode = getRegisteredLeafNode(location, SignalNetworkNode.Type.PRODUCER);
+            if (producerNode != null) {
+                removeNode(producerNode, NetworkChangeReason.CHUNK_EVENT);
+            }
         }
     }
 
@@ -603,31 +1566,31 @@ public class SignalSystem extends BaseComponentSystem implements UpdateSubscribe
             Vector3i location = block.getComponent(BlockComponent.class).getPosition(new Vector3i());
             final SignalProducerComponent producerComponent = block.getComponent(SignalProducerComponent.class);
 
-            Set<SignalNetworkNode> oldLeafNodes = Sets.newHashSet(signalNetwork.getLeafNodesAt(location));
-            for (SignalNetworkNode oldLeafNode : oldLeafNodes) {
-                if (oldLeafNode.getType() == SignalNetworkNode.Type.PRODUCER) {
-                    producerSignalStrengths.remove(oldLeafNode);
-                    signalNetwork.removeLeafBlock(oldLeafNode, NetworkChangeReason.WORLD_CHANGE);
-                }
+            SignalNetworkNode oldNode = getRegisteredLeafNode(location, SignalNetworkNode.Type.PRODUCER);
+            if (oldNode != null
+                    && oldNode.outputConnectionSides == getConnections(location, producerComponent.connectionSides)) {
+                // Only the strength has changed, the producer stays in the same networks
+                updateProducerSignalStrength(oldNode, producerComponent.signalStrength);
+                return;
+            }
+            if (oldNode != null) {
+                removeNode(oldNode, NetworkChangeReason.WORLD_CHANGE);
             }
 
-            SignalNetworkNode node = toNode(location, 0, producerComponent.connectionSides,
-                    SignalNetworkNode.Type.PRODUCER);
-            producerSignalStrengths.put(node, producerComponent.signalStrength);
-            signalNetwork.addLeafBlock(node, NetworkChangeReason.WORLD_CHANGE);
-
-            modifiedProducers.add(node);
+            SignalNetworkNode node = addProducer(location, producerComponent.connectionSides,
+                    producerComponent.signalStrength, NetworkChangeReason.WORLD_CHANGE);
+            markProducerModified(node.getId(), UNKNOWN_SIGNAL_STRENGTH);
         }
     }
 
     @ReceiveEvent(components = {BlockComponent.class, SignalProducerComponent.class})
     public void producerRemoved(BeforeDestroyEvent event, EntityRef block) {
         Vector3i location = block.getComponent(BlockComponent.class).getPosition(new Vector3i());
-        byte connectingOnSides = block.getComponent(SignalProducerComponent.class).connectionSides;
 
-        final SignalNetworkNode producerNode = toNode(location, 0, connectingOnSides, SignalNetworkNode.Type.PRODUCER);
-        signalNetwork.removeLeafBlock(producerNode, NetworkChangeReason.WORLD_CHANGE);
-        producerSignalStrengths.remove(producerNode);
+        final SignalNetworkNode producerNode = getRegisteredLeafNode(location, SignalNetworkNode.Type.PRODUCER);
+        if (producerNode != null) {
+            removeNode(producerNode, NetworkChangeReason.WORLD_CHANGE);
+        }
     }
 
     /*
@@ -637,91 +1600,177 @@ public class SignalSystem extends BaseComponentSystem implements UpdateSubscribe
     @ReceiveEvent(components = SignalConsumerComponent.class)
     public void prefabConsumerLoaded(OnActivatedBlocks event, EntityRef blockType) {
         byte connectingOnSides = blockType.getComponent(SignalConsumerComponent.class).connectionSides;
-        Set<SignalNetworkNode> consumerNodes = Sets.newHashSet();
         for (Vector3ic location : event) {
-            SignalNetworkNode consumerNode = toNode(location, connectingOnSides, 0,
-                    SignalNetworkNode.Type.CONSUMER);
-
-            consumerSignalInNetworks.put(consumerNode, Maps.newHashMap());
-            consumerNodes.add(consumerNode);
+            addConsumer(location, connectingOnSides, NetworkChangeReason.CHUNK_EVENT);
         }
-        signalNetwork.addLeafBlocks(consumerNodes, NetworkChangeReason.CHUNK_EVENT);
     }
 
     @ReceiveEvent(components = SignalConsumerComponent.class)
     public void prefabConsumerUnloaded(BeforeDeactivateBlocks event, EntityRef blockType) {
-        byte connectingOnSides = blockType.getComponent(SignalConsumerComponent.class).connectionSides;
-        Set<SignalNetworkNode> consumerNodes = Sets.newHashSet();
+        for (Vector3ic location : event) {
+            SignalNetworkNode consumerNode = getRegisteredLeafNode(location, SignalNetworkNode.Type.CONSUMER);
+            if (consumerNode != null) {
+                removeNode(consumerNode, NetworkChangeReason.CHUNK_EVENT);
+            }
+        }
+    }
+
 
-        // Quite messy due to the order of operations, need to check if the order is important
+    @ReceiveEvent(components = SignalBlockStateConsumerComponent.class)
+    public void prefabBlockStateConsumerLoaded(OnActivatedBlocks event, EntityRef blockType) {
+        // Resolved once for all the blocks of the event
+        BlockStateConsumer blockStateConsumer = new BlockStateConsumer(
+                blockType.getComponent(SignalBlockStateConsumerComponent.class), blockManager);
         for (Vector3ic location : event) {
-            SignalNetworkNode consumerNode = toNode(location, connectingOnSides, 0,
-                    SignalNetworkNode.Type.CONSUMER);
-            consumerNodes.add(consumerNode);
+            if (swappedConsumer != null && isAt(swappedConsumer, location)) {
+                if (swappedConsumer.inputConnectionSides == blockStateConsumer.getConnectionSides()) {
+                    // Swapped to by the consumer itself, which is still the same in the network, so there is nothing to
+                    // recalculate. The signal it shows is set once the swap is done
+                    setBlockStateConsumer(swappedConsumer, blockStateConsumer);
+                    continue;
+                }
+                removeNode(swappedConsumer, NetworkChangeReason.CHUNK_EVENT);
+            }
+            addBlockStateConsumer(location, blockStateConsumer, NetworkChangeReason.CHUNK_EVENT);
         }
+    }
 
-        signalNetwork.removeLeafBlocks(consumerNodes, NetworkChangeReason.CHUNK_EVENT);
-        for (SignalNetworkNode consumerNode : consumerNodes) {
-            consumerSignalInNetworks.remove(consumerNode);
+    @ReceiveEvent(components = SignalBlockStateConsumerComponent.class)
+    public void prefabBlockStateConsumerUnloaded(BeforeDeactivateBlocks event, EntityRef blockType) {
+        for (Vector3ic location : event) {
+            SignalNetworkNode consumerNode = getRegisteredLeafNode(location, SignalNetworkNode.Type.CONSUMER);
+            // Kept while it swaps its own block, until the block swapped to is activated
+            if (consumerNode != null && consumerNode != swappedConsumer) {
+                removeNode(consumerNode, NetworkChangeReason.CHUNK_EVENT);
+            }
         }
     }
 
+    /**
+     * Migrates a block state consumer, such as a lamp, stored by a world saved while it was still a consumer with a block
+     * entity. The consumer components are stripped from the entity, and the consumer is registered at the prefab level
+     * instead, unless the activation of its block has done so already.
+     *
+     * @param event The event triggered by loading the entity
+     * @param block The block entity with the old consumer components
+     */
+    @ReceiveEvent(components = {BlockComponent.class, SignalConsumerComponent.class})
+    public void legacyBlockStateConsumerLoaded(OnActivatedComponent event, EntityRef block) {
+        BlockComponent blockComponent = block.getComponent(BlockComponent.class);
+        SignalBlockStateConsumerComponent blockStateConsumerComponent = blockComponent.getBlock().getPrefab()
+                .map(prefab -> prefab.getComponent(SignalBlockStateConsumerComponent.class))
+                .orElse(null);
+        if (blockStateConsumerComponent == null) {
+            return;
+        }
+        logger.debug("Stored SignalConsumer migrated to a SignalBlockStateConsumer: " + block.getParentPrefab());
+        block.removeComponent(SignalConsumerStatusComponent.class);
+        block.removeComponent(SignalConsumerAdvancedStatusComponent.class);
+        block.removeComponent(SignalConsumerComponent.class);
+
+        Vector3i location = blockComponent.getPosition(new Vector3i());
+        if (getRegisteredLeafNode(location, SignalNetworkNode.Type.CONSUMER) == null) {
+            addBlockStateConsumer(location, new BlockStateConsumer(blockStateConsumerComponent, blockManager),
+                    NetworkChangeReason.CHUNK_EVENT);
+        }
+    }
 
     @ReceiveEvent(components = SignalConsumerComponent.class)
     public void consumerUpdated(OnChangedComponent event, EntityRef block) {
 
         if (block.hasComponent(BlockComponent.class)) {
-            Vector3i location = new Vector3i(block.getComponent(BlockComponent.class).getPosition(new Vector3i()));
+            Vector3i location = block.getComponent(BlockComponent.class).getPosition(new Vector3i());
             final SignalConsumerComponent consumerComponent = block.getComponent(SignalConsumerComponent.class);
 
-            Set<SignalNetworkNode> oldLeafNodes = Sets.newHashSet(signalNetwork.getLeafNodesAt(location));
-            for (SignalNetworkNode oldLeafNode : oldLeafNodes) {
-                if (oldLeafNode.getType() == SignalNetworkNode.Type.CONSUMER) {
-                    consumerSignalInNetworks.remove(oldLeafNode);
-                    signalNetwork.removeLeafBlock(oldLeafNode, NetworkChangeReason.WORLD_CHANGE);
-                }
+            SignalNetworkNode oldNode = getRegisteredLeafNode(location, SignalNetworkNode.Type.CONSUMER);
+            if (oldNode != null) {
+                dropConsumerHandle(oldNode);
+                removeNode(oldNode, NetworkChangeReason.WORLD_CHANGE);
             }
 
-            SignalNetworkNode node = toNode(location, consumerComponent.connectionSides, 0,
-                    SignalNetworkNode.Type.CONSUMER);
-            consumerSignalInNetworks.put(node, Maps.newHashMap());
-            signalNetwork.addLeafBlock(node, NetworkChangeReason.WORLD_CHANGE);
+            SignalNetworkNode node = addConsumer(location, consumerComponent.connectionSides,
+                    NetworkChangeReason.WORLD_CHANGE);
 
             // Mode could have changed
-            modifiedConsumers.add(node);
+            modifiedConsumers.set(node.getId());
         }
     }
 
     @ReceiveEvent(components = {BlockComponent.class, SignalConsumerComponent.class})
     public void consumerRemoved(BeforeDestroyEvent event, EntityRef block) {
-        Vector3i location = new Vector3i(block.getComponent(BlockComponent.class).getPosition(new Vector3i()));
-        byte connectingOnSides = block.getComponent(SignalConsumerComponent.class).connectionSides;
+        Vector3i location = block.getComponent(BlockComponent.class).getPosition(new Vector3i());
 
-        final SignalNetworkNode consumerNode = toNode(location, connectingOnSides, 0, SignalNetworkNode.Type.CONSUMER);
-        signalNetwork.removeLeafBlock(consumerNode, NetworkChangeReason.WORLD_CHANGE);
-        consumerSignalInNetworks.remove(consumerNode);
+        final SignalNetworkNode consumerNode = getRegisteredLeafNode(location, SignalNetworkNode.Type.CONSUMER);
+        if (consumerNode != null) {
+            removeNode(consumerNode, NetworkChangeReason.WORLD_CHANGE);
+        }
+    }
+
+    @ReceiveEvent(components = {BlockComponent.class, SignalConsumerStatusComponent.class})
+    public void consumerStatusChanged(OnChangedComponent event, EntityRef block) {
+        dropReplacedConsumerHandle(block);
+    }
+
+    @ReceiveEvent(components = {BlockComponent.class, SignalConsumerAdvancedStatusComponent.class})
+    public void consumerAdvancedStatusChanged(OnChangedComponent event, EntityRef block) {
+        dropReplacedConsumerHandle(block);
     }
 
     /**
-     * Represents a set of signals that belong to a network and their strengths.
+     * Drops the handle of the consumer at a block if one of its components has been replaced by a new instance. Changes saved
+     * on the same instances, like the ones made by this system, keep the handle.
+     *
+     * @param block The block entity of the consumer
      */
-    private final class NetworkSignals {
-        private Map<Side, Integer> signalStrengths = new HashMap<>();
-        private byte sidesWithSignal;
-        private byte sidesWithoutSignal;
+    private void dropReplacedConsumerHandle(EntityRef block) {
+        Vector3i location = block.getComponent(BlockComponent.class).getPosition(new Vector3i());
+        SignalNetworkNode consumerNode = getRegisteredLeafNode(location, SignalNetworkNode.Type.CONSUMER);
+        if (consumerNode != null && consumerNode.getId() < consumerHandles.length) {
+            ConsumerHandle handle = consumerHandles[consumerNode.getId()];
+            if (handle != null && !handle.matches(block)) {
+                consumerHandles[consumerNode.getId()] = null;
+            }
+        }
+    }
 
-        /**
-         * Adds a signal with the given strength which is emitted from the given {@link Side}.
-         *
-         * @param side The {@link Side} from which the signal is emitted.
-         * @param strength The strength of the signal.
-         */
-        private void addSignal(Side side, int strength) {
-            signalStrengths.put(side, strength);
-            if (strength != 0) {
-                sidesWithSignal += SideBitFlag.getSide(side);
-            } else {
-                sidesWithoutSignal += SideBitFlag.getSide(side);
+    /**
+     * Drops the signals consumers have stored for a network as soon as they leave it, or it is removed, so the signals of a
+     * consumer never need to be checked for stale networks.
+     */
+    private final class StaleSignalsListener implements EfficientNetworkTopologyListener<SignalNetworkNode> {
+        @Override
+        public void networkAdded(Network2<SignalNetworkNode> network, NetworkChangeReason reason) {
+        }
+
+        @Override
+        public void networkingNodesAdded(Network2<SignalNetworkNode> network, Set<SignalNetworkNode> networkingNodes,
+                                         NetworkChangeReason reason) {
+        }
+
+        @Override
+        public void networkingNodesRemoved(Network2<SignalNetworkNode> network, Set<SignalNetworkNode> networkingNodes,
+                                           NetworkChangeReason reason) {
+        }
+
+        @Override
+        public void leafNodesAdded(Network2<SignalNetworkNode> network, Set<SignalNetworkNode> leafNodes,
+                                   NetworkChangeReason reason) {
+        }
+
+        @Override
+        public void leafNodesRemoved(Network2<SignalNetworkNode> network, Set<SignalNetworkNode> leafNodes,
+                                     NetworkChangeReason reason) {
+            for (SignalNetworkNode leafNode : leafNodes) {
+                if (leafNode.getType() == SignalNetworkNode.Type.CONSUMER) {
+                    removeStaleSignals(leafNode, network);
+                }
+            }
+        }
+
+        @Override
+        public void networkRemoved(Network2<SignalNetworkNode> network, NetworkChangeReason reason) {
+            for (SignalNetworkNode consumer : signalNetworkState.getConsumersInNetwork(network)) {
+                removeStaleSignals(consumer, network);
             }
         }
     }
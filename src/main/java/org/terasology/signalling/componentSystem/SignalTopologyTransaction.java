@@ -0,0 +1,131 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import com.google.common.collect.Sets;
+import org.terasology.blockNetwork.NetworkChangeReason;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Buffers the nodes added to and removed from the signal network until the next update, so that a world edit, an explosion
+ * or a wave of chunk events changes the topology of the {@link SignalNetworkEngine} in one pass, instead of merging and
+ * splitting networks once per block.
+ * <p>
+ * A node removed before its addition has been applied, or added back before its removal has been applied, cancels out and
+ * never reaches the network engine. Nodes pending removal stay registered until the removal is applied, as the topology
+ * callbacks still need their state.
+ */
+final class SignalTopologyTransaction {
+    private final Set<SignalNetworkNode> networkingNodesToAdd = Sets.newLinkedHashSet();
+    private final Set<SignalNetworkNode> networkingNodesToRemove = Sets.newLinkedHashSet();
+    private final Set<SignalNetworkNode> leafNodesToAdd = Sets.newLinkedHashSet();
+    private final Set<SignalNetworkNode> leafNodesToRemove = Sets.newLinkedHashSet();
+
+    private final NetworkingNodeOrder networkingNodeOrder = new NetworkingNodeOrder();
+
+    private boolean chunkEventsOnly = true;
+
+    /**
+     * Adds a registered node to the signal network when the transaction is applied.
+     *
+     * @param node The registered node
+     * @param reason The reason the node is added
+     * @return True if the node was pending removal, which the addition cancels
+     */
+    boolean add(SignalNetworkNode node, NetworkChangeReason reason) {
+        recordReason(reason);
+        return isNetworkingNode(node)
+                ? cancelOrBuffer(node, networkingNodesToRemove, networkingNodesToAdd)
+                : cancelOrBuffer(node, leafNodesToRemove, leafNodesToAdd);
+    }
+
+    /**
+     * Removes a registered node from the signal network when the transaction is applied.
+     *
+     * @param node The registered node
+     * @param reason The reason the node is removed
+     * @return True if the node was pending addition, which the removal cancels, so the node can be released right away
+     */
+    boolean remove(SignalNetworkNode node, NetworkChangeReason reason) {
+        recordReason(reason);
+        return isNetworkingNode(node)
+                ? cancelOrBuffer(node, networkingNodesToAdd, networkingNodesToRemove)
+                : cancelOrBuffer(node, leafNodesToAdd, leafNodesToRemove);
+    }
+
+    /**
+     * @param node A registered node
+     * @return True if the node is going to be removed from the signal network
+     */
+    boolean isRemoving(SignalNetworkNode node) {
+        return isNetworkingNode(node) ? networkingNodesToRemove.contains(node) : leafNodesToRemove.contains(node);
+    }
+
+    /**
+     * @return True if there are no changes to apply
+     */
+    boolean isEmpty() {
+        return networkingNodesToAdd.isEmpty() && networkingNodesToRemove.isEmpty()
+                && leafNodesToAdd.isEmpty() && leafNodesToRemove.isEmpty();
+    }
+
+    /**
+     * Applies all buffered changes to the network engine and starts a new transaction. Leaf nodes are removed before the
+     * networking nodes, and networking nodes are added before the leaf nodes, so that leaf nodes are never moved between
+     * networks that are about to be split or merged. Networking nodes are added in {@link NetworkingNodeOrder connected order},
+     * or handed to the engine as whole groups when they are split into connected groups first.
+     *
+     * @param signalNetwork The engine to change
+     * @param removedNodes The collection to add the removed nodes to, so their state can be released
+     * @param connectedGroups Splits the networking nodes to add into connected groups, null to add them one by one
+     */
+    void apply(SignalNetworkEngine signalNetwork, Collection<SignalNetworkNode> removedNodes, ConnectedGroups connectedGroups) {
+        NetworkChangeReason reason = chunkEventsOnly ? NetworkChangeReason.CHUNK_EVENT : NetworkChangeReason.WORLD_CHANGE;
+        if (!leafNodesToRemove.isEmpty()) {
+            signalNetwork.removeLeafBlocks(leafNodesToRemove, reason);
+            removedNodes.addAll(leafNodesToRemove);
+            leafNodesToRemove.clear();
+        }
+        if (!networkingNodesToRemove.isEmpty()) {
+            signalNetwork.removeNetworkingBlocks(networkingNodesToRemove, reason);
+            removedNodes.addAll(networkingNodesToRemove);
+            networkingNodesToRemove.clear();
+        }
+        if (!networkingNodesToAdd.isEmpty()) {
+            if (connectedGroups != null) {
+                signalNetwork.addNetworkingBlockGroups(connectedGroups.find(networkingNodesToAdd), reason);
+            } else {
+                // A large batch would otherwise build and merge many small networks
+                networkingNodeOrder.sort(networkingNodesToAdd);
+                signalNetwork.addNetworkingBlocks(networkingNodesToAdd, reason);
+            }
+            networkingNodesToAdd.clear();
+        }
+        if (!leafNodesToAdd.isEmpty()) {
+            signalNetwork.addLeafBlocks(leafNodesToAdd, reason);
+            leafNodesToAdd.clear();
+        }
+        chunkEventsOnly = true;
+    }
+
+    private static boolean cancelOrBuffer(SignalNetworkNode node, Set<SignalNetworkNode> opposingChanges,
+                                          Set<SignalNetworkNode> changes) {
+        if (opposingChanges.remove(node)) {
+            return true;
+        }
+        changes.add(node);
+        return false;
+    }
+
+    private void recordReason(NetworkChangeReason reason) {
+        if (reason != NetworkChangeReason.CHUNK_EVENT) {
+            chunkEventsOnly = false;
+        }
+    }
+
+    private static boolean isNetworkingNode(SignalNetworkNode node) {
+        return node.getType() == SignalNetworkNode.Type.CONDUCTOR;
+    }
+}
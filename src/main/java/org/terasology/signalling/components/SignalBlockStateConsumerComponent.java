@@ -0,0 +1,32 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.components;
+
+import org.terasology.engine.world.block.RequiresBlockLifecycleEvents;
+import org.terasology.gestalt.entitysystem.component.Component;
+
+/**
+ * Indicates that a block receives a signal by being swapped between two blocks, like a lamp turning on and off.
+ * <p>
+ * Unlike {@link SignalConsumerComponent}, it is handled for the block type as a whole, so the blocks need no entities of their
+ * own. Both blocks should have the component, so the consumer stays in the signal network when it is swapped.
+ */
+@RequiresBlockLifecycleEvents
+public class SignalBlockStateConsumerComponent implements Component<SignalBlockStateConsumerComponent> {
+    //Represents which sides can be connected to, use the SideBitFlag class to interpret this value
+    public byte connectionSides;
+    //Represents the operation used to combine the signals, SPECIAL is not supported
+    public SignalConsumerComponent.Mode mode = SignalConsumerComponent.Mode.AT_LEAST_ONE;
+    //The uri of the block placed while there is a signal
+    public String signalledBlock;
+    //The uri of the block placed while there is no signal
+    public String unsignalledBlock;
+
+    @Override
+    public void copyFrom(SignalBlockStateConsumerComponent other) {
+        this.connectionSides = other.connectionSides;
+        this.mode = other.mode;
+        this.signalledBlock = other.signalledBlock;
+        this.unsignalledBlock = other.unsignalledBlock;
+    }
+}
@@ -0,0 +1,178 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+import gnu.trove.list.TIntList;
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Test;
+import org.terasology.blockNetwork.Network2;
+import org.terasology.blockNetwork.NetworkChangeReason;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that {@link ConductorChains} updated in place as conductors are added and removed one at a time describe the same
+ * junctions and chains as ones built from scratch.
+ */
+public class ConductorChainsTest {
+    private static final int SIZE = 6;
+    private static final int HEIGHT = 3;
+    private static final int SEEDS = 30;
+
+    private final SignalNodeRegistry nodeRegistry = new SignalNodeRegistry();
+    // The chains seen at the last check, to tell chains updated in place from newly built ones
+    private Map<Network2<SignalNetworkNode>, ConductorChains> checkedChains = Maps.newIdentityHashMap();
+    private int updatedChecks;
+
+    @Test
+    public void updatedChainsMatchRebuiltChains() {
+        for (int seed = 0; seed < SEEDS; seed++) {
+            Random random = new Random(seed);
+            SignalEfficientNetworkState networkState = new SignalEfficientNetworkState(new SignalDistanceCache(), nodeRegistry);
+            SignalNetworkEngine graph = new SignalGraph();
+            graph.addTopologyListener(networkState);
+
+            List<SignalNetworkNode> conductors = Lists.newArrayList();
+            List<SignalNetworkNode> leaves = Lists.newArrayList();
+            createRandomNodes(random, conductors, leaves);
+            graph.addLeafBlocks(Sets.newHashSet(leaves), NetworkChangeReason.WORLD_CHANGE);
+            for (SignalNetworkNode conductor : conductors) {
+                graph.addNetworkingBlocks(Collections.singleton(conductor), NetworkChangeReason.WORLD_CHANGE);
+                assertChainsMatch(networkState, leaves, "seed " + seed + ", added " + conductor);
+            }
+            for (SignalNetworkNode conductor : pickSome(random, conductors)) {
+                graph.removeNetworkingBlocks(Collections.singleton(conductor), NetworkChangeReason.WORLD_CHANGE);
+                assertChainsMatch(networkState, leaves, "seed " + seed + ", removed " + conductor);
+                graph.addNetworkingBlocks(Collections.singleton(conductor), NetworkChangeReason.WORLD_CHANGE);
+                assertChainsMatch(networkState, leaves, "seed " + seed + ", added again " + conductor);
+            }
+            Collections.shuffle(conductors, random);
+            for (SignalNetworkNode conductor : conductors) {
+                graph.removeNetworkingBlocks(Collections.singleton(conductor), NetworkChangeReason.WORLD_CHANGE);
+                assertChainsMatch(networkState, leaves, "seed " + seed + ", removed " + conductor);
+            }
+            for (SignalNetworkNode node : conductors) {
+                nodeRegistry.unregister(node);
+            }
+            for (SignalNetworkNode node : leaves) {
+                nodeRegistry.unregister(node);
+            }
+        }
+        // Make sure most of the compared chains were updated in place rather than built for the check
+        assertTrue(updatedChecks > 1000);
+    }
+
+    /**
+     * Compares the chains of every network holding one of the leaves, and builds them for networks that have none yet, so they
+     * are updated by the next change.
+     */
+    private void assertChainsMatch(SignalEfficientNetworkState networkState, List<SignalNetworkNode> leaves, String message) {
+        Set<Network2<SignalNetworkNode>> networks = Sets.newIdentityHashSet();
+        for (SignalNetworkNode leaf : leaves) {
+            networks.addAll(networkState.getNetworksWithLeafNode(leaf));
+        }
+        Map<Network2<SignalNetworkNode>, ConductorChains> currentChains = Maps.newIdentityHashMap();
+        for (Network2<SignalNetworkNode> network : networks) {
+            ConductorChains chains = networkState.getConductorChains(network);
+            assertEquals(describe(new ConductorChains(network, nodeRegistry), network), describe(chains, network), message);
+            if (checkedChains.get(network) == chains) {
+                updatedChecks++;
+            }
+            currentChains.put(network, chains);
+        }
+        checkedChains = currentChains;
+    }
+
+    /**
+     * Describes the chains independently of the ids given out, and of the end a chain was walked from.
+     */
+    private static Map<SignalNetworkNode, Object> describe(ConductorChains chains, Network2<SignalNetworkNode> network) {
+        List<SignalNetworkNode> junctions = Arrays.asList(new SignalNetworkNode[chains.getJunctionCount()]);
+        for (SignalNetworkNode node : network.getNetworkingNodes()) {
+            int junctionId = chains.getJunctionId(node);
+            if (junctionId != ConductorChains.NONE) {
+                junctions.set(junctionId, node);
+            }
+        }
+
+        Map<SignalNetworkNode, Object> description = Maps.newHashMap();
+        for (SignalNetworkNode node : network.getNetworkingNodes()) {
+            assertTrue(chains.contains(node));
+            int junctionId = chains.getJunctionId(node);
+            if (junctionId != ConductorChains.NONE) {
+                Multiset<List<Object>> edges = HashMultiset.create();
+                TIntList targets = chains.getEdgeTargets(junctionId);
+                TIntList weights = chains.getEdgeWeights(junctionId);
+                for (int i = 0; i < targets.size(); i++) {
+                    edges.add(Arrays.asList(junctions.get(targets.get(i)), weights.get(i)));
+                }
+                description.put(node, edges);
+            } else {
+                int chainId = chains.getChainId(node);
+                int index = chains.getChainIndex(node);
+                int length = chains.getChainLength(chainId);
+                List<Object> towardsStart = Arrays.asList(junctions.get(chains.getChainStart(chainId)), index,
+                        chains.startFeedsChain(chainId), chains.chainFeedsStart(chainId));
+                List<Object> towardsEnd = Arrays.asList(junctions.get(chains.getChainEnd(chainId)), length + 1 - index,
+                        chains.endFeedsChain(chainId), chains.chainFeedsEnd(chainId));
+                description.put(node, Sets.newHashSet(towardsStart, towardsEnd));
+            }
+        }
+        return description;
+    }
+
+    private void createRandomNodes(Random random, List<SignalNetworkNode> conductors, List<SignalNetworkNode> leaves) {
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int z = 0; z < SIZE; z++) {
+                    Vector3i location = new Vector3i(x, y, z);
+                    int roll = random.nextInt(100);
+                    if (roll < 45) {
+                        // Mostly plain cable, so that chains are split and merged
+                        byte sides = roll < 35 ? (byte) 63 : randomSides(random);
+                        conductors.add(register(location, sides, sides, SignalNetworkNode.Type.CONDUCTOR));
+                    } else if (roll < 52) {
+                        conductors.add(register(location, randomSides(random), randomSides(random),
+                                SignalNetworkNode.Type.CONDUCTOR));
+                    } else if (roll < 62) {
+                        leaves.add(register(location, (byte) 0, randomSides(random), SignalNetworkNode.Type.PRODUCER));
+                    } else if (roll < 72) {
+                        leaves.add(register(location, randomSides(random), (byte) 0, SignalNetworkNode.Type.CONSUMER));
+                    }
+                }
+            }
+        }
+        Collections.shuffle(conductors, random);
+    }
+
+    private SignalNetworkNode register(Vector3i location, byte inputSides, byte outputSides, SignalNetworkNode.Type type) {
+        return nodeRegistry.register(new SignalNetworkNode(location, inputSides, outputSides, type));
+    }
+
+    private static byte randomSides(Random random) {
+        return (byte) (1 + random.nextInt(63));
+    }
+
+    private static List<SignalNetworkNode> pickSome(Random random, List<SignalNetworkNode> nodes) {
+        List<SignalNetworkNode> picked = Lists.newArrayList();
+        for (SignalNetworkNode node : nodes) {
+            if (random.nextInt(4) == 0) {
+                picked.add(node);
+            }
+        }
+        return picked;
+    }
+}
@@ -0,0 +1,87 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Test;
+import org.terasology.engine.math.Side;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PackedPositionsTest {
+    // The last coordinates whose neighbours still fit into 21 bits
+    private static final int MAX = (1 << 20) - 2;
+    private static final int MIN = -(1 << 20) + 1;
+
+    @Test
+    public void packedPositionsRoundTrip() {
+        int[] coordinates = {0, 1, -1, 17, -4096, MAX, MIN};
+        for (int x : coordinates) {
+            for (int y : coordinates) {
+                for (int z : coordinates) {
+                    long packed = PackedPositions.pack(x, y, z);
+                    assertEquals(x, PackedPositions.unpackX(packed));
+                    assertEquals(y, PackedPositions.unpackY(packed));
+                    assertEquals(z, PackedPositions.unpackZ(packed));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void neighboursOfPackablePositionsDoNotCollide() {
+        int[] coordinates = {0, MAX, MIN};
+        for (int x : coordinates) {
+            for (int y : coordinates) {
+                for (int z : coordinates) {
+                    assertTrue(PackedPositions.isPackable(x, y, z));
+                    long packed = PackedPositions.pack(x, y, z);
+                    for (Side side : Side.values()) {
+                        Vector3i neighbour = new Vector3i(x, y, z).add(side.direction());
+                        long moved = PackedPositions.move(packed, side);
+                        assertEquals(PackedPositions.pack(neighbour), moved);
+                        assertEquals(neighbour.x, PackedPositions.unpackX(moved));
+                        assertEquals(neighbour.y, PackedPositions.unpackY(moved));
+                        assertEquals(neighbour.z, PackedPositions.unpackZ(moved));
+                        assertNotEquals(packed, moved);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void farPositionsHaveKeysOfTheirOwn() {
+        int[] coordinates = {0, MAX + 1, MIN - 1, 1 << 21, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        for (int x : coordinates) {
+            for (int z : coordinates) {
+                long packed = PackedPositions.pack(x, 0, z);
+                assertEquals(packed, PackedPositions.pack(new Vector3i(x, 0, z)));
+                assertEquals(x, PackedPositions.unpackX(packed));
+                assertEquals(0, PackedPositions.unpackY(packed));
+                assertEquals(z, PackedPositions.unpackZ(packed));
+            }
+        }
+        assertFalse(PackedPositions.isPackable(MAX + 2, 0, 0));
+        assertNotEquals(PackedPositions.pack(0, 0, 0), PackedPositions.pack(1 << 21, 0, 0));
+    }
+
+    @Test
+    public void movesAcrossTheEdgeOfThePackableRange() {
+        int edge = MAX + 1;
+        long inside = PackedPositions.pack(edge, 5, 0);
+        assertTrue(PackedPositions.isPackable(edge, 5, 0));
+        // Never packed, so nothing can be there
+        assertEquals(PackedPositions.NONE, PackedPositions.move(inside, Side.RIGHT));
+
+        long outside = PackedPositions.pack(edge + 1, 5, 0);
+        assertEquals(outside, PackedPositions.move(inside, Side.RIGHT));
+        assertEquals(inside, PackedPositions.move(outside, Side.LEFT));
+        long fartherOutside = PackedPositions.pack(edge + 2, 5, 0);
+        assertEquals(fartherOutside, PackedPositions.move(outside, Side.RIGHT));
+        assertEquals(outside, PackedPositions.move(fartherOutside, Side.LEFT));
+    }
+}
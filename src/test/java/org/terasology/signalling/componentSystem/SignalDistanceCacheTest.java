@@ -0,0 +1,170 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Test;
+import org.terasology.blockNetwork.Network2;
+import org.terasology.engine.math.Side;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that the {@link SignalDistanceCache} answers like the network it caches, searches a network once per pair and side,
+ * and fills the slots of removed pairs again without allocating.
+ */
+public class SignalDistanceCacheTest {
+    private static final int PRODUCERS = 8;
+    private static final int CONSUMERS = 64;
+    private static final int MAX_DISTANCE = 16;
+
+    private final SignalNodeRegistry nodeRegistry = new SignalNodeRegistry();
+    private final SignalNetworkNode[] producers = new SignalNetworkNode[PRODUCERS];
+    private final SignalNetworkNode[] consumers = new SignalNetworkNode[CONSUMERS];
+
+    @Test
+    public void searchesEveryPairOnce() {
+        createNodes();
+        CountingNetwork network = new CountingNetwork();
+        SignalDistanceCache cache = new SignalDistanceCache();
+
+        for (int pass = 0; pass < 2; pass++) {
+            for (SignalNetworkNode producer : producers) {
+                for (SignalNetworkNode consumer : consumers) {
+                    for (Side side : Side.values()) {
+                        assertEquals(network.distance(producer, consumer, side, MAX_DISTANCE),
+                                cache.getDistanceWithSide(network, producer, consumer, side, MAX_DISTANCE));
+                    }
+                }
+            }
+        }
+        assertEquals(PRODUCERS * CONSUMERS * Side.values().length, network.searches);
+
+        // A pair out of reach is searched again for a larger limit only
+        SignalNetworkNode far = consumers[CONSUMERS - 1];
+        cache.getDistanceWithSide(network, producers[0], far, Side.TOP, 1);
+        assertEquals(PRODUCERS * CONSUMERS * Side.values().length, network.searches);
+    }
+
+    @Test
+    public void keepsNoMorePairsThanAllowed() {
+        createNodes();
+        CountingNetwork network = new CountingNetwork();
+        SignalDistanceCache cache = new SignalDistanceCache();
+        cache.setMaximumSize(CONSUMERS / 2);
+
+        for (int pass = 0; pass < 2; pass++) {
+            for (SignalNetworkNode consumer : consumers) {
+                cache.getDistanceWithSide(network, producers[0], consumer, Side.TOP, MAX_DISTANCE);
+            }
+        }
+        // The first half was cached in the first pass, and the second half is searched in both
+        assertEquals(CONSUMERS + CONSUMERS / 2, network.searches);
+    }
+
+    @Test
+    public void refillsRemovedPairsWithoutAllocating() {
+        createNodes();
+        CountingNetwork network = new CountingNetwork();
+        SignalDistanceCache cache = new SignalDistanceCache();
+        for (int i = 0; i < 1000; i++) {
+            refill(cache, network, consumers[i % CONSUMERS]);
+        }
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long overhead = -threadBean.getThreadAllocatedBytes(threadId) + threadBean.getThreadAllocatedBytes(threadId);
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1000; i++) {
+            refill(cache, network, consumers[i % CONSUMERS]);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        assertEquals(0, allocated / 1000, "Bytes allocated per refill: " + allocated / 1000.0);
+    }
+
+    private void refill(SignalDistanceCache cache, CountingNetwork network, SignalNetworkNode consumer) {
+        cache.removeLeafNode(network, consumer);
+        for (SignalNetworkNode producer : producers) {
+            cache.getDistanceWithSide(network, producer, consumer, Side.TOP, MAX_DISTANCE);
+        }
+    }
+
+    private void createNodes() {
+        for (int i = 0; i < PRODUCERS; i++) {
+            producers[i] = nodeRegistry.register(new SignalNetworkNode(new Vector3i(i, 1, 0), (byte) 0, (byte) 63,
+                    SignalNetworkNode.Type.PRODUCER));
+        }
+        for (int i = 0; i < CONSUMERS; i++) {
+            consumers[i] = nodeRegistry.register(new SignalNetworkNode(new Vector3i(i, -1, 0), (byte) 63, (byte) 0,
+                    SignalNetworkNode.Type.CONSUMER));
+        }
+    }
+
+    /**
+     * Pretends that leaf nodes are connected through a straight cable, and counts the searches.
+     */
+    private static final class CountingNetwork implements Network2<SignalNetworkNode> {
+        private int searches;
+
+        int distance(SignalNetworkNode from, SignalNetworkNode to, Side toSide, int maxToSearch) {
+            int distance = Math.abs(from.location.x - to.location.x) + 2 + toSide.ordinal();
+            return distance <= maxToSearch ? distance : -1;
+        }
+
+        @Override
+        public int getDistanceWithSide(SignalNetworkNode from, SignalNetworkNode to, Side toSide, int maxToSearch) {
+            searches++;
+            return distance(from, to, toSide, maxToSearch);
+        }
+
+        @Override
+        public boolean hasNetworkingNode(SignalNetworkNode networkNode) {
+            return false;
+        }
+
+        @Override
+        public boolean hasLeafNode(SignalNetworkNode networkNode) {
+            return true;
+        }
+
+        @Override
+        public int getNetworkSize() {
+            return 0;
+        }
+
+        @Override
+        public Collection<SignalNetworkNode> getNetworkingNodes() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Collection<SignalNetworkNode> getLeafNodes() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public byte getLeafSidesInNetwork(SignalNetworkNode networkNode) {
+            return 63;
+        }
+
+        @Override
+        public int getDistance(SignalNetworkNode from, SignalNetworkNode to, int maxToSearch) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isInDistance(int distance, SignalNetworkNode from, SignalNetworkNode to) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isInDistanceWithSide(int distance, SignalNetworkNode from, SignalNetworkNode to, Side toSide) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,420 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Test;
+import org.terasology.blockNetwork.EfficientNetworkTopologyListener;
+import org.terasology.blockNetwork.Network2;
+import org.terasology.blockNetwork.NetworkChangeReason;
+import org.terasology.engine.math.Side;
+import org.terasology.engine.math.SideBitFlag;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+/**
+ * Checks the {@link SignalGraph} against the {@link org.terasology.blockNetwork.EfficientBlockNetwork} it stands in for, on
+ * random blocks added and removed one at a time. The comparison needs the BlockNetwork module on the test class path, and is
+ * skipped when a stand-in that delegates to the {@link SignalGraph} is found there instead.
+ */
+public class SignalGraphTest {
+    private static final int SIZE = 6;
+    private static final int HEIGHT = 3;
+    private static final int SEEDS = 30;
+    private static final int MAX_DISTANCE = 16;
+
+    private final SignalNodeRegistry nodeRegistry = new SignalNodeRegistry();
+
+    @Test
+    public void leafCallbacksReportCurrentSides() {
+        for (int seed = 0; seed < SEEDS; seed++) {
+            Random random = new Random(seed);
+            SignalGraph graph = new SignalGraph();
+            LeafSidesMirror mirror = new LeafSidesMirror();
+            graph.addTopologyListener(mirror);
+
+            List<SignalNetworkNode> nodes = createRandomNodes(random);
+            for (SignalNetworkNode node : nodes) {
+                add(graph, node);
+                mirror.assertMatches("seed " + seed + ", added " + node);
+            }
+            for (SignalNetworkNode node : pickSome(random, nodes)) {
+                remove(graph, node);
+                mirror.assertMatches("seed " + seed + ", removed " + node);
+                add(graph, node);
+                mirror.assertMatches("seed " + seed + ", added again " + node);
+            }
+            Collections.shuffle(nodes, random);
+            for (SignalNetworkNode node : nodes) {
+                remove(graph, node);
+                mirror.assertMatches("seed " + seed + ", removed " + node);
+            }
+            assertTrue(mirror.leafSides.isEmpty(), "seed " + seed + ": networks left after removing every block");
+        }
+    }
+
+    @Test
+    public void matchesEfficientBlockNetwork() {
+        assumeRealBlockNetwork();
+        int comparedDistances = 0;
+        for (int seed = 0; seed < SEEDS; seed++) {
+            Random random = new Random(seed);
+            SignalNetworkEngine graph = new SignalGraph();
+            SignalNetworkEngine blockNetwork = new BlockNetworkSignalEngine();
+            LeafSidesMirror graphNetworks = new LeafSidesMirror();
+            LeafSidesMirror blockNetworkNetworks = new LeafSidesMirror();
+            graph.addTopologyListener(graphNetworks);
+            blockNetwork.addTopologyListener(blockNetworkNetworks);
+
+            List<SignalNetworkNode> nodes = createRandomNodes(random);
+            for (SignalNetworkNode node : nodes) {
+                add(graph, node);
+                add(blockNetwork, node);
+            }
+            comparedDistances += assertSameNetworks(graphNetworks, blockNetworkNetworks, "seed " + seed + ", added");
+
+            for (SignalNetworkNode node : pickSome(random, nodes)) {
+                remove(graph, node);
+                remove(blockNetwork, node);
+            }
+            comparedDistances += assertSameNetworks(graphNetworks, blockNetworkNetworks, "seed " + seed + ", removed");
+        }
+        // Make sure the random networks cover the interesting cases
+        assertTrue(comparedDistances > 1000);
+    }
+
+    @Test
+    public void warmUpGroupsMatchSingleAdds() {
+        ConnectedGroups connectedGroups = new ConnectedGroups(ForkJoinPool.commonPool());
+        int comparedDistances = 0;
+        for (int seed = 0; seed < SEEDS; seed++) {
+            Random random = new Random(seed);
+            SignalNetworkEngine singleAdds = new SignalGraph();
+            SignalNetworkEngine groupAdds = new SignalGraph();
+            LeafSidesMirror singleAddNetworks = new LeafSidesMirror();
+            LeafSidesMirror groupAddNetworks = new LeafSidesMirror();
+            singleAdds.addTopologyListener(singleAddNetworks);
+            groupAdds.addTopologyListener(groupAddNetworks);
+
+            List<SignalNetworkNode> nodes = createRandomNodes(random);
+            for (SignalNetworkNode node : nodes) {
+                add(singleAdds, node);
+            }
+            // Two batches with leaf nodes in between, so the second batch merges into and connects existing networks
+            List<SignalNetworkNode> firstBatch = Lists.newArrayList();
+            List<SignalNetworkNode> secondBatch = Lists.newArrayList();
+            Set<SignalNetworkNode> leaves = Sets.newHashSet();
+            for (SignalNetworkNode node : nodes) {
+                if (node.getType() != SignalNetworkNode.Type.CONDUCTOR) {
+                    leaves.add(node);
+                } else if (random.nextBoolean()) {
+                    firstBatch.add(node);
+                } else {
+                    secondBatch.add(node);
+                }
+            }
+            groupAdds.addNetworkingBlockGroups(connectedGroups.find(firstBatch), NetworkChangeReason.WORLD_CHANGE);
+            groupAdds.addLeafBlocks(leaves, NetworkChangeReason.WORLD_CHANGE);
+            groupAdds.addNetworkingBlockGroups(connectedGroups.find(secondBatch), NetworkChangeReason.WORLD_CHANGE);
+            groupAddNetworks.assertMatches("seed " + seed);
+            comparedDistances += assertSameNetworks(singleAddNetworks, groupAddNetworks, "seed " + seed);
+        }
+        assertTrue(comparedDistances > 500);
+    }
+
+    @Test
+    public void parallelGroupsMatchSingleAdds() {
+        // Large enough for the conductors to be linked by several tasks
+        int size = 96;
+        Random random = new Random(0);
+        List<SignalNetworkNode> conductors = Lists.newArrayList();
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int z = 0; z < size; z++) {
+                    if (random.nextInt(100) < 60) {
+                        conductors.add(register(new Vector3i(x, y, z), randomSides(random), randomSides(random),
+                                SignalNetworkNode.Type.CONDUCTOR));
+                    }
+                }
+            }
+        }
+        Collections.shuffle(conductors, random);
+
+        SignalGraph graph = new SignalGraph();
+        LeafSidesMirror networks = new LeafSidesMirror();
+        graph.addTopologyListener(networks);
+        graph.addNetworkingBlocks(Sets.newHashSet(conductors), NetworkChangeReason.WORLD_CHANGE);
+        Set<Set<SignalNetworkNode>> expectedGroups = Sets.newHashSet();
+        for (Network2<SignalNetworkNode> network : networks.leafSides.keySet()) {
+            expectedGroups.add(Sets.newHashSet(network.getNetworkingNodes()));
+        }
+
+        List<Set<SignalNetworkNode>> groups = new ConnectedGroups(new ForkJoinPool(4)).find(conductors);
+        assertEquals(expectedGroups, Sets.newHashSet(groups));
+    }
+
+    @Test
+    public void farBlocksConnectLikeNearBlocks() {
+        // Across the edge of the range packed positions store coordinates in, where 21 bits wrap around onto the near blocks,
+        // and at the edge of the world
+        Vector3i[] origins = {new Vector3i((1 << 20) - SIZE / 2, 0, 0), new Vector3i(1 << 21, 0, 0),
+            new Vector3i(Integer.MAX_VALUE - SIZE, 0, -(1 << 21))};
+        for (Vector3i origin : origins) {
+            for (int seed = 0; seed < SEEDS; seed++) {
+                LeafSidesMirror nearNetworks = new LeafSidesMirror();
+                LeafSidesMirror farNetworks = new LeafSidesMirror();
+                List<SignalNetworkNode> nearNodes = createRandomNodes(new Random(seed));
+                addAll(nearNetworks, nearNodes);
+                // The near blocks are there as well, and must stay apart from the far ones
+                List<SignalNetworkNode> nodes = createRandomNodes(new Random(seed), origin);
+                nodes.addAll(nearNodes);
+                addAll(farNetworks, nodes);
+                assertEquals(describeRelativeTo(nearNetworks, new Vector3i()), describeRelativeTo(farNetworks, origin),
+                        "seed " + seed + ", origin " + origin);
+            }
+        }
+    }
+
+    /**
+     * Skips a test comparing the engines unless the {@link BlockNetworkSignalEngine} builds networks of its own, since a
+     * SignalGraph compared with itself always matches.
+     */
+    static void assumeRealBlockNetwork() {
+        SignalNetworkEngine blockNetwork = new BlockNetworkSignalEngine();
+        LeafSidesMirror networks = new LeafSidesMirror();
+        blockNetwork.addTopologyListener(networks);
+        add(blockNetwork, new SignalNodeRegistry().register(new SignalNetworkNode(new Vector3i(), (byte) 63, (byte) 63,
+                SignalNetworkNode.Type.CONDUCTOR)));
+        assertEquals(1, networks.leafSides.size());
+        for (Network2<SignalNetworkNode> network : networks.leafSides.keySet()) {
+            assumeFalse(network instanceof SignalGraphNetwork, "The EfficientBlockNetwork on the class path delegates to the "
+                    + "SignalGraph, run with the BlockNetwork module to compare them");
+        }
+    }
+
+    private static void addAll(LeafSidesMirror networks, List<SignalNetworkNode> nodes) {
+        SignalGraph graph = new SignalGraph();
+        graph.addTopologyListener(networks);
+        for (SignalNetworkNode node : nodes) {
+            add(graph, node);
+        }
+    }
+
+    /**
+     * Describes every network around the origin by the locations of its conductors and leaf nodes relative to the origin, and
+     * the distances between its leaf nodes.
+     */
+    private static Set<List<Object>> describeRelativeTo(LeafSidesMirror networks, Vector3i origin) {
+        Set<List<Object>> descriptions = Sets.newHashSet();
+        for (Network2<SignalNetworkNode> network : networks.leafSides.keySet()) {
+            SignalNetworkNode anyNode = Iterables.getFirst(Iterables.concat(network.getNetworkingNodes(), network.getLeafNodes()),
+                    null);
+            if (!isAround(anyNode, origin)) {
+                continue;
+            }
+            Set<Vector3i> conductors = Sets.newHashSet();
+            for (SignalNetworkNode node : network.getNetworkingNodes()) {
+                conductors.add(relativeLocation(node, origin));
+            }
+            Map<List<Vector3i>, Integer> distances = Maps.newHashMap();
+            for (SignalNetworkNode from : network.getLeafNodes()) {
+                for (SignalNetworkNode to : network.getLeafNodes()) {
+                    for (Side side : SideBitFlag.getSides(network.getLeafSidesInNetwork(to))) {
+                        distances.put(Arrays.asList(relativeLocation(from, origin), relativeLocation(to, origin),
+                                new Vector3i(side.direction())), network.getDistanceWithSide(from, to, side, MAX_DISTANCE));
+                    }
+                }
+            }
+            descriptions.add(Arrays.asList(conductors, distances));
+        }
+        return descriptions;
+    }
+
+    private static boolean isAround(SignalNetworkNode node, Vector3i origin) {
+        Vector3i location = relativeLocation(node, origin);
+        return 0 <= location.x && location.x < SIZE && 0 <= location.z && location.z < SIZE;
+    }
+
+    private static Vector3i relativeLocation(SignalNetworkNode node, Vector3i origin) {
+        return new Vector3i(node.location.x - origin.x, node.location.y - origin.y, node.location.z - origin.z);
+    }
+
+    /**
+     * @return The number of distances compared
+     */
+    private static int assertSameNetworks(LeafSidesMirror expected, LeafSidesMirror actual, String message) {
+        Map<List<Object>, Network2<SignalNetworkNode>> expectedNetworks = describeNetworks(expected);
+        Map<List<Object>, Network2<SignalNetworkNode>> actualNetworks = describeNetworks(actual);
+        assertEquals(expectedNetworks.keySet(), actualNetworks.keySet(), message);
+
+        int comparedDistances = 0;
+        for (Map.Entry<List<Object>, Network2<SignalNetworkNode>> entry : expectedNetworks.entrySet()) {
+            Network2<SignalNetworkNode> expectedNetwork = entry.getValue();
+            Network2<SignalNetworkNode> actualNetwork = actualNetworks.get(entry.getKey());
+            assertNotNull(actualNetwork, message);
+            for (SignalNetworkNode producer : expectedNetwork.getLeafNodes()) {
+                for (SignalNetworkNode consumer : expectedNetwork.getLeafNodes()) {
+                    if (producer.getType() != SignalNetworkNode.Type.PRODUCER
+                            || consumer.getType() != SignalNetworkNode.Type.CONSUMER) {
+                        continue;
+                    }
+                    for (Side side : SideBitFlag.getSides(expectedNetwork.getLeafSidesInNetwork(consumer))) {
+                        assertEquals(expectedNetwork.getDistanceWithSide(producer, consumer, side, MAX_DISTANCE),
+                                actualNetwork.getDistanceWithSide(producer, consumer, side, MAX_DISTANCE),
+                                message + ", from " + producer + " to " + consumer + " on side " + side);
+                        comparedDistances++;
+                    }
+                }
+            }
+        }
+        return comparedDistances;
+    }
+
+    /**
+     * Describes every network by its conductors and the sides of its leaf nodes, which do not depend on the engine.
+     */
+    private static Map<List<Object>, Network2<SignalNetworkNode>> describeNetworks(LeafSidesMirror networks) {
+        Map<List<Object>, Network2<SignalNetworkNode>> networksByDescription = Maps.newHashMap();
+        for (Network2<SignalNetworkNode> network : networks.leafSides.keySet()) {
+            List<Object> description = Arrays.asList(Sets.newHashSet(network.getNetworkingNodes()), getLeafSides(network));
+            networksByDescription.put(description, network);
+        }
+        return networksByDescription;
+    }
+
+    private static Map<SignalNetworkNode, Byte> getLeafSides(Network2<SignalNetworkNode> network) {
+        Map<SignalNetworkNode, Byte> leafSides = Maps.newHashMap();
+        for (SignalNetworkNode leafNode : network.getLeafNodes()) {
+            leafSides.put(leafNode, network.getLeafSidesInNetwork(leafNode));
+        }
+        return leafSides;
+    }
+
+    private List<SignalNetworkNode> createRandomNodes(Random random) {
+        return createRandomNodes(random, new Vector3i());
+    }
+
+    private List<SignalNetworkNode> createRandomNodes(Random random, Vector3i origin) {
+        List<SignalNetworkNode> nodes = Lists.newArrayList();
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int z = 0; z < SIZE; z++) {
+                    Vector3i location = new Vector3i(x, y, z).add(origin);
+                    int roll = random.nextInt(100);
+                    if (roll < 35) {
+                        byte sides = roll < 25 ? (byte) 63 : randomSides(random);
+                        nodes.add(register(location, sides, sides, SignalNetworkNode.Type.CONDUCTOR));
+                    } else if (roll < 45) {
+                        nodes.add(register(location, randomSides(random), randomSides(random),
+                                SignalNetworkNode.Type.CONDUCTOR));
+                    } else if (roll < 60) {
+                        nodes.add(register(location, (byte) 0, randomSides(random), SignalNetworkNode.Type.PRODUCER));
+                    } else if (roll < 75) {
+                        nodes.add(register(location, randomSides(random), (byte) 0, SignalNetworkNode.Type.CONSUMER));
+                    }
+                }
+            }
+        }
+        // Mix conductors and leaf nodes, so leaf nodes are attached to existing networks as well as the other way round
+        Collections.shuffle(nodes, random);
+        return nodes;
+    }
+
+    private SignalNetworkNode register(Vector3i location, byte inputSides, byte outputSides, SignalNetworkNode.Type type) {
+        return nodeRegistry.register(new SignalNetworkNode(location, inputSides, outputSides, type));
+    }
+
+    private static byte randomSides(Random random) {
+        return (byte) (1 + random.nextInt(63));
+    }
+
+    private static List<SignalNetworkNode> pickSome(Random random, List<SignalNetworkNode> nodes) {
+        List<SignalNetworkNode> picked = Lists.newArrayList();
+        for (SignalNetworkNode node : nodes) {
+            if (random.nextInt(4) == 0) {
+                picked.add(node);
+            }
+        }
+        return picked;
+    }
+
+    private static void add(SignalNetworkEngine engine, SignalNetworkNode node) {
+        if (node.getType() == SignalNetworkNode.Type.CONDUCTOR) {
+            engine.addNetworkingBlocks(Collections.singleton(node), NetworkChangeReason.WORLD_CHANGE);
+        } else {
+            engine.addLeafBlocks(Collections.singleton(node), NetworkChangeReason.WORLD_CHANGE);
+        }
+    }
+
+    private static void remove(SignalNetworkEngine engine, SignalNetworkNode node) {
+        if (node.getType() == SignalNetworkNode.Type.CONDUCTOR) {
+            engine.removeNetworkingBlocks(Collections.singleton(node), NetworkChangeReason.WORLD_CHANGE);
+        } else {
+            engine.removeLeafBlocks(Collections.singleton(node), NetworkChangeReason.WORLD_CHANGE);
+        }
+    }
+
+    /**
+     * Keeps the active networks, and the sides of their leaf nodes, from the callbacks alone.
+     */
+    private static final class LeafSidesMirror implements EfficientNetworkTopologyListener<SignalNetworkNode> {
+        private final Map<Network2<SignalNetworkNode>, Map<SignalNetworkNode, Byte>> leafSides = Maps.newIdentityHashMap();
+
+        @Override
+        public void networkAdded(Network2<SignalNetworkNode> network, NetworkChangeReason reason) {
+            leafSides.put(network, getLeafSides(network));
+        }
+
+        @Override
+        public void networkingNodesAdded(Network2<SignalNetworkNode> network, Set<SignalNetworkNode> networkingNodes,
+                                         NetworkChangeReason reason) {
+        }
+
+        @Override
+        public void networkingNodesRemoved(Network2<SignalNetworkNode> network, Set<SignalNetworkNode> networkingNodes,
+                                           NetworkChangeReason reason) {
+        }
+
+        @Override
+        public void leafNodesAdded(Network2<SignalNetworkNode> network, Set<SignalNetworkNode> leafNodes,
+                                   NetworkChangeReason reason) {
+            for (SignalNetworkNode leafNode : leafNodes) {
+                leafSides.get(network).put(leafNode, network.getLeafSidesInNetwork(leafNode));
+            }
+        }
+
+        @Override
+        public void leafNodesRemoved(Network2<SignalNetworkNode> network, Set<SignalNetworkNode> leafNodes,
+                                     NetworkChangeReason reason) {
+            for (SignalNetworkNode leafNode : leafNodes) {
+                leafSides.get(network).remove(leafNode);
+            }
+        }
+
+        @Override
+        public void networkRemoved(Network2<SignalNetworkNode> network, NetworkChangeReason reason) {
+            leafSides.remove(network);
+        }
+
+        void assertMatches(String message) {
+            for (Map.Entry<Network2<SignalNetworkNode>, Map<SignalNetworkNode, Byte>> entry : leafSides.entrySet()) {
+                assertEquals(getLeafSides(entry.getKey()), entry.getValue(), message);
+            }
+        }
+    }
+}
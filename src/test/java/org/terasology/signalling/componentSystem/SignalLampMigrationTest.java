@@ -0,0 +1,96 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
+import org.junit.jupiter.api.Test;
+import org.terasology.blockNetwork.NetworkChangeReason;
+import org.terasology.engine.core.Time;
+import org.terasology.engine.entitySystem.entity.EntityManager;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnActivatedComponent;
+import org.terasology.engine.entitySystem.prefab.Prefab;
+import org.terasology.engine.logic.config.ModuleConfigManager;
+import org.terasology.engine.world.BlockEntityRegistry;
+import org.terasology.engine.world.WorldProvider;
+import org.terasology.engine.world.block.Block;
+import org.terasology.engine.world.block.BlockComponent;
+import org.terasology.engine.world.block.BlockManager;
+import org.terasology.signalling.components.SignalBlockStateConsumerComponent;
+import org.terasology.signalling.components.SignalConductorComponent;
+import org.terasology.signalling.components.SignalConsumerAdvancedStatusComponent;
+import org.terasology.signalling.components.SignalConsumerComponent;
+import org.terasology.signalling.components.SignalConsumerStatusComponent;
+
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that lamps stored by worlds saved while they were consumers with block entities lose their consumer components on
+ * load, and are lit like the lamps registered at the prefab level.
+ */
+public class SignalLampMigrationTest {
+    private static final byte ALL_SIDES = 63;
+
+    private final Vector3i lampLocation = new Vector3i(1, 0, 0);
+    private final Block lampOn = mock(Block.class);
+    private final Block lampOff = mock(Block.class);
+    private final WorldProvider worldProvider = mock(WorldProvider.class);
+    private final EntityRef lamp = mock(EntityRef.class);
+    private long gameTime;
+
+    @Test
+    public void storedLampIsRegisteredAtThePrefabLevel() {
+        SignalSystem signalSystem = createSignalSystem();
+        SignalConductorComponent.ConnectionGroup cable = new SignalConductorComponent.ConnectionGroup();
+        cable.inputSides = ALL_SIDES;
+        cable.outputSides = ALL_SIDES;
+        signalSystem.addConductor(new Vector3i(0, 0, 0), cable, NetworkChangeReason.CHUNK_EVENT);
+        signalSystem.addProducer(new Vector3i(-1, 0, 0), ALL_SIDES, 10, NetworkChangeReason.CHUNK_EVENT);
+
+        signalSystem.legacyBlockStateConsumerLoaded(new OnActivatedComponent(), lamp);
+        verify(lamp).removeComponent(SignalConsumerComponent.class);
+        verify(lamp).removeComponent(SignalConsumerStatusComponent.class);
+        verify(lamp).removeComponent(SignalConsumerAdvancedStatusComponent.class);
+
+        signalSystem.update(0);
+        signalSystem.shutdown();
+        verify(worldProvider).setBlock(argThat((Vector3ic location) -> location.equals(lampLocation)), eq(lampOn));
+    }
+
+    private SignalSystem createSignalSystem() {
+        Time time = mock(Time.class);
+        when(time.getGameTimeInMs()).thenAnswer(invocation -> gameTime += 100);
+        ModuleConfigManager moduleConfigManager = mock(ModuleConfigManager.class, invocation -> invocation.getArgument(2));
+        BlockManager blockManager = mock(BlockManager.class);
+        when(blockManager.getBlock("signalling:SignalLampOn")).thenReturn(lampOn);
+        when(blockManager.getBlock("signalling:SignalLampOff")).thenReturn(lampOff);
+        when(worldProvider.getBlock(any())).thenReturn(lampOff);
+
+        // The lamp prefab as it is now, and the block entity of a lamp as it was stored
+        SignalBlockStateConsumerComponent lampComponent = new SignalBlockStateConsumerComponent();
+        lampComponent.connectionSides = ALL_SIDES;
+        lampComponent.signalledBlock = "signalling:SignalLampOn";
+        lampComponent.unsignalledBlock = "signalling:SignalLampOff";
+        Prefab lampPrefab = mock(Prefab.class);
+        when(lampPrefab.getComponent(SignalBlockStateConsumerComponent.class)).thenReturn(lampComponent);
+        when(lampOff.getPrefab()).thenReturn(Optional.of(lampPrefab));
+        BlockComponent blockComponent = mock(BlockComponent.class);
+        when(blockComponent.getBlock()).thenReturn(lampOff);
+        when(blockComponent.getPosition(any())).thenAnswer(invocation -> invocation.getArgument(0, Vector3i.class).set(lampLocation));
+        when(lamp.getComponent(BlockComponent.class)).thenReturn(blockComponent);
+
+        SignalSystem signalSystem = new SignalSystem(time, worldProvider, mock(BlockEntityRegistry.class), moduleConfigManager,
+                mock(EntityManager.class), blockManager);
+        signalSystem.initialise();
+        signalSystem.preBegin();
+        return signalSystem;
+    }
+}
@@ -0,0 +1,123 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import com.google.common.collect.Maps;
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.terasology.blockNetwork.NetworkChangeReason;
+import org.terasology.engine.core.Time;
+import org.terasology.engine.entitySystem.entity.EntityManager;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.logic.config.ModuleConfigManager;
+import org.terasology.engine.world.BlockEntityRegistry;
+import org.terasology.engine.world.WorldProvider;
+import org.terasology.engine.world.block.Block;
+import org.terasology.engine.world.block.BlockComponent;
+import org.terasology.engine.world.block.BlockManager;
+import org.terasology.signalling.components.SignalBlockStateConsumerComponent;
+import org.terasology.signalling.components.SignalConductorComponent;
+import org.terasology.signalling.components.SignalProducerComponent;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that producers changed while the background tasks of the pipelined mode fill the signals reach the consumers of
+ * their networks, without changing the signals of the other networks.
+ */
+public class SignalPipelinedSignalsTest {
+    private static final byte ALL_SIDES = 63;
+    private static final int NETWORKS = 4;
+
+    private final Block lampOn = mock(Block.class);
+    private final Block lampOff = mock(Block.class);
+    private final BlockManager blockManager = mock(BlockManager.class);
+    private final Map<Vector3ic, Block> swappedBlocks = Maps.newHashMap();
+    private long gameTime;
+
+    /**
+     * @param parallelThreads The threads of the pool the signals are filled on, 0 for a single background thread
+     */
+    @ParameterizedTest(name = "{0} threads")
+    @ValueSource(ints = {0, 2})
+    public void producersChangedWhileTheTasksRunReachTheirNetworks(int parallelThreads) {
+        SignalSystem signalSystem = createSignalSystem(parallelThreads);
+
+        // Separate networks of a producer, a cable and a lamp, where only the producer of the first one is switched off
+        SignalConductorComponent.ConnectionGroup cable = new SignalConductorComponent.ConnectionGroup();
+        cable.inputSides = ALL_SIDES;
+        cable.outputSides = ALL_SIDES;
+        SignalBlockStateConsumerComponent lampComponent = new SignalBlockStateConsumerComponent();
+        lampComponent.connectionSides = ALL_SIDES;
+        lampComponent.signalledBlock = "signalling:SignalLampOn";
+        lampComponent.unsignalledBlock = "signalling:SignalLampOff";
+        BlockStateConsumer lamp = new BlockStateConsumer(lampComponent, blockManager);
+        for (int i = 0; i < NETWORKS; i++) {
+            signalSystem.addProducer(new Vector3i(3 * i, 1, 0), ALL_SIDES, 10, NetworkChangeReason.WORLD_CHANGE);
+            signalSystem.addConductor(new Vector3i(3 * i, 0, 0), cable, NetworkChangeReason.WORLD_CHANGE);
+            signalSystem.addBlockStateConsumer(new Vector3i(3 * i, -1, 0), lamp, NetworkChangeReason.WORLD_CHANGE);
+        }
+        // Starts filling the signals in the background
+        signalSystem.update(0);
+        assertTrue(swappedBlocks.isEmpty());
+
+        assertTrue(signalSystem.setProducerSignalStrength(createProducerEntity(new Vector3i(0, 1, 0)), 0));
+        signalSystem.update(0);
+        signalSystem.shutdown();
+
+        Map<Vector3ic, Block> expected = Maps.newHashMap();
+        for (int i = 1; i < NETWORKS; i++) {
+            expected.put(new Vector3i(3 * i, -1, 0), lampOn);
+        }
+        assertEquals(expected, swappedBlocks);
+    }
+
+    private EntityRef createProducerEntity(Vector3i location) {
+        SignalProducerComponent producerComponent = new SignalProducerComponent();
+        producerComponent.connectionSides = ALL_SIDES;
+        producerComponent.signalStrength = 10;
+        BlockComponent blockComponent = mock(BlockComponent.class);
+        when(blockComponent.getPosition(any())).thenAnswer(invocation -> invocation.getArgument(0, Vector3i.class).set(location));
+        EntityRef producer = mock(EntityRef.class);
+        when(producer.getComponent(SignalProducerComponent.class)).thenReturn(producerComponent);
+        when(producer.getComponent(BlockComponent.class)).thenReturn(blockComponent);
+        return producer;
+    }
+
+    private SignalSystem createSignalSystem(int parallelThreads) {
+        Time time = mock(Time.class);
+        when(time.getGameTimeInMs()).thenAnswer(invocation -> gameTime += 100);
+        ModuleConfigManager moduleConfigManager = mock(ModuleConfigManager.class, invocation -> {
+            switch ((String) invocation.getArgument(1)) {
+                case "pipelinedSignals":
+                    return true;
+                case "parallelNetworkThreads":
+                    return parallelThreads;
+                default:
+                    return invocation.getArgument(2);
+            }
+        });
+        WorldProvider worldProvider = mock(WorldProvider.class);
+        when(worldProvider.getBlock(any())).thenReturn(lampOff);
+        when(worldProvider.setBlock(any(), any())).thenAnswer(invocation -> {
+            swappedBlocks.put(new Vector3i(invocation.getArgument(0, Vector3ic.class)), invocation.getArgument(1));
+            return lampOff;
+        });
+        when(blockManager.getBlock("signalling:SignalLampOn")).thenReturn(lampOn);
+        when(blockManager.getBlock("signalling:SignalLampOff")).thenReturn(lampOff);
+
+        SignalSystem signalSystem = new SignalSystem(time, worldProvider, mock(BlockEntityRegistry.class), moduleConfigManager,
+                mock(EntityManager.class), blockManager);
+        signalSystem.initialise();
+        signalSystem.preBegin();
+        return signalSystem;
+    }
+}
@@ -0,0 +1,87 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import org.joml.Vector3i;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.terasology.blockNetwork.NetworkChangeReason;
+import org.terasology.engine.core.Time;
+import org.terasology.engine.entitySystem.entity.EntityManager;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.logic.config.ModuleConfigManager;
+import org.terasology.engine.world.BlockEntityRegistry;
+import org.terasology.engine.world.WorldProvider;
+import org.terasology.engine.world.block.BlockComponent;
+import org.terasology.engine.world.block.BlockManager;
+import org.terasology.signalling.components.SignalProducerComponent;
+import org.terasology.signalling.components.SignalProducerModifiedComponent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that producer strengths set by gates and switches reach the signal network right away, while their components are
+ * only saved once per update.
+ */
+public class SignalProducerSaveTest {
+    private static final byte ALL_SIDES = 63;
+
+    private final SignalProducerComponent producerComponent = new SignalProducerComponent();
+    private final EntityRef producer = mock(EntityRef.class);
+    private SignalSystem signalSystem;
+    private long gameTime;
+
+    @BeforeEach
+    public void setUp() {
+        Time time = mock(Time.class);
+        when(time.getGameTimeInMs()).thenAnswer(invocation -> gameTime += 100);
+        ModuleConfigManager moduleConfigManager = mock(ModuleConfigManager.class,
+            invocation -> invocation.getArgument(2));
+        signalSystem = new SignalSystem(time, mock(WorldProvider.class), mock(BlockEntityRegistry.class), moduleConfigManager,
+                mock(EntityManager.class), mock(BlockManager.class));
+        signalSystem.initialise();
+        signalSystem.preBegin();
+
+        Vector3i location = new Vector3i(3, 0, 0);
+        signalSystem.addProducer(location, ALL_SIDES, 0, NetworkChangeReason.WORLD_CHANGE);
+        signalSystem.update(0);
+
+        BlockComponent blockComponent = mock(BlockComponent.class);
+        when(blockComponent.getPosition(any())).thenAnswer(invocation -> invocation.getArgument(0, Vector3i.class).set(location));
+        producerComponent.connectionSides = ALL_SIDES;
+        when(producer.getComponent(SignalProducerComponent.class)).thenReturn(producerComponent);
+        when(producer.getComponent(BlockComponent.class)).thenReturn(blockComponent);
+    }
+
+    @Test
+    public void savesOncePerUpdate() {
+        assertTrue(signalSystem.setProducerSignalStrength(producer, 5));
+        assertTrue(signalSystem.setProducerSignalStrength(producer, 7));
+
+        // Readers of the component see the strength before it is saved
+        assertEquals(7, producerComponent.signalStrength);
+        verify(producer, never()).saveComponent(any());
+
+        signalSystem.update(0);
+        verify(producer, times(1)).saveComponent(producerComponent);
+        verify(producer, times(1)).addComponent(any(SignalProducerModifiedComponent.class));
+
+        signalSystem.update(0);
+        verify(producer, times(1)).saveComponent(producerComponent);
+    }
+
+    @Test
+    public void savesBeforeTheWorld() {
+        signalSystem.setProducerSignalStrength(producer, 5);
+
+        signalSystem.preSave();
+        verify(producer, times(1)).saveComponent(producerComponent);
+    }
+}
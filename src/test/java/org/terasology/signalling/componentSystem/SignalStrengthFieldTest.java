@@ -0,0 +1,289 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.blockNetwork.Network2;
+import org.terasology.blockNetwork.NetworkChangeReason;
+import org.terasology.engine.math.Side;
+import org.terasology.engine.math.SideBitFlag;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the {@link SignalStrengthField} against the path search it replaces, which gives a consumer
+ * {@code strength - distance + 1} of the best producer in the network.
+ */
+public class SignalStrengthFieldTest {
+    private static final Logger logger = LoggerFactory.getLogger(SignalStrengthFieldTest.class);
+    private static final int SIZE = 7;
+    private static final int HEIGHT = 3;
+    private static final int SEEDS = 40;
+
+    private SignalNodeRegistry nodeRegistry;
+    private SignalEfficientNetworkState networkState;
+    private SignalNetworkEngine signalNetwork;
+    private final SignalStrengthField strengthField = new SignalStrengthField();
+    private int comparedSides;
+    private int poweredSides;
+    private int selfPoweredSides;
+
+    static Stream<Arguments> engines() {
+        return Stream.of(
+                Arguments.of("SignalGraph", (Supplier<SignalNetworkEngine>) SignalGraph::new),
+                Arguments.of("EfficientBlockNetwork", (Supplier<SignalNetworkEngine>) BlockNetworkSignalEngine::new));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("engines")
+    public void fieldMatchesPathSearchOnRandomNetworks(String engineName, Supplier<SignalNetworkEngine> engine) {
+        if (engine.get() instanceof BlockNetworkSignalEngine) {
+            SignalGraphTest.assumeRealBlockNetwork();
+        }
+        for (int seed = 0; seed < SEEDS; seed++) {
+            Random random = new Random(seed);
+            setUp(engine);
+
+            Set<SignalNetworkNode> conductors = Sets.newLinkedHashSet();
+            Set<SignalNetworkNode> leaves = Sets.newLinkedHashSet();
+            for (int x = 0; x < SIZE; x++) {
+                for (int y = 0; y < HEIGHT; y++) {
+                    for (int z = 0; z < SIZE; z++) {
+                        addRandomBlock(random, new Vector3i(x, y, z), conductors, leaves);
+                    }
+                }
+            }
+            signalNetwork.addNetworkingBlocks(conductors, NetworkChangeReason.WORLD_CHANGE);
+            signalNetwork.addLeafBlocks(leaves, NetworkChangeReason.WORLD_CHANGE);
+            assertFieldMatchesPathSearch(leaves, seed);
+
+            // Cut the networks apart, and check again on what is left
+            Set<SignalNetworkNode> removedConductors = pickSome(random, conductors);
+            Set<SignalNetworkNode> removedLeaves = pickSome(random, leaves);
+            signalNetwork.removeLeafBlocks(removedLeaves, NetworkChangeReason.WORLD_CHANGE);
+            signalNetwork.removeNetworkingBlocks(removedConductors, NetworkChangeReason.WORLD_CHANGE);
+            leaves.removeAll(removedLeaves);
+            assertFieldMatchesPathSearch(leaves, seed);
+
+            // Join them again
+            signalNetwork.addNetworkingBlocks(removedConductors, NetworkChangeReason.WORLD_CHANGE);
+            signalNetwork.addLeafBlocks(removedLeaves, NetworkChangeReason.WORLD_CHANGE);
+            leaves.addAll(removedLeaves);
+            assertFieldMatchesPathSearch(leaves, seed);
+        }
+
+        // Make sure the random networks cover the interesting cases
+        logger.info(engineName + ": compared " + comparedSides + " sides, " + poweredSides + " powered, "
+                + selfPoweredSides + " next to their own producer");
+        assertTrue(poweredSides > 100);
+        assertTrue(selfPoweredSides > 10);
+    }
+
+    /**
+     * Times the field against the path search, which takes seconds for the largest network. It only checks what
+     * {@link #fieldMatchesPathSearchOnRandomNetworks} does already, so it is left out of the unit tests unless the
+     * {@code signalling.benchmarks} system property is set to true.
+     */
+    @Tag("benchmark")
+    @EnabledIfSystemProperty(named = "signalling.benchmarks", matches = "true")
+    @ParameterizedTest(name = "{0} leaves")
+    @MethodSource("leafCounts")
+    public void benchmarkAgainstPathSearch(int leafCount) {
+        setUp(SignalGraph::new);
+
+        // A square of cable with the producers on top of it and the consumers below, so no leaves connect directly
+        int width = (int) Math.ceil(Math.sqrt(leafCount));
+        Set<SignalNetworkNode> conductors = Sets.newLinkedHashSet();
+        Set<SignalNetworkNode> leaves = Sets.newLinkedHashSet();
+        byte allSides = (byte) 63;
+        for (int i = 0; i < width * width; i++) {
+            conductors.add(register(new SignalNetworkNode(new Vector3i(i % width, 0, i / width), allSides, allSides,
+                    SignalNetworkNode.Type.CONDUCTOR)));
+        }
+        for (int i = 0; i < leafCount; i++) {
+            if (i % 2 == 0) {
+                Vector3i location = new Vector3i(i % width, 1, i / width);
+                SignalNetworkNode producer = register(new SignalNetworkNode(location, (byte) 0, allSides,
+                        SignalNetworkNode.Type.PRODUCER));
+                networkState.setProducerSignalStrength(producer, 8);
+                leaves.add(producer);
+            } else {
+                Vector3i location = new Vector3i(i % width, -1, i / width);
+                leaves.add(register(new SignalNetworkNode(location, allSides, (byte) 0, SignalNetworkNode.Type.CONSUMER)));
+            }
+        }
+        signalNetwork.addNetworkingBlocks(conductors, NetworkChangeReason.WORLD_CHANGE);
+        signalNetwork.addLeafBlocks(leaves, NetworkChangeReason.WORLD_CHANGE);
+
+        List<SignalNetworkNode> consumers = Lists.newArrayList();
+        for (SignalNetworkNode leaf : leaves) {
+            if (leaf.getType() == SignalNetworkNode.Type.CONSUMER) {
+                consumers.add(leaf);
+            }
+        }
+        Network2<SignalNetworkNode> network = networkState.getNetworksWithLeafNode(consumers.get(0)).iterator().next();
+
+        // Warm up the field, so it is not timed while being compiled. The path search is run once only, as it takes seconds
+        // for the largest network
+        readWithField(network, consumers);
+
+        long start = System.nanoTime();
+        long fieldChecksum = readWithField(network, consumers);
+        long fieldNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        long pathSearchChecksum = readWithPathSearch(network, consumers);
+        long pathSearchNanos = System.nanoTime() - start;
+
+        logger.info(leafCount + " leaves: strength field " + fieldNanos / 1000 + " us, path search " + pathSearchNanos / 1000
+                + " us");
+        assertEquals(pathSearchChecksum, fieldChecksum);
+    }
+
+    static Stream<Integer> leafCounts() {
+        return Stream.of(10, 100, 1000);
+    }
+
+    private void setUp(Supplier<SignalNetworkEngine> engine) {
+        nodeRegistry = new SignalNodeRegistry();
+        networkState = new SignalEfficientNetworkState(new SignalDistanceCache(), nodeRegistry);
+        signalNetwork = engine.get();
+        signalNetwork.addTopologyListener(networkState);
+    }
+
+    private void addRandomBlock(Random random, Vector3i location, Set<SignalNetworkNode> conductors,
+                                Set<SignalNetworkNode> leaves) {
+        int roll = random.nextInt(100);
+        if (roll < 40) {
+            // Mostly plain cable, so that there are long chains as well as junctions
+            byte sides = roll < 30 ? (byte) 63 : randomSides(random);
+            conductors.add(register(new SignalNetworkNode(location, sides, sides, SignalNetworkNode.Type.CONDUCTOR)));
+        } else if (roll < 48) {
+            // Directional conductors, that take a signal in on other sides than they give it out
+            conductors.add(register(new SignalNetworkNode(location, randomSides(random), randomSides(random),
+                    SignalNetworkNode.Type.CONDUCTOR)));
+        } else if (roll < 58) {
+            leaves.add(addProducer(random, location));
+        } else if (roll < 68) {
+            leaves.add(addConsumer(random, location));
+        } else if (roll < 76) {
+            // A consumer that can be powered by the producer on its own location, like a gate
+            leaves.add(addProducer(random, location));
+            leaves.add(addConsumer(random, location));
+        }
+    }
+
+    private SignalNetworkNode addProducer(Random random, Vector3i location) {
+        SignalNetworkNode producer = register(new SignalNetworkNode(location, (byte) 0, randomSides(random),
+                SignalNetworkNode.Type.PRODUCER));
+        networkState.setProducerSignalStrength(producer, 1 + random.nextInt(12));
+        return producer;
+    }
+
+    private SignalNetworkNode addConsumer(Random random, Vector3i location) {
+        return register(new SignalNetworkNode(location, randomSides(random), (byte) 0, SignalNetworkNode.Type.CONSUMER));
+    }
+
+    private SignalNetworkNode register(SignalNetworkNode node) {
+        return nodeRegistry.register(node);
+    }
+
+    private static byte randomSides(Random random) {
+        return (byte) (1 + random.nextInt(63));
+    }
+
+    private static Set<SignalNetworkNode> pickSome(Random random, Collection<SignalNetworkNode> nodes) {
+        Set<SignalNetworkNode> picked = Sets.newLinkedHashSet();
+        for (SignalNetworkNode node : nodes) {
+            if (random.nextInt(4) == 0) {
+                picked.add(node);
+            }
+        }
+        return picked;
+    }
+
+    private void assertFieldMatchesPathSearch(Collection<SignalNetworkNode> leaves, int seed) {
+        for (SignalNetworkNode consumer : leaves) {
+            if (consumer.getType() != SignalNetworkNode.Type.CONSUMER) {
+                continue;
+            }
+            for (Network2<SignalNetworkNode> network : networkState.getNetworksWithLeafNode(consumer)) {
+                if (network.getNetworkingNodes().isEmpty()) {
+                    // Leaf nodes connected directly, which the signal system never computes a field for
+                    continue;
+                }
+                strengthField.compute(networkState.getConductorChains(network), networkState.getProducersInNetwork(network),
+                        networkState);
+                boolean selfPowered = strengthField.hasSourceAt(PackedPositions.pack(consumer.location));
+                for (Side side : SideBitFlag.getSides(network.getLeafSidesInNetwork(consumer))) {
+                    String message = "seed " + seed + ", consumer " + consumer.location + " on side " + side;
+                    int signal = strengthField.getSignalOnSide(consumer, side);
+                    assertEquals(getSignalWithPathSearch(network, consumer, side, true), signal, message);
+                    if (!selfPowered) {
+                        // Without a producer on its location the consumer cannot power itself, so the field is used as is
+                        assertEquals(getSignalWithPathSearch(network, consumer, side, false), signal, message);
+                    } else if (signal > 0) {
+                        selfPoweredSides++;
+                    }
+                    comparedSides++;
+                    if (signal > 0) {
+                        poweredSides++;
+                    }
+                }
+            }
+        }
+    }
+
+    private int getSignalWithPathSearch(Network2<SignalNetworkNode> network, SignalNetworkNode consumer, Side side,
+                                        boolean consumerCanPowerItself) {
+        int result = 0;
+        for (SignalNetworkNode producer : networkState.getProducersInNetwork(network)) {
+            if (consumerCanPowerItself || !producer.location.equals(consumer.location)) {
+                int signalStrength = networkState.getProducerSignalStrength(producer);
+                int distance = network.getDistanceWithSide(producer, consumer, side, signalStrength);
+                if (distance != -1) {
+                    result = Math.max(signalStrength - distance + 1, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    private long readWithField(Network2<SignalNetworkNode> network, List<SignalNetworkNode> consumers) {
+        strengthField.compute(networkState.getConductorChains(network), networkState.getProducersInNetwork(network),
+                networkState);
+        long checksum = 0;
+        for (SignalNetworkNode consumer : consumers) {
+            for (Side side : SideBitFlag.getSides(network.getLeafSidesInNetwork(consumer))) {
+                checksum = checksum * 31 + strengthField.getSignalOnSide(consumer, side);
+            }
+        }
+        return checksum;
+    }
+
+    private long readWithPathSearch(Network2<SignalNetworkNode> network, List<SignalNetworkNode> consumers) {
+        long checksum = 0;
+        for (SignalNetworkNode consumer : consumers) {
+            for (Side side : SideBitFlag.getSides(network.getLeafSidesInNetwork(consumer))) {
+                checksum = checksum * 31 + getSignalWithPathSearch(network, consumer, side, true);
+            }
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,136 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import org.joml.Vector3i;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.terasology.blockNetwork.NetworkChangeReason;
+import org.terasology.engine.core.Time;
+import org.terasology.engine.entitySystem.entity.EntityManager;
+import org.terasology.engine.logic.config.ModuleConfigManager;
+import org.terasology.engine.world.BlockEntityRegistry;
+import org.terasology.engine.world.WorldProvider;
+import org.terasology.engine.world.block.Block;
+import org.terasology.engine.world.block.BlockManager;
+import org.terasology.signalling.components.SignalBlockStateConsumerComponent;
+import org.terasology.signalling.components.SignalConductorComponent;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that an update of a warmed up signal network, in which a producer changes its strength, allocates nothing.
+ * <p>
+ * The collaborators of the {@link SignalSystem} are mocks, which allocate on every call, so the network is set up such that
+ * none of them is called once it is warmed up: the lamps stay lit, and the game time comes from a proxy returning values boxed
+ * in advance.
+ */
+public class SignalSystemAllocationTest {
+    private static final int LENGTH = 40;
+    private static final int WARM_UP_TICKS = 20000;
+    private static final int MEASURED_TICKS = 2000;
+    private static final byte ALL_SIDES = 63;
+
+    private final Block lampOn = mock(Block.class);
+    private final Block lampOff = mock(Block.class);
+    private final BlockManager blockManager = mock(BlockManager.class);
+    private final Long[] gameTimes = new Long[WARM_UP_TICKS + MEASURED_TICKS + 2];
+    private int tick;
+
+    /**
+     * @param nativeGraphEngine Whether the network is built by the {@link SignalGraph} rather than the
+     *     {@link org.terasology.blockNetwork.EfficientBlockNetwork} most worlds run with
+     * @param producerCount The number of producers along the cable, one producer and consumer pair is recalculated by path
+     *     search, more use the strength field
+     * @param consumerCount The number of lamps along the cable
+     */
+    @ParameterizedTest(name = "native graph engine {0}, {1} producers, {2} lamps")
+    @CsvSource({"false, 1, 1", "false, 8, 16", "true, 1, 1", "true, 8, 16"})
+    public void steadyUpdateAllocatesNothing(boolean nativeGraphEngine, int producerCount, int consumerCount) {
+        SignalSystem signalSystem = createSignalSystem(nativeGraphEngine);
+
+        // A straight cable, with the producers above it and the lamps below
+        SignalConductorComponent.ConnectionGroup cable = new SignalConductorComponent.ConnectionGroup();
+        cable.inputSides = ALL_SIDES;
+        cable.outputSides = ALL_SIDES;
+        for (int x = 0; x < LENGTH; x++) {
+            signalSystem.addConductor(new Vector3i(x, 0, 0), cable, NetworkChangeReason.WORLD_CHANGE);
+        }
+        SignalNetworkNode toggledProducer = null;
+        for (int i = 0; i < producerCount; i++) {
+            SignalNetworkNode producer = signalSystem.addProducer(new Vector3i(i * LENGTH / producerCount, 1, 0), ALL_SIDES, 10,
+                    NetworkChangeReason.WORLD_CHANGE);
+            if (toggledProducer == null) {
+                toggledProducer = producer;
+            }
+        }
+        SignalBlockStateConsumerComponent lampComponent = new SignalBlockStateConsumerComponent();
+        lampComponent.connectionSides = ALL_SIDES;
+        lampComponent.signalledBlock = "signalling:SignalLampOn";
+        lampComponent.unsignalledBlock = "signalling:SignalLampOff";
+        BlockStateConsumer lamp = new BlockStateConsumer(lampComponent, blockManager);
+        for (int i = 0; i < consumerCount; i++) {
+            // Within reach of a producer, with either strength
+            int x = producerCount == 1 ? 5 : i * LENGTH / consumerCount;
+            signalSystem.addBlockStateConsumer(new Vector3i(x, -1, 0), lamp, NetworkChangeReason.WORLD_CHANGE);
+        }
+
+        for (int i = 0; i < WARM_UP_TICKS; i++) {
+            toggle(signalSystem, toggledProducer);
+        }
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        // What reading the counter allocates by itself
+        long overhead = -threadBean.getThreadAllocatedBytes(threadId) + threadBean.getThreadAllocatedBytes(threadId);
+
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_TICKS; i++) {
+            toggle(signalSystem, toggledProducer);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        assertEquals(0, allocated / MEASURED_TICKS, "Bytes allocated per update: " + (double) allocated / MEASURED_TICKS);
+    }
+
+    private void toggle(SignalSystem signalSystem, SignalNetworkNode producer) {
+        signalSystem.updateProducerSignalStrength(producer, tick % 2 == 0 ? 12 : 10);
+        signalSystem.update(0);
+    }
+
+    private SignalSystem createSignalSystem(boolean nativeGraphEngine) {
+        for (int i = 0; i < gameTimes.length; i++) {
+            gameTimes[i] = (long) (i + 1) * 100;
+        }
+        Time time = (Time) Proxy.newProxyInstance(Time.class.getClassLoader(), new Class[]{Time.class},
+            (proxy, method, args) -> {
+                if (method.getName().equals("getGameTimeInMs")) {
+                    return gameTimes[tick++];
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+
+        ModuleConfigManager moduleConfigManager = mock(ModuleConfigManager.class, invocation -> {
+            if ("nativeGraphEngine".equals(invocation.getArgument(1))) {
+                return nativeGraphEngine;
+            }
+            return invocation.getArgument(2);
+        });
+        WorldProvider worldProvider = mock(WorldProvider.class);
+        when(worldProvider.getBlock(any())).thenReturn(lampOff);
+        when(blockManager.getBlock("signalling:SignalLampOn")).thenReturn(lampOn);
+        when(blockManager.getBlock("signalling:SignalLampOff")).thenReturn(lampOff);
+
+        SignalSystem signalSystem = new SignalSystem(time, worldProvider, mock(BlockEntityRegistry.class), moduleConfigManager,
+                mock(EntityManager.class), blockManager);
+        signalSystem.initialise();
+        signalSystem.preBegin();
+        return signalSystem;
+    }
+}
@@ -0,0 +1,113 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.signalling.componentSystem;
+
+import com.google.common.collect.Maps;
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.terasology.blockNetwork.NetworkChangeReason;
+import org.terasology.engine.core.Time;
+import org.terasology.engine.entitySystem.entity.EntityManager;
+import org.terasology.engine.logic.config.ModuleConfigManager;
+import org.terasology.engine.world.BlockEntityRegistry;
+import org.terasology.engine.world.WorldProvider;
+import org.terasology.engine.world.block.Block;
+import org.terasology.engine.world.block.BlockManager;
+import org.terasology.signalling.components.SignalBlockStateConsumerComponent;
+import org.terasology.signalling.components.SignalConductorComponent;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that the blocks gathered while the world loads, split into connected groups with the warm-up, are in working networks
+ * by the end of the first update.
+ */
+public class SignalSystemWarmUpTest {
+    // Large enough for the conductors to be linked by several tasks
+    private static final int SIZE = 100;
+    private static final byte ALL_SIDES = 63;
+
+    private final Block lampOn = mock(Block.class);
+    private final Block lampOff = mock(Block.class);
+    private final BlockManager blockManager = mock(BlockManager.class);
+    private final Map<Vector3ic, Block> swappedBlocks = Maps.newHashMap();
+    private long gameTime;
+
+    /**
+     * @param nativeGraphEngine Whether the network is built by the {@link SignalGraph}
+     * @param parallelThreads The threads of the pool the connected groups are found on, 0 for the main thread
+     */
+    @ParameterizedTest(name = "native graph engine {0}, {1} threads")
+    @CsvSource({"false, 0", "false, 2", "true, 0", "true, 2"})
+    public void firstUpdateBuildsTheLoadedNetworks(boolean nativeGraphEngine, int parallelThreads) {
+        SignalSystem signalSystem = createSignalSystem(nativeGraphEngine, parallelThreads);
+
+        // A square of cable, with a producer in one corner, a lamp within its reach and one out of it, and a lamp on a short
+        // cable of its own next to a producer
+        SignalConductorComponent.ConnectionGroup cable = new SignalConductorComponent.ConnectionGroup();
+        cable.inputSides = ALL_SIDES;
+        cable.outputSides = ALL_SIDES;
+        for (int x = 0; x < SIZE; x++) {
+            for (int z = 0; z < SIZE; z++) {
+                signalSystem.addConductor(new Vector3i(x, 0, z), cable, NetworkChangeReason.CHUNK_EVENT);
+            }
+        }
+        signalSystem.addConductor(new Vector3i(0, 0, -3), cable, NetworkChangeReason.CHUNK_EVENT);
+        signalSystem.addProducer(new Vector3i(0, 1, 0), ALL_SIDES, 10, NetworkChangeReason.CHUNK_EVENT);
+        signalSystem.addProducer(new Vector3i(0, 1, -3), ALL_SIDES, 10, NetworkChangeReason.CHUNK_EVENT);
+        SignalBlockStateConsumerComponent lampComponent = new SignalBlockStateConsumerComponent();
+        lampComponent.connectionSides = ALL_SIDES;
+        lampComponent.signalledBlock = "signalling:SignalLampOn";
+        lampComponent.unsignalledBlock = "signalling:SignalLampOff";
+        BlockStateConsumer lamp = new BlockStateConsumer(lampComponent, blockManager);
+        Vector3i nearLamp = new Vector3i(3, -1, 2);
+        Vector3i farLamp = new Vector3i(SIZE - 1, -1, SIZE - 1);
+        Vector3i separateLamp = new Vector3i(0, -1, -3);
+        for (Vector3i location : new Vector3i[]{nearLamp, farLamp, separateLamp}) {
+            signalSystem.addBlockStateConsumer(location, lamp, NetworkChangeReason.CHUNK_EVENT);
+        }
+
+        signalSystem.update(0);
+        signalSystem.shutdown();
+
+        assertEquals(Map.of(nearLamp, lampOn, separateLamp, lampOn), swappedBlocks);
+    }
+
+    private SignalSystem createSignalSystem(boolean nativeGraphEngine, int parallelThreads) {
+        Time time = mock(Time.class);
+        when(time.getGameTimeInMs()).thenAnswer(invocation -> gameTime += 100);
+        ModuleConfigManager moduleConfigManager = mock(ModuleConfigManager.class, invocation -> {
+            switch ((String) invocation.getArgument(1)) {
+                case "nativeGraphEngine":
+                    return nativeGraphEngine;
+                case "networkWarmUp":
+                    return true;
+                case "parallelNetworkThreads":
+                    return parallelThreads;
+                default:
+                    return invocation.getArgument(2);
+            }
+        });
+        WorldProvider worldProvider = mock(WorldProvider.class);
+        when(worldProvider.getBlock(any())).thenReturn(lampOff);
+        when(worldProvider.setBlock(any(), any())).thenAnswer(invocation -> {
+            swappedBlocks.put(new Vector3i(invocation.getArgument(0, Vector3ic.class)), invocation.getArgument(1));
+            return lampOff;
+        });
+        when(blockManager.getBlock("signalling:SignalLampOn")).thenReturn(lampOn);
+        when(blockManager.getBlock("signalling:SignalLampOff")).thenReturn(lampOff);
+
+        SignalSystem signalSystem = new SignalSystem(time, worldProvider, mock(BlockEntityRegistry.class), moduleConfigManager,
+                mock(EntityManager.class), blockManager);
+        signalSystem.initialise();
+        signalSystem.preBegin();
+        return signalSystem;
+    }
+}